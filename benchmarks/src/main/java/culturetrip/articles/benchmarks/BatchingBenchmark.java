@@ -0,0 +1,85 @@
+package culturetrip.articles.benchmarks;
+
+import culturetrip.articles.clients.AssetsServiceClient;
+import culturetrip.articles.clients.BatchingAssetsServiceClient;
+import culturetrip.articles.models.Video;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Video lookups for an article against an assets service with a per round
+ * trip overhead, one round trip each or through the BatchingAssetsServiceClient.
+ * Each operation is one article's videos. Batching should get through
+ * several times as many a second, as the overhead is paid once per batch
+ * rather than once per video.
+ *
+ * @author mball
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchingBenchmark {
+
+    /**
+     * unbatched: a round trip per video. batched: through the batching client
+     * with a 1ms linger.
+     */
+    @Param({"unbatched", "batched"})
+    public String client;
+
+    @Param({"30"})
+    public int videoCount;
+
+    @Param({"500"})
+    public long overheadMicros;
+
+    private AssetsServiceClient instance;
+
+    @Setup
+    public void setUp() {
+        SimulatedAssetsServiceClient assetsService = new SimulatedAssetsServiceClient();
+        assetsService.setRoundTripOverhead(overheadMicros, TimeUnit.MICROSECONDS);
+        if (client.equals("batched")) {
+            BatchingAssetsServiceClient batching = new BatchingAssetsServiceClient(assetsService);
+            batching.setLinger(1, TimeUnit.MILLISECONDS);
+            instance = batching;
+        } else {
+            instance = assetsService;
+        }
+    }
+
+    /**
+     * Looks up an article's worth of videos at once and waits for them all.
+     */
+    @Benchmark
+    public int lookUpVideos() throws InterruptedException, ExecutionException {
+        List<Future<Video>> videos = new ArrayList<>(videoCount);
+        for (int i = 0; i < videoCount; i++) {
+            videos.add(instance.getVideoById("video" + i));
+        }
+        int found = 0;
+        for (Future<Video> video : videos) {
+            if (video.get() != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,166 @@
+package culturetrip.articles.benchmarks;
+
+import culturetrip.articles.ArticleEnricher;
+import culturetrip.articles.CoalescingArticleEnricher;
+import culturetrip.articles.SimpleArticleEnricher;
+import culturetrip.articles.clients.ArticleRepositoryClient;
+import culturetrip.articles.clients.AssetsServiceClient;
+import culturetrip.articles.clients.CachingArticleRepositoryClient;
+import culturetrip.articles.clients.CachingAssetsServiceClient;
+import culturetrip.articles.concurrent.EnricherExecutors;
+import culturetrip.articles.models.RichArticle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End to end benchmarks of the enrichers against simulated clients.
+ *
+ * Each benchmark runs in both throughput and sample time mode. Sample time
+ * mode reports the p50, p99 and p999 latencies, and running with "-prof gc"
+ * adds the allocation rate. Article ids are skewed towards a few popular
+ * ones, the higher the skew the more so, which is what makes the caches
+ * worth having.
+ *
+ * @author mball
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class EnricherBenchmark {
+
+    private static final int BATCH_SIZE = 50;
+
+    /**
+     * simple: SimpleArticleEnricher straight on the clients. cached: with the
+     * caching clients in between. coalesced: cached, with concurrent requests
+     * for the same article coalesced as well.
+     */
+    @Param({"simple", "cached", "coalesced"})
+    public String enricher;
+
+    /**
+     * Where the enricher does its work. direct: on the threads completing the
+     * client calls. bounded: a pool of 2 threads per core. virtual: a virtual
+     * thread per task, which needs JDK 21.
+     */
+    @Param({"direct"})
+    public String executor;
+
+    @Param({"constant:1", "lognormal:2:20"})
+    public String latency;
+
+    @Param({"0:10"})
+    public String videoCount;
+
+    @Param({"0.0"})
+    public double failureRate;
+
+    @Param({"10000"})
+    public int articleCount;
+
+    @Param({"2"})
+    public double skew;
+
+    private ArticleEnricher instance;
+    private ExecutorService executorService;
+
+    @Setup
+    public void setUp() {
+        SimulatedArticleRepositoryClient simulatedArticleRepositoryClient = new SimulatedArticleRepositoryClient();
+        SimulatedAssetsServiceClient simulatedAssetsServiceClient = new SimulatedAssetsServiceClient();
+        String[] videos = videoCount.split(":");
+        simulatedArticleRepositoryClient.setVideoCount(Integer.parseInt(videos[0]), Integer.parseInt(videos[1]));
+        for (SimulatedService service : new SimulatedService[]{simulatedArticleRepositoryClient, simulatedAssetsServiceClient}) {
+            service.setLatency(LatencyDistribution.parse(latency));
+            service.setFailureRate(failureRate);
+        }
+
+        ArticleRepositoryClient articleRepositoryClient = simulatedArticleRepositoryClient;
+        AssetsServiceClient assetsServiceClient = simulatedAssetsServiceClient;
+        if (!enricher.equals("simple")) {
+            articleRepositoryClient = new CachingArticleRepositoryClient(articleRepositoryClient, 1000);
+            assetsServiceClient = new CachingAssetsServiceClient(assetsServiceClient, 1000, 1000);
+        }
+
+        SimpleArticleEnricher simpleArticleEnricher = new SimpleArticleEnricher();
+        simpleArticleEnricher.setTimeoutSeconds(5);
+        simpleArticleEnricher.setArticleRepositoryClient(articleRepositoryClient);
+        simpleArticleEnricher.setAssetsServiceClient(assetsServiceClient);
+        if (executor.equals("bounded")) {
+            executorService = EnricherExecutors.bounded(2 * Runtime.getRuntime().availableProcessors(), 10000,
+                    EnricherExecutors.RejectionPolicy.CALLER_RUNS);
+        } else if (executor.equals("virtual")) {
+            executorService = EnricherExecutors.virtualThreadPerTask();
+        }
+        simpleArticleEnricher.setExecutor(executorService);
+
+        instance = enricher.equals("coalesced") ? new CoalescingArticleEnricher(simpleArticleEnricher) : simpleArticleEnricher;
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (executorService != null) {
+            executorService.shutdown();
+        }
+    }
+
+    @Benchmark
+    public RichArticle enrichArticle() throws InterruptedException {
+        return await(instance.enrichArticleWithId(nextArticleId()));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int enrichBatch() throws InterruptedException {
+        List<String> articleIds = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            articleIds.add(nextArticleId());
+        }
+        int enriched = 0;
+        for (Map.Entry<String, Future<RichArticle>> result : instance.enrichArticlesWithIds(articleIds).entrySet()) {
+            if (await(result.getValue()) != null) {
+                enriched++;
+            }
+        }
+        return enriched;
+    }
+
+    private String nextArticleId() {
+        return "article-" + (int) (articleCount * Math.pow(ThreadLocalRandom.current().nextDouble(), skew));
+    }
+
+    /**
+     * Waits for the result, counting failures as null rather than letting
+     * them end the benchmark.
+     */
+    private static RichArticle await(Future<RichArticle> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package culturetrip.articles.benchmarks;
+
+import culturetrip.articles.SimpleArticleEnricher;
+import culturetrip.articles.concurrent.EnricherExecutors;
+import culturetrip.articles.http.ArticleHttpServer;
+import culturetrip.articles.metrics.LatencyHistogram;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Finds how many requests a second the ArticleHttpServer can serve on this
+ * machine. It starts the server on a local port, in front of a
+ * SimpleArticleEnricher on the simulated clients, and sends it GET
+ * /articles/{id} from a fixed number of concurrent users, each sending its
+ * next request as soon as the last is answered.
+ *
+ * The number of users doubles at every step, and for each step the
+ * throughput, latencies and errors are reported. Once doubling the users
+ * stops adding at least 5% to the throughput twice running, the server is
+ * saturated and the best throughput seen is reported as its saturation
+ * throughput. Run it from the benchmarks jar:
+ *
+ *     java -cp benchmarks/target/benchmarks.jar culturetrip.articles.benchmarks.HttpLoadGenerator \
+ *         [latency] [maximum users] [seconds per step]
+ *
+ * where the latency of the simulated clients is written as for the JMH
+ * benchmarks, "lognormal:2:20" by default.
+ *
+ * @author mball
+ */
+public class HttpLoadGenerator {
+
+    private static final int ARTICLE_COUNT = 10000;
+
+    private final HttpClient client;
+    private final URI baseUri;
+
+    public HttpLoadGenerator(HttpClient client, URI baseUri) {
+        this.client = client;
+        this.baseUri = baseUri;
+    }
+
+    /**
+     * Sends requests from the given number of users for the given time.
+     *
+     * @param users
+     * @param duration
+     * @param unit
+     * @return
+     * @throws InterruptedException
+     */
+    public Step run(int users, long duration, TimeUnit unit) throws InterruptedException {
+        Step step = new Step(users);
+        long start = System.nanoTime();
+        for (int i = 0; i < users; i++) {
+            send(step);
+        }
+        unit.sleep(duration);
+        step.running = false;
+        step.done.await();
+        step.elapsedNanos = System.nanoTime() - start;
+        return step;
+    }
+
+    private void send(Step step) {
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("/articles/article-"
+                + ThreadLocalRandom.current().nextInt(ARTICLE_COUNT))).build();
+        long start = System.nanoTime();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, ex) -> {
+            step.latencies.record(System.nanoTime() - start);
+            if (ex != null || response.statusCode() != 200) {
+                step.errors.increment();
+            }
+            if (step.running) {
+                send(step);
+            } else {
+                step.done.countDown();
+            }
+        });
+    }
+
+    /**
+     * What happened during one step of the load.
+     */
+    public static final class Step {
+
+        private final int users;
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final CountDownLatch done;
+        private volatile boolean running = true;
+        private long elapsedNanos;
+
+        Step(int users) {
+            this.users = users;
+            this.done = new CountDownLatch(users);
+        }
+
+        public double getThroughput() {
+            return latencies.getCount() / (elapsedNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%5d users %10.0f req/s   p50 %8.2f ms   p99 %8.2f ms   max %8.2f ms   %d errors",
+                    users, getThroughput(),
+                    latencies.getValueAtPercentile(50) / 1e6,
+                    latencies.getValueAtPercentile(99) / 1e6,
+                    latencies.getMax() / 1e6,
+                    errors.sum());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String latency = args.length > 0 ? args[0] : "lognormal:2:20";
+        int maximumUsers = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+        int stepSeconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        SimulatedArticleRepositoryClient articleRepositoryClient = new SimulatedArticleRepositoryClient();
+        SimulatedAssetsServiceClient assetsServiceClient = new SimulatedAssetsServiceClient();
+        articleRepositoryClient.setLatency(LatencyDistribution.parse(latency));
+        assetsServiceClient.setLatency(LatencyDistribution.parse(latency));
+
+        SimpleArticleEnricher enricher = new SimpleArticleEnricher();
+        enricher.setTimeoutSeconds(5);
+        enricher.setArticleRepositoryClient(articleRepositoryClient);
+        enricher.setAssetsServiceClient(assetsServiceClient);
+
+        ExecutorService handlers = EnricherExecutors.bounded(Runtime.getRuntime().availableProcessors(), 10000,
+                EnricherExecutors.RejectionPolicy.ABORT);
+        ArticleHttpServer server = new ArticleHttpServer(enricher);
+        server.setExecutor(handlers);
+        server.setBacklog(maximumUsers);
+        server.start(new InetSocketAddress("127.0.0.1", 0));
+
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        HttpLoadGenerator loadGenerator = new HttpLoadGenerator(client,
+                URI.create("http://127.0.0.1:" + server.getAddress().getPort()));
+        try {
+            System.out.println("Warming up");
+            loadGenerator.run(16, stepSeconds, TimeUnit.SECONDS);
+
+            Step best = null;
+            int flatSteps = 0;
+            for (int users = 1; users <= maximumUsers && flatSteps < 2; users *= 2) {
+                Step step = loadGenerator.run(users, stepSeconds, TimeUnit.SECONDS);
+                System.out.println(step);
+                if (best == null || step.getThroughput() > best.getThroughput() * 1.05) {
+                    best = step;
+                    flatSteps = 0;
+                } else {
+                    flatSteps++;
+                }
+            }
+            System.out.println(String.format("Saturation throughput: %.0f req/s from %d users",
+                    best.getThroughput(), best.users));
+        } finally {
+            server.stop(0);
+            handlers.shutdown();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package culturetrip.articles.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long a simulated downstream call takes.
+ *
+ * Distributions can be written as strings so they can be JMH parameters, with
+ * all times in milliseconds: "constant:2", "uniform:1:5" or "lognormal:2:20",
+ * where the log-normal one is given as its median and its 99th percentile.
+ *
+ * @author mball
+ */
+public interface LatencyDistribution {
+
+    long nextNanos(Random random);
+
+    static LatencyDistribution constant(double millis) {
+        long nanos = toNanos(millis);
+        return random -> nanos;
+    }
+
+    static LatencyDistribution uniform(double minMillis, double maxMillis) {
+        long min = toNanos(minMillis);
+        long range = toNanos(maxMillis) - min;
+        return random -> min + (long) (random.nextDouble() * range);
+    }
+
+    /**
+     * A long-tailed distribution, which is closer to what real services do than
+     * the other two.
+     *
+     * @param medianMillis
+     * @param p99Millis
+     * @return
+     */
+    static LatencyDistribution logNormal(double medianMillis, double p99Millis) {
+        double mu = Math.log(medianMillis);
+        //2.326 is the z-score of the 99th percentile.
+        double sigma = Math.log(p99Millis / medianMillis) / 2.326;
+        return random -> toNanos(Math.exp(mu + sigma * random.nextGaussian()));
+    }
+
+    static LatencyDistribution parse(String spec) {
+        String[] parts = spec.split(":");
+        switch (parts[0]) {
+            case "constant":
+                return constant(Double.parseDouble(parts[1]));
+            case "uniform":
+                return uniform(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+            case "lognormal":
+                return logNormal(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+            default:
+                throw new IllegalArgumentException("Unknown latency distribution: " + spec);
+        }
+    }
+
+    static long toNanos(double millis) {
+        return (long) (millis * TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
@@ -0,0 +1,47 @@
+package culturetrip.articles.benchmarks;
+
+import culturetrip.articles.clients.ArticleRepositoryClient;
+import culturetrip.articles.models.ArticleReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Future;
+
+/**
+ * An ArticleRepositoryClient that makes up an ArticleReference for any id.
+ * The same id always gets the same reference. Hero images and videos are
+ * drawn from a fixed pool of assets, so articles share them the way real
+ * ones do, and the number of videos is uniform between a minimum and maximum.
+ *
+ * @author mball
+ */
+public class SimulatedArticleRepositoryClient extends SimulatedService implements ArticleRepositoryClient {
+
+    private volatile int assetPoolSize = 1000;
+    private volatile int minimumVideos = 0;
+    private volatile int maximumVideos = 10;
+
+    public void setAssetPoolSize(int assetPoolSize) {
+        this.assetPoolSize = assetPoolSize;
+    }
+
+    public void setVideoCount(int minimumVideos, int maximumVideos) {
+        this.minimumVideos = minimumVideos;
+        this.maximumVideos = maximumVideos;
+    }
+
+    @Override
+    public Future<ArticleReference> getArticleReferenceForId(String articleId) {
+        return respond(() -> referenceFor(articleId));
+    }
+
+    public ArticleReference referenceFor(String articleId) {
+        Random random = new Random(articleId.hashCode());
+        int videoCount = minimumVideos + random.nextInt(maximumVideos - minimumVideos + 1);
+        List<String> videoUrls = new ArrayList<>(videoCount);
+        for (int i = 0; i < videoCount; i++) {
+            videoUrls.add("video-" + random.nextInt(assetPoolSize));
+        }
+        return new ArticleReference(articleId, "Article " + articleId, "image-" + random.nextInt(assetPoolSize), videoUrls);
+    }
+}
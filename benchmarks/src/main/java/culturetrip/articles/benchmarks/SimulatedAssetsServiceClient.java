@@ -0,0 +1,47 @@
+package culturetrip.articles.benchmarks;
+
+import culturetrip.articles.clients.AssetsServiceBatchClient;
+import culturetrip.articles.clients.AssetsServiceClient;
+import culturetrip.articles.models.Image;
+import culturetrip.articles.models.Video;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * An AssetsServiceClient that makes up an Image or Video for any id. It also
+ * offers the bulk API, where a whole batch is one round trip.
+ *
+ * @author mball
+ */
+public class SimulatedAssetsServiceClient extends SimulatedService implements AssetsServiceClient, AssetsServiceBatchClient {
+
+    @Override
+    public Future<Image> getImageById(String id) {
+        return respond(() -> new Image(id, "Alt text for " + id));
+    }
+
+    @Override
+    public Future<Video> getVideoById(String id) {
+        return respond(() -> new Video(id, "Caption for " + id));
+    }
+
+    @Override
+    public Future<Map<String, Image>> getImagesByIds(Collection<String> ids) {
+        return respond(() -> {
+            Map<String, Image> images = new HashMap<>();
+            ids.forEach(id -> images.put(id, new Image(id, "Alt text for " + id)));
+            return images;
+        });
+    }
+
+    @Override
+    public Future<Map<String, Video>> getVideosByIds(Collection<String> ids) {
+        return respond(() -> {
+            Map<String, Video> videos = new HashMap<>();
+            ids.forEach(id -> videos.put(id, new Video(id, "Caption for " + id)));
+            return videos;
+        });
+    }
+}
@@ -0,0 +1,107 @@
+package culturetrip.articles.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * The shared part of the simulated clients: every call is answered after a
+ * delay drawn from the latency distribution, and a fraction of calls fail.
+ * Calls are completed from a small scheduler, so thousands can be pending
+ * without a thread each, like a real asynchronous client. A service can also
+ * have a per round trip overhead, which it works through one round trip at a
+ * time, so the more round trips there are the longer they queue.
+ *
+ * @author mball
+ */
+abstract class SimulatedService {
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newScheduledThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors() / 2), r -> {
+                Thread thread = new Thread(r, "simulated-service");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private volatile LatencyDistribution latency = LatencyDistribution.constant(0);
+    private volatile double failureRate;
+    private volatile long overheadNanos;
+    private final AtomicLong busyUntilNanos = new AtomicLong(System.nanoTime());
+
+    public void setLatency(LatencyDistribution latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * Sets the fraction of calls, between 0 and 1, that fail with a
+     * SimulatedFailureException.
+     *
+     * @param failureRate
+     */
+    public void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    /**
+     * Sets how long the service is busy with each round trip, on top of the
+     * latency, none by default.
+     *
+     * @param overhead
+     * @param unit
+     */
+    public void setRoundTripOverhead(long overhead, TimeUnit unit) {
+        this.overheadNanos = unit.toNanos(overhead);
+    }
+
+    protected <T> CompletableFuture<T> respond(Supplier<T> response) {
+        Random random = ThreadLocalRandom.current();
+        CompletableFuture<T> future = new CompletableFuture<>();
+        boolean fail = random.nextDouble() < failureRate;
+        long delayNanos = latency.nextNanos(random) + queueForOverhead();
+        Runnable complete = () -> {
+            if (fail) {
+                future.completeExceptionally(new SimulatedFailureException());
+            } else {
+                future.complete(response.get());
+            }
+        };
+        if (delayNanos <= 0) {
+            complete.run();
+        } else {
+            SCHEDULER.schedule(complete, delayNanos, TimeUnit.NANOSECONDS);
+        }
+        return future;
+    }
+
+    /**
+     * Takes the next turn at the overhead, behind any round trips already
+     * queued for it.
+     *
+     * @return how long until this round trip's turn is over.
+     */
+    private long queueForOverhead() {
+        long cost = overheadNanos;
+        if (cost == 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        return busyUntilNanos.accumulateAndGet(now, (busyUntil, start) -> Math.max(busyUntil, start) + cost) - now;
+    }
+
+    /**
+     * Thrown by a simulated call that has been picked to fail.
+     */
+    public static class SimulatedFailureException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        SimulatedFailureException() {
+            super("Simulated failure", null, false, false);
+        }
+    }
+}
@@ -1,9 +1,59 @@
 package culturetrip.articles;
 
+import culturetrip.articles.concurrent.Futures;
 import culturetrip.articles.models.RichArticle;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.Future;
 
 public interface ArticleEnricher {
     Future<RichArticle> enrichArticleWithId(String articleId);
+
+    /**
+     * Enriches an article at the given priority. Implementations that can
+     * schedule work by priority override this, by default the priority is
+     * ignored.
+     *
+     * @param articleId
+     * @param priority
+     * @return
+     */
+    default Future<RichArticle> enrichArticleWithId(String articleId, Priority priority) {
+        return enrichArticleWithId(articleId);
+    }
+
+    /**
+     * Enriches only the parts of an article the caller needs. Implementations
+     * that can skip fetching the rest override this, by default the whole
+     * article is enriched and the parts that weren't asked for are left out.
+     *
+     * @param articleId
+     * @param projection
+     * @return
+     */
+    default Future<RichArticle> enrichArticleWithId(String articleId, Projection projection) {
+        if (projection.isFull()) {
+            return enrichArticleWithId(articleId);
+        }
+        return Futures.toCompletableFuture(enrichArticleWithId(articleId)).thenApply(projection::apply);
+    }
+
+    /**
+     * Enriches several articles at once. The result has one Future per distinct
+     * articleId, in the order given, and each completes as soon as its own
+     * article is ready. Implementations can override this to share work between
+     * the articles, by default it calls enrichArticleWithId for each.
+     *
+     * @param articleIds
+     * @return
+     */
+    default Map<String, Future<RichArticle>> enrichArticlesWithIds(Collection<String> articleIds) {
+        Map<String, Future<RichArticle>> results = new LinkedHashMap<>();
+        for (String articleId : articleIds) {
+            results.computeIfAbsent(articleId, this::enrichArticleWithId);
+        }
+        return results;
+    }
 }
@@ -0,0 +1,25 @@
+package culturetrip.articles;
+
+/**
+ * What an enrichment fails with when the article repository has no
+ * ArticleReference for the id, so callers can tell an article that doesn't
+ * exist from one that couldn't be enriched, e.g. to answer 404 rather than
+ * 502.
+ *
+ * @author mball
+ */
+public class ArticleNotFoundException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String articleId;
+
+    public ArticleNotFoundException(String articleId) {
+        super("No article " + articleId);
+        this.articleId = articleId;
+    }
+
+    public String getArticleId() {
+        return articleId;
+    }
+}
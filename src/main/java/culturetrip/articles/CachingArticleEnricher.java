@@ -0,0 +1,227 @@
+package culturetrip.articles;
+
+import culturetrip.articles.cache.CacheStats;
+import culturetrip.articles.cache.MappedRichArticleStore;
+import culturetrip.articles.cache.SegmentedLruCache;
+import culturetrip.articles.concurrent.Futures;
+import culturetrip.articles.metrics.EnricherMetrics;
+import culturetrip.articles.models.RichArticle;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An ArticleEnricher that caches whole RichArticles, so a hit doesn't call
+ * either service or build anything. The first level is a bounded cache on the
+ * heap. A MappedRichArticleStore can be set as a second level behind it, which
+ * holds far more articles off the heap and keeps them across restarts, so a
+ * new deploy doesn't start cold. Articles found in the second level are
+ * copied into the first.
+ *
+ * Entries expire a hard time to live after they were written, after which
+ * the caller has to wait for the article to be enriched again. If a refresh
+ * time is also set, an entry older than that is still returned straight away,
+ * stale-while-revalidate, but a single background enrichment is started to
+ * replace it. So a popular article only ever costs a map lookup, as long as it
+ * is asked for again before it expires. Refreshes are made at background
+ * priority, as nobody is waiting for them.
+ *
+ * Partial articles and failures are never cached.
+ *
+ * Articles enriched with a projection are cached apart from whole ones, in a
+ * heap cache of their own, so card traffic can't push whole articles out of
+ * the main cache, and a cut down article is never handed to a caller that
+ * wants the whole thing. A projection is served from a whole article if that
+ * is already cached, and is otherwise only cached under the same projection.
+ * Projected articles expire like whole ones but aren't refreshed in the
+ * background or written to the second level.
+ *
+ * @author mball
+ */
+public class CachingArticleEnricher implements ArticleEnricher {
+
+    private final ArticleEnricher articleEnricher;
+    private final SegmentedLruCache<String, RichArticle> cache;
+    private SegmentedLruCache<String, RichArticle> projectedCache;
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private MappedRichArticleStore secondLevel;
+    private EnricherMetrics metrics = EnricherMetrics.NOOP;
+    private long expireAfterWriteNanos = Long.MAX_VALUE;
+    private long refreshAfterWriteNanos = Long.MAX_VALUE;
+
+    public CachingArticleEnricher(ArticleEnricher articleEnricher, int maximumSize) {
+        this.articleEnricher = articleEnricher;
+        this.cache = new SegmentedLruCache<>(maximumSize);
+        this.projectedCache = new SegmentedLruCache<>(maximumSize);
+    }
+
+    /**
+     * Sets the hard time to live, after which a cached article is no longer
+     * used.
+     *
+     * @param duration
+     * @param unit
+     */
+    public void setExpireAfterWrite(long duration, TimeUnit unit) {
+        this.expireAfterWriteNanos = unit.toNanos(duration);
+    }
+
+    /**
+     * Sets the soft time to live, after which a cached article is still used
+     * but refreshed in the background. It should be shorter than the hard one.
+     *
+     * @param duration
+     * @param unit
+     */
+    public void setRefreshAfterWrite(long duration, TimeUnit unit) {
+        this.refreshAfterWriteNanos = unit.toNanos(duration);
+    }
+
+    /**
+     * Sets the store to use as a second level behind the heap cache. It is up
+     * to the caller to close it.
+     *
+     * @param secondLevel
+     */
+    public void setSecondLevel(MappedRichArticleStore secondLevel) {
+        this.secondLevel = secondLevel;
+        registerCaches();
+    }
+
+    /**
+     * Sets how many articles enriched with a projection are cached, the same
+     * as for whole articles by default. Any already cached are dropped.
+     *
+     * @param maximumSize
+     */
+    public void setMaximumProjectedSize(int maximumSize) {
+        this.projectedCache = new SegmentedLruCache<>(maximumSize);
+        registerCaches();
+    }
+
+    /**
+     * Registers the caches' stats with the metrics, as "articles",
+     * "projectedArticles" and, if there is a second level, "storedArticles".
+     * They are registered again if the projected cache or the second level is
+     * changed later, but that has to happen before the metrics are exported.
+     *
+     * @param metrics
+     */
+    public void setMetrics(EnricherMetrics metrics) {
+        this.metrics = metrics;
+        registerCaches();
+    }
+
+    public CacheStats getStats() {
+        return cache.getStats();
+    }
+
+    public CacheStats getProjectedStats() {
+        return projectedCache.getStats();
+    }
+
+    private void registerCaches() {
+        metrics.registerCache("articles", cache.getStats());
+        metrics.registerCache("projectedArticles", projectedCache.getStats());
+        if (secondLevel != null) {
+            metrics.registerCache("storedArticles", secondLevel.getStats());
+        }
+    }
+
+    @Override
+    public Future<RichArticle> enrichArticleWithId(String articleId) {
+        return enrichArticleWithId(articleId, Priority.INTERACTIVE);
+    }
+
+    @Override
+    public Future<RichArticle> enrichArticleWithId(String articleId, Priority priority) {
+        SegmentedLruCache.Entry<RichArticle> cached = cache.getEntryIfPresent(articleId);
+        if (cached != null) {
+            if (cached.getAgeNanos() >= refreshAfterWriteNanos) {
+                refresh(articleId);
+            }
+            return CompletableFuture.completedFuture(cached.getValue());
+        }
+        MappedRichArticleStore store = secondLevel;
+        if (store != null) {
+            MappedRichArticleStore.Entry entry = store.get(articleId);
+            if (entry != null) {
+                long ageNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - entry.getWrittenAtMillis());
+                long timeToLiveMillis = entry.getExpiresAtMillis() - entry.getWrittenAtMillis();
+                //keep the age, or the copy would go unrefreshed for another whole refresh period.
+                cache.put(articleId, entry.getValue(), ageNanos, TimeUnit.MILLISECONDS.toNanos(timeToLiveMillis));
+                if (ageNanos >= refreshAfterWriteNanos) {
+                    refresh(articleId);
+                }
+                return CompletableFuture.completedFuture(entry.getValue());
+            }
+        }
+        return load(articleId, priority);
+    }
+
+    @Override
+    public Future<RichArticle> enrichArticleWithId(String articleId, Projection projection) {
+        if (projection.isFull()) {
+            return enrichArticleWithId(articleId);
+        }
+        RichArticle whole = cache.peek(articleId);
+        if (whole != null) {
+            return CompletableFuture.completedFuture(projection.apply(whole));
+        }
+        SegmentedLruCache<String, RichArticle> projected = projectedCache;
+        String key = projection.keyFor(articleId);
+        RichArticle cached = projected.getIfPresent(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<RichArticle> future = Futures.toCompletableFuture(articleEnricher.enrichArticleWithId(articleId, projection));
+        future.whenComplete((richArticle, ex) -> {
+            if (ex == null && richArticle != null && richArticle.isComplete()) {
+                projected.put(key, richArticle, expireAfterWriteNanos);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Enriches the article with the wrapped enricher and caches it in both
+     * levels once it is ready.
+     *
+     * @param articleId
+     * @param priority
+     * @return
+     */
+    private CompletableFuture<RichArticle> load(String articleId, Priority priority) {
+        CompletableFuture<RichArticle> future = Futures.toCompletableFuture(articleEnricher.enrichArticleWithId(articleId, priority));
+        future.whenComplete((richArticle, ex) -> {
+            if (ex == null && richArticle != null && richArticle.isComplete()) {
+                cache.put(articleId, richArticle, expireAfterWriteNanos);
+                MappedRichArticleStore store = secondLevel;
+                if (store != null) {
+                    store.put(richArticle, expireAfterWriteNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Enriches an article again in the background, unless that's already
+     * happening.
+     *
+     * @param articleId
+     */
+    private void refresh(String articleId) {
+        if (refreshing.add(articleId)) {
+            cache.getStats().recordRefresh();
+            try {
+                load(articleId, Priority.BACKGROUND).whenComplete((richArticle, ex) -> refreshing.remove(articleId));
+            } catch (RuntimeException ex) {
+                //the stale entry is still good for now, so let the next hit try again.
+                refreshing.remove(articleId);
+            }
+        }
+    }
+}
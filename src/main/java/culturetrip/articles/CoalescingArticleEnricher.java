@@ -0,0 +1,62 @@
+package culturetrip.articles;
+
+import culturetrip.articles.concurrent.Futures;
+import culturetrip.articles.concurrent.SingleFlight;
+import culturetrip.articles.models.RichArticle;
+import java.util.concurrent.Future;
+
+/**
+ * An ArticleEnricher that shares one in-flight enrichment between all the
+ * concurrent callers asking for the same article. Callers that join an
+ * enrichment already in flight get its result, so they also share the
+ * deadline of the caller that started it. Callers asking for the same
+ * article with a different projection don't share, as the result wouldn't
+ * have what they asked for. Nor do callers with a different priority, as an
+ * interactive caller joining a background refresh would wait behind all the
+ * other background work.
+ *
+ * @author mball
+ */
+public class CoalescingArticleEnricher implements ArticleEnricher {
+
+    private final ArticleEnricher articleEnricher;
+    private final SingleFlight<String, RichArticle> inFlight = new SingleFlight<>();
+    private final SingleFlight<String, RichArticle> backgroundInFlight = new SingleFlight<>();
+    private final SingleFlight<String, RichArticle> projectedInFlight = new SingleFlight<>();
+
+    public CoalescingArticleEnricher(ArticleEnricher articleEnricher) {
+        this.articleEnricher = articleEnricher;
+    }
+
+    /**
+     * The interactive enrichments in flight.
+     *
+     * @return
+     */
+    public SingleFlight<String, RichArticle> getInFlight() {
+        return inFlight;
+    }
+
+    public SingleFlight<String, RichArticle> getInFlight(Priority priority) {
+        return priority == Priority.BACKGROUND ? backgroundInFlight : inFlight;
+    }
+
+    @Override
+    public Future<RichArticle> enrichArticleWithId(String articleId) {
+        return enrichArticleWithId(articleId, Priority.INTERACTIVE);
+    }
+
+    @Override
+    public Future<RichArticle> enrichArticleWithId(String articleId, Priority priority) {
+        return getInFlight(priority).execute(articleId, id -> Futures.toCompletableFuture(articleEnricher.enrichArticleWithId(id, priority)));
+    }
+
+    @Override
+    public Future<RichArticle> enrichArticleWithId(String articleId, Projection projection) {
+        if (projection.isFull()) {
+            return enrichArticleWithId(articleId);
+        }
+        return projectedInFlight.execute(projection.keyFor(articleId),
+                key -> Futures.toCompletableFuture(articleEnricher.enrichArticleWithId(articleId, projection)));
+    }
+}
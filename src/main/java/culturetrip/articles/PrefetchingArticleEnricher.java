@@ -0,0 +1,254 @@
+package culturetrip.articles;
+
+import culturetrip.articles.cache.TopKAccessLog;
+import culturetrip.articles.concurrent.Futures;
+import culturetrip.articles.models.RichArticle;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An ArticleEnricher that records which articles are asked for in a
+ * TopKAccessLog, and uses it to enrich articles before anyone asks for them,
+ * so they are waiting in the caches behind it when they do. Put it in front
+ * of a CachingArticleEnricher, over a SimpleArticleEnricher on the caching
+ * clients, and one enrichment warms the result, reference and asset caches
+ * all at once.
+ *
+ * After a restart, warm() enriches the articles that were most popular
+ * before it, from a file saved with saveAccessLog(). While running,
+ * startPrefetching() regularly enriches the articles whose popularity is
+ * rising, which are the ones most likely to be asked for next by users who
+ * would otherwise pay for the whole enrichment.
+ *
+ * Warming and prefetching are done at background priority and at a bounded
+ * rate, so they never crowd out the requests they are there to speed up, and
+ * aren't recorded in the access log themselves. The rate is shared by
+ * everything this enricher warms, however many lists are being warmed at
+ * once. The enrichments are started from the executor, see
+ * Futures.scheduler(), and any it turns away are skipped.
+ *
+ * @author mball
+ */
+public class PrefetchingArticleEnricher implements ArticleEnricher {
+
+    private final ArticleEnricher articleEnricher;
+    private final TopKAccessLog accessLog;
+    private final ScheduledExecutorService scheduler;
+    private final LongAdder prefetches = new LongAdder();
+    private final AtomicLong nextStartNanos = new AtomicLong(System.nanoTime());
+    private volatile Executor executor = Futures.asyncExecutor();
+    private volatile double ratePerSecond = 50;
+
+    public PrefetchingArticleEnricher(ArticleEnricher articleEnricher, TopKAccessLog accessLog) {
+        this(articleEnricher, accessLog, Futures.scheduler());
+    }
+
+    public PrefetchingArticleEnricher(ArticleEnricher articleEnricher, TopKAccessLog accessLog,
+            ScheduledExecutorService scheduler) {
+        this.articleEnricher = articleEnricher;
+        this.accessLog = accessLog;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Sets the most articles a second warming and prefetching can start
+     * between them, 50 by default.
+     *
+     * @param ratePerSecond
+     */
+    public void setRate(double ratePerSecond) {
+        if (ratePerSecond <= 0) {
+            throw new IllegalArgumentException("ratePerSecond must be positive: " + ratePerSecond);
+        }
+        this.ratePerSecond = ratePerSecond;
+    }
+
+    /**
+     * Sets where the enrichments are started from, Futures.asyncExecutor()
+     * by default.
+     *
+     * @param executor
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public TopKAccessLog getAccessLog() {
+        return accessLog;
+    }
+
+    /**
+     * The number of articles enriched by warming or prefetching rather than
+     * because they were asked for.
+     *
+     * @return
+     */
+    public long getPrefetchCount() {
+        return prefetches.sum();
+    }
+
+    @Override
+    public Future<RichArticle> enrichArticleWithId(String articleId) {
+        return enrichArticleWithId(articleId, Priority.INTERACTIVE);
+    }
+
+    @Override
+    public Future<RichArticle> enrichArticleWithId(String articleId, Priority priority) {
+        accessLog.record(articleId);
+        return articleEnricher.enrichArticleWithId(articleId, priority);
+    }
+
+    /**
+     * Records the access like any other. Warming and prefetching always
+     * enrich the whole article, which a projection can be served from.
+     *
+     * @param articleId
+     * @param projection
+     * @return
+     */
+    @Override
+    public Future<RichArticle> enrichArticleWithId(String articleId, Projection projection) {
+        accessLog.record(articleId);
+        return articleEnricher.enrichArticleWithId(articleId, projection);
+    }
+
+    /**
+     * Saves the most popular articles, to warm() from after a restart.
+     *
+     * @param path
+     * @throws IOException
+     */
+    public void saveAccessLog(Path path) throws IOException {
+        accessLog.save(path);
+    }
+
+    /**
+     * Enriches the articles saved by saveAccessLog(), most popular first.
+     * Nothing is done if there's no file.
+     *
+     * @param path
+     * @return completes with the number enriched once they have all been
+     * started and finished, successfully or not.
+     * @throws IOException
+     */
+    public CompletableFuture<Integer> warm(Path path) throws IOException {
+        return warm(TopKAccessLog.load(path));
+    }
+
+    /**
+     * Enriches the given articles in order, starting no more than the rate a
+     * second.
+     *
+     * @param articleIds
+     * @return completes with the number enriched once they have all been
+     * started and finished, successfully or not.
+     */
+    public CompletableFuture<Integer> warm(Collection<String> articleIds) {
+        return new Warming(new ArrayList<>(articleIds)).start();
+    }
+
+    /**
+     * Starts prefetching the articles that are rising fastest in the access
+     * log, up to the given number every period. A period is skipped if the
+     * articles from the last one are still being prefetched. Cancel the
+     * returned Future to stop.
+     *
+     * @param count
+     * @param period
+     * @param unit
+     * @return
+     */
+    public ScheduledFuture<?> startPrefetching(int count, long period, TimeUnit unit) {
+        AtomicReference<CompletableFuture<Integer>> last = new AtomicReference<>(CompletableFuture.completedFuture(0));
+        return scheduler.scheduleWithFixedDelay(() -> {
+            if (last.get().isDone()) {
+                last.set(warm(accessLog.getRising(count)));
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Takes the next start time the rate allows, whoever is asking.
+     *
+     * @return how long to wait until then.
+     */
+    private long reserveStartNanos() {
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        long now = System.nanoTime();
+        long next = nextStartNanos.getAndAccumulate(now, (reserved, current) -> Math.max(reserved, current) + intervalNanos);
+        return Math.max(0, next - now);
+    }
+
+    /**
+     * Starts the articles one by one at the rate, rather than all at once, so
+     * a long list of them is spread out rather than landing on the services
+     * together. Each article reserves its start time once the one before it
+     * has started, so lists being warmed at the same time take turns.
+     */
+    private final class Warming {
+
+        private final Iterator<String> articleIds;
+        private final CompletableFuture<Integer> result = new CompletableFuture<>();
+        private final AtomicInteger outstanding = new AtomicInteger(1);
+        private final AtomicInteger enriched = new AtomicInteger();
+
+        Warming(List<String> articleIds) {
+            this.articleIds = articleIds.iterator();
+        }
+
+        CompletableFuture<Integer> start() {
+            next();
+            return result;
+        }
+
+        private void next() {
+            if (!articleIds.hasNext()) {
+                finished();
+                return;
+            }
+            String articleId = articleIds.next();
+            outstanding.incrementAndGet();
+            Futures.scheduleAsync(scheduler, executor, () -> start(articleId), reserveStartNanos(), TimeUnit.NANOSECONDS, rejected -> {
+                finished();
+                next();
+            });
+        }
+
+        private void start(String articleId) {
+            prefetches.increment();
+            CompletableFuture<RichArticle> richArticle;
+            try {
+                richArticle = Futures.toCompletableFuture(articleEnricher.enrichArticleWithId(articleId, Priority.BACKGROUND));
+            } catch (RuntimeException ex) {
+                richArticle = Futures.failed(ex);
+            }
+            richArticle.whenComplete((article, ex) -> {
+                if (ex == null) {
+                    enriched.incrementAndGet();
+                }
+                finished();
+            });
+            next();
+        }
+
+        private void finished() {
+            if (outstanding.decrementAndGet() == 0) {
+                result.complete(enriched.get());
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package culturetrip.articles;
+
+/**
+ * How urgently an article is wanted, so work nobody is waiting on can make
+ * way for work somebody is. See PriorityArticleEnricher.
+ *
+ * @author mball
+ */
+public enum Priority {
+    /**
+     * A person is waiting for the article, to show them a page. The default.
+     */
+    INTERACTIVE,
+    /**
+     * Nobody is waiting for this article in particular, like a cache refresh
+     * or a re-indexing job. It can wait behind interactive work.
+     */
+    BACKGROUND
+}
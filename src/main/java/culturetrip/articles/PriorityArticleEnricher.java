@@ -0,0 +1,236 @@
+package culturetrip.articles;
+
+import culturetrip.articles.concurrent.Futures;
+import culturetrip.articles.models.RichArticle;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * An ArticleEnricher that limits how many enrichments are in flight at once,
+ * queueing the rest by priority, so background jobs can share the downstream
+ * services with page requests without slowing them down.
+ *
+ * A free slot always goes to the oldest interactive request waiting, and only
+ * to a background one if there are none. Background requests are also never
+ * given more than their share of the slots, even when nothing else is
+ * waiting, so however much background work is queued there is always room for
+ * an interactive request to start straight away. Interactive requests can use
+ * every slot.
+ *
+ * Requests without a priority, including those with a projection, are
+ * interactive. A request cancelled while it is queued is never started, and
+ * one cancelled while running cancels the wrapped enricher's Future.
+ *
+ * @author mball
+ */
+public class PriorityArticleEnricher implements ArticleEnricher {
+
+    private final ArticleEnricher articleEnricher;
+    private final int maxInFlight;
+    private int maxBackgroundInFlight;
+    private int maxQueued = Integer.MAX_VALUE;
+
+    //guarded by this
+    private final Queue<Request> interactive = new ArrayDeque<>();
+    private final Queue<Request> background = new ArrayDeque<>();
+    private int inFlight;
+    private int backgroundInFlight;
+    private boolean draining;
+    private boolean drainAgain;
+
+    /**
+     * @param articleEnricher
+     * @param maxInFlight the most enrichments in flight at once, of either
+     * priority.
+     */
+    public PriorityArticleEnricher(ArticleEnricher articleEnricher, int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        this.articleEnricher = articleEnricher;
+        this.maxInFlight = maxInFlight;
+        setBackgroundShare(0.25);
+    }
+
+    /**
+     * Sets the fraction of the slots background requests can have at once,
+     * 0.25 by default. They always get at least one.
+     *
+     * @param backgroundShare
+     */
+    public synchronized void setBackgroundShare(double backgroundShare) {
+        if (backgroundShare < 0 || backgroundShare > 1) {
+            throw new IllegalArgumentException("backgroundShare must be between 0 and 1: " + backgroundShare);
+        }
+        this.maxBackgroundInFlight = Math.max(1, (int) (maxInFlight * backgroundShare));
+    }
+
+    /**
+     * Sets how many requests of each priority can be waiting for a slot,
+     * beyond which they fail with a RejectedExecutionException. Unbounded by
+     * default.
+     *
+     * @param maxQueued
+     */
+    public synchronized void setMaxQueued(int maxQueued) {
+        this.maxQueued = maxQueued;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getBackgroundInFlight() {
+        return backgroundInFlight;
+    }
+
+    public synchronized int getQueued(Priority priority) {
+        return queueFor(priority).size();
+    }
+
+    @Override
+    public Future<RichArticle> enrichArticleWithId(String articleId) {
+        return enrichArticleWithId(articleId, Priority.INTERACTIVE);
+    }
+
+    @Override
+    public Future<RichArticle> enrichArticleWithId(String articleId, Priority priority) {
+        return enqueue(new Request(articleId, priority, Projection.FULL));
+    }
+
+    @Override
+    public Future<RichArticle> enrichArticleWithId(String articleId, Projection projection) {
+        return enqueue(new Request(articleId, Priority.INTERACTIVE, projection));
+    }
+
+    private Future<RichArticle> enqueue(Request request) {
+        synchronized (this) {
+            Queue<Request> queue = queueFor(request.priority);
+            if (queue.size() >= maxQueued) {
+                return Futures.failed(new RejectedExecutionException(request.priority + " queue is full"));
+            }
+            queue.add(request);
+        }
+        request.result.whenComplete((richArticle, ex) -> {
+            if (request.result.isCancelled()) {
+                dequeue(request);
+            }
+        });
+        startNext();
+        return request.result;
+    }
+
+    private Queue<Request> queueFor(Priority priority) {
+        return priority == Priority.BACKGROUND ? background : interactive;
+    }
+
+    /**
+     * Starts queued requests for as long as there are slots for them. The
+     * wrapped enricher is called outside the lock, as it may complete
+     * straight away and come back in here.
+     *
+     * Only one thread drains the queues at a time. Anyone else coming in here,
+     * including an enrichment completing straight away on the draining thread,
+     * just tells it to go round again, so a long queue of requests that
+     * complete straight away is started in a loop rather than by recursing
+     * once per request.
+     */
+    private void startNext() {
+        synchronized (this) {
+            if (draining) {
+                drainAgain = true;
+                return;
+            }
+            draining = true;
+        }
+        while (true) {
+            Request next;
+            while ((next = take()) != null) {
+                start(next);
+            }
+            synchronized (this) {
+                if (!drainAgain) {
+                    draining = false;
+                    return;
+                }
+                drainAgain = false;
+            }
+        }
+    }
+
+    private synchronized Request take() {
+        while (inFlight < maxInFlight) {
+            Request next = interactive.poll();
+            if (next == null && backgroundInFlight < maxBackgroundInFlight) {
+                next = background.poll();
+            }
+            if (next == null) {
+                return null;
+            }
+            if (next.result.isDone()) {
+                //cancelled while it was waiting.
+                continue;
+            }
+            inFlight++;
+            if (next.priority == Priority.BACKGROUND) {
+                backgroundInFlight++;
+            }
+            return next;
+        }
+        return null;
+    }
+
+    private void start(Request request) {
+        CompletableFuture<RichArticle> enrichment;
+        try {
+            enrichment = Futures.toCompletableFuture(request.projection.isFull()
+                    ? articleEnricher.enrichArticleWithId(request.articleId, request.priority)
+                    : articleEnricher.enrichArticleWithId(request.articleId, request.projection));
+        } catch (RuntimeException ex) {
+            enrichment = Futures.failed(ex);
+        }
+        CompletableFuture<RichArticle> started = enrichment;
+        request.result.whenComplete((richArticle, ex) -> {
+            if (request.result.isCancelled()) {
+                started.cancel(true);
+            }
+        });
+        started.whenComplete((richArticle, ex) -> {
+            release(request.priority);
+            if (ex != null) {
+                request.result.completeExceptionally(Futures.unwrap(ex));
+            } else {
+                request.result.complete(richArticle);
+            }
+            startNext();
+        });
+    }
+
+    private synchronized void dequeue(Request request) {
+        queueFor(request.priority).remove(request);
+    }
+
+    private synchronized void release(Priority priority) {
+        inFlight--;
+        if (priority == Priority.BACKGROUND) {
+            backgroundInFlight--;
+        }
+    }
+
+    private static final class Request {
+
+        private final String articleId;
+        private final Priority priority;
+        private final Projection projection;
+        private final CompletableFuture<RichArticle> result = new CompletableFuture<>();
+
+        Request(String articleId, Priority priority, Projection projection) {
+            this.articleId = articleId;
+            this.priority = priority;
+            this.projection = projection;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package culturetrip.articles;
+
+import culturetrip.articles.models.MissingAsset;
+import culturetrip.articles.models.RichArticle;
+import culturetrip.articles.models.Video;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Which parts of a RichArticle a caller needs, so the enricher only asks the
+ * assets service for those. A card or a link preview only needs the name and
+ * the hero image, and leaving out the videos saves a call per video.
+ *
+ * The id and name are always included, as they come with the
+ * ArticleReference, which is needed whatever else is asked for. The hero
+ * image and the videos are optional, and the videos can be limited to the
+ * first few. A RichArticle enriched with a projection has no hero image if it
+ * wasn't asked for, and only the videos that were. The missing assets only
+ * list the assets that were asked for.
+ *
+ * Projections are immutable and can be built up from the constants, e.g.
+ * Projection.HERO_IMAGE.withFirstVideos(1). They can also be written and
+ * parsed as a comma separated list of fields, like "heroImage,videos:3".
+ *
+ * @author mball
+ */
+public final class Projection {
+
+    private static final int ALL_VIDEOS = Integer.MAX_VALUE;
+
+    /**
+     * Just the id and name.
+     */
+    public static final Projection NAME = new Projection(false, 0);
+    /**
+     * The id, name and hero image, as used for cards and link previews.
+     */
+    public static final Projection HERO_IMAGE = new Projection(true, 0);
+    /**
+     * The id, name and every video.
+     */
+    public static final Projection VIDEOS = new Projection(false, ALL_VIDEOS);
+    /**
+     * The whole article, the same as enriching it without a projection.
+     */
+    public static final Projection FULL = new Projection(true, ALL_VIDEOS);
+
+    private final boolean heroImage;
+    private final int videoLimit;
+
+    private Projection(boolean heroImage, int videoLimit) {
+        this.heroImage = heroImage;
+        this.videoLimit = videoLimit;
+    }
+
+    /**
+     * The id, name and the first few videos.
+     *
+     * @param videoLimit how many videos, in the order the article lists them.
+     * @return
+     */
+    public static Projection firstVideos(int videoLimit) {
+        return NAME.withFirstVideos(videoLimit);
+    }
+
+    public Projection withHeroImage() {
+        return new Projection(true, videoLimit);
+    }
+
+    public Projection withVideos() {
+        return new Projection(heroImage, ALL_VIDEOS);
+    }
+
+    public Projection withFirstVideos(int videoLimit) {
+        if (videoLimit < 0) {
+            throw new IllegalArgumentException("videoLimit must not be negative: " + videoLimit);
+        }
+        return new Projection(heroImage, videoLimit);
+    }
+
+    public boolean includesHeroImage() {
+        return heroImage;
+    }
+
+    public boolean includesVideos() {
+        return videoLimit > 0;
+    }
+
+    /**
+     * The most videos to include, Integer.MAX_VALUE for all of them.
+     *
+     * @return
+     */
+    public int getVideoLimit() {
+        return videoLimit;
+    }
+
+    public boolean isFull() {
+        return heroImage && videoLimit == ALL_VIDEOS;
+    }
+
+    /**
+     * Leaves out of a whole RichArticle the parts that weren't asked for, for
+     * enrichers that can only enrich the whole thing.
+     *
+     * @param richArticle
+     * @return the same RichArticle if nothing needs leaving out.
+     */
+    public RichArticle apply(RichArticle richArticle) {
+        if (richArticle == null || isFull()) {
+            return richArticle;
+        }
+        List<Video> videos = new ArrayList<>();
+        Collection<Video> allVideos = richArticle.getVideos();
+        if (allVideos != null) {
+            for (Video video : allVideos) {
+                if (videos.size() >= videoLimit) {
+                    break;
+                }
+                videos.add(video);
+            }
+        }
+        List<MissingAsset> missingAssets = new ArrayList<>();
+        for (MissingAsset missingAsset : richArticle.getMissingAssets()) {
+            if (missingAsset.getType() == MissingAsset.Type.IMAGE ? heroImage : includesVideos()) {
+                missingAssets.add(missingAsset);
+            }
+        }
+        return new RichArticle(richArticle.getId(),
+                richArticle.getName(),
+                heroImage ? richArticle.getHeroImage() : null,
+                Collections.unmodifiableList(videos),
+                missingAssets.isEmpty() ? Collections.emptyList() : missingAssets);
+    }
+
+    /**
+     * Parses a comma separated list of fields: name, heroImage, videos or
+     * videos:N for the first N. The name is always included whether it is
+     * listed or not.
+     *
+     * @param fields
+     * @return
+     * @throws IllegalArgumentException if there's a field it doesn't know.
+     */
+    public static Projection parse(String fields) {
+        Projection projection = NAME;
+        for (String field : fields.split(",")) {
+            field = field.trim();
+            if (field.isEmpty() || field.equals("name")) {
+                continue;
+            }
+            if (field.equals("heroImage")) {
+                projection = projection.withHeroImage();
+            } else if (field.equals("videos")) {
+                projection = projection.withVideos();
+            } else if (field.startsWith("videos:")) {
+                try {
+                    projection = projection.withFirstVideos(Integer.parseInt(field.substring("videos:".length())));
+                } catch (NumberFormatException ex) {
+                    throw new IllegalArgumentException("Bad video limit: " + field, ex);
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown field: " + field);
+            }
+        }
+        return projection;
+    }
+
+    /**
+     * The key to cache or coalesce an article enriched with this projection
+     * under, which can't be mistaken for the article's own id.
+     *
+     * @param articleId
+     * @return
+     */
+    String keyFor(String articleId) {
+        return articleId + '\n' + this;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Projection)) {
+            return false;
+        }
+        Projection other = (Projection) obj;
+        return heroImage == other.heroImage && videoLimit == other.videoLimit;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Boolean.hashCode(heroImage) + videoLimit;
+    }
+
+    /**
+     * The fields in the form parse() reads.
+     *
+     * @return
+     */
+    @Override
+    public String toString() {
+        StringBuilder fields = new StringBuilder("name");
+        if (heroImage) {
+            fields.append(",heroImage");
+        }
+        if (videoLimit == ALL_VIDEOS) {
+            fields.append(",videos");
+        } else if (videoLimit > 0) {
+            fields.append(",videos:").append(videoLimit);
+        }
+        return fields.toString();
+    }
+}
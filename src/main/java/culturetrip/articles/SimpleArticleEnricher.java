@@ -1,145 +1,527 @@
-package culturetrip.articles;
-
-import culturetrip.articles.clients.ArticleRepositoryClient;
-import culturetrip.articles.clients.AssetsServiceClient;
-import culturetrip.articles.models.ArticleReference;
-import culturetrip.articles.models.Image;
-import culturetrip.articles.models.RichArticle;
-import culturetrip.articles.models.Video;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CompletionException;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
-import java.util.stream.Collectors;
-
-/**
- * A simple implementation of the ArticleEnricher.
- * 
- * @author mball
- */
-public class SimpleArticleEnricher implements ArticleEnricher {
-
-    private long timeoutSeconds;
-    private AssetsServiceClient assetsServiceClient;
-    private ArticleRepositoryClient articleRepositoryClient;
-
-    public void setTimeoutSeconds(long timeoutSeconds) {
-        this.timeoutSeconds = timeoutSeconds;
-    }
-
-    public void setAssetsServiceClient(AssetsServiceClient assetsServiceClient) {
-        this.assetsServiceClient = assetsServiceClient;
-    }
-
-    public void setArticleRepositoryClient(ArticleRepositoryClient articleRepositoryClient) {
-        this.articleRepositoryClient = articleRepositoryClient;
-    }
-
-    @Override
-    public Future<RichArticle> enrichArticleWithId(String articleId) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                //fetch the ArticleReference to lookup.
-                ArticleReference articleReference = getArticleReference(articleId);                
-
-                //return a new RichArticle with all the information from the ArticleReference.
-                return new RichArticle(articleId,
-                        articleReference.getName(), 
-                        getImage(articleReference.getHeroImageUrl()),
-                        getVideos(articleReference));
-
-            } catch (NullPointerException | InterruptedException | ExecutionException | TimeoutException ex) {
-                /**
-                 * Something went wrong working with one of the Futures returned from the client, so throw a CompleteExecution. 
-                 * This will be wrapped in an ExecutionException, but that is just Java. The root cause can be extracted.
-                 * using getCause() on the resulting exception.
-                 */                
-                throw new CompletionException(ex);
-            }
-        });
-    }
-    /**
-     * Gets the ArticleReference given an articleId. It will call get()
-     * on the Future, so we have to ensure the correct Exceptions are thrown.
-     * These are dealt with in the calling method.
-     * 
-     * @param articleId
-     * @return
-     * @throws InterruptedException
-     * @throws ExecutionException
-     * @throws TimeoutException 
-     */
-    private ArticleReference getArticleReference(String articleId) throws InterruptedException, ExecutionException, TimeoutException {
-        //get the Future from the article client.
-        Future<ArticleReference> articleReferenceFuture = articleRepositoryClient.getArticleReferenceForId(articleId);
-        //block to get the ArticleReference for a given amount of time then throw TimeoutException
-        return articleReferenceFuture.get(timeoutSeconds, TimeUnit.SECONDS);        
-    }
-
-    /**
-     * Gets the Image for a given String URL. It calls get(duration, unit) on the Future, so we have
-     * to ensure the correct Exceptions are thrown. These are dealt with in the 
-     * calling method.
-     * 
-     * @param imageURL
-     * @return
-     * @throws InterruptedException
-     * @throws ExecutionException
-     * @throws TimeoutException 
-     */
-    private Image getImage(String imageURL) throws InterruptedException, ExecutionException, TimeoutException {
-        //get the Future from the asset service.
-        Future<Image> imageFuture = assetsServiceClient.getImageById(imageURL);
-
-        //block to get the Image for a given amount of time then throw TimeoutException
-        return imageFuture.get(timeoutSeconds, TimeUnit.SECONDS);
-    }    
-
-    /**
-     * TODO: We could create our own Function that calls the Future.get(duration, unit) and handle the Exception. Then we could use .map() in the Stream.
-     * I've kept it simple for now and used a for-each instead.
-     * 
-     * Gets the list of videos from a given ArticleReference. It has to collect all the Futures first, then
-     * it loops through and calls the get() on each to return the underlying Video Object. We have
-     * to ensure the correct Exceptions are thrown. These are dealt with in the 
-     * calling method.
-     * 
-     * 
-     * @param articleReference
-     * @return
-     * @throws InterruptedException
-     * @throws ExecutionException
-     * @throws TimeoutException 
-     */
-    private List<Video> getVideos(ArticleReference articleReference) throws InterruptedException, ExecutionException, TimeoutException {
-        List<Video> videos = new ArrayList<>();
-
-        for (Future<Video> videoFuture : getVideoFutures(articleReference)) {
-            //block to get the Video for a given amount of time then throw TimeoutException.
-            Video video = videoFuture.get(timeoutSeconds, TimeUnit.SECONDS);
-            if (video != null) {
-                videos.add(video);
-            }
-        }
-        return videos;
-    }
-    
-    /**
-     * Get a Collection of Future<Video> objects from each video URL in the 
-     * ArticleReference. 
-     * 
-     * @param articleReference
-     * @return 
-     */
-    private Collection<Future<Video>> getVideoFutures(ArticleReference articleReference) {
-         return articleReference.getVideoUrls().stream()
-                        .map(v -> assetsServiceClient.getVideoById(v))
-                        .collect(Collectors.toSet());
-    }
-
-}
+package culturetrip.articles;
+
+import culturetrip.articles.clients.ArticleRepositoryClient;
+import culturetrip.articles.clients.AssetsServiceClient;
+import culturetrip.articles.models.ArticleReference;
+import culturetrip.articles.models.Image;
+import culturetrip.articles.models.MissingAsset;
+import culturetrip.articles.models.RichArticle;
+import culturetrip.articles.models.Video;
+import culturetrip.articles.concurrent.Deadline;
+import culturetrip.articles.concurrent.Futures;
+import culturetrip.articles.concurrent.Retrier;
+import culturetrip.articles.metrics.EnricherMetrics;
+import culturetrip.articles.metrics.Stage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A simple implementation of the ArticleEnricher.
+ * 
+ * Enrichment is built entirely from CompletableFuture stages, so no thread is
+ * blocked waiting on the clients. Plain Futures handed back by the clients are
+ * adapted using Futures.toCompletableFuture().
+ * 
+ * @author mball
+ */
+public class SimpleArticleEnricher implements ArticleEnricher {
+
+    private long timeoutNanos;
+    private Executor executor;
+    private EnricherMetrics metrics = EnricherMetrics.NOOP;
+    private boolean partialResults;
+    private Retrier retrier;
+    private AssetsServiceClient assetsServiceClient;
+    private ArticleRepositoryClient articleRepositoryClient;
+
+    /**
+     * Sets the budget for a whole call to enrichArticleWithId, from asking for
+     * the ArticleReference to having every asset. Each step only gets whatever
+     * is left of it.
+     * 
+     * @param timeout
+     * @param unit 
+     */
+    public void setTimeout(long timeout, TimeUnit unit) {
+        this.timeoutNanos = unit.toNanos(timeout);
+    }
+
+    public void setTimeoutSeconds(long timeoutSeconds) {
+        setTimeout(timeoutSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Sets where the enricher does its own work: asking the clients for the
+     * reference and the assets, and building the RichArticle. See
+     * EnricherExecutors for a bounded pool or virtual threads, or pass any
+     * Executor. If it isn't set the work is done on whichever thread completed
+     * the client's Future.
+     * 
+     * @param executor 
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets where the latency, in-flight count and outcome of every enrichment
+     * and every client call are reported. See InMemoryEnricherMetrics.
+     * 
+     * @param metrics 
+     */
+    public void setMetrics(EnricherMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets whether a slow or failed asset fails the whole article, which is the
+     * default, or whether the RichArticle is returned with whatever assets
+     * arrived before the deadline. In partial mode the assets left out are
+     * listed in RichArticle.getMissingAssets(). The ArticleReference is still
+     * needed, so the article fails as before if that doesn't arrive.
+     * 
+     * @param partialResults 
+     */
+    public void setPartialResults(boolean partialResults) {
+        this.partialResults = partialResults;
+    }
+
+    /**
+     * Sets how failed calls to the clients are retried. Each call is retried
+     * on its own, so one flaky video doesn't mean fetching everything else
+     * again, and only while the deadline leaves time for it. Retries are
+     * reported to the metrics. Calls aren't retried if it isn't set.
+     * 
+     * @param retrier 
+     */
+    public void setRetrier(Retrier retrier) {
+        this.retrier = retrier;
+    }
+
+    public void setAssetsServiceClient(AssetsServiceClient assetsServiceClient) {
+        this.assetsServiceClient = assetsServiceClient;
+    }
+
+    public void setArticleRepositoryClient(ArticleRepositoryClient articleRepositoryClient) {
+        this.articleRepositoryClient = articleRepositoryClient;
+    }
+
+    @Override
+    public Future<RichArticle> enrichArticleWithId(String articleId) {
+        return enrichArticleWithId(articleId, Projection.FULL);
+    }
+
+    /**
+     * Enriches an article, only asking the assets service for the hero image
+     * if the projection includes it, and only for as many videos as it
+     * includes, taken in the order the ArticleReference gives them. Videos the
+     * asset service couldn't find are still left out, so there can be fewer
+     * than the limit even if the article has more.
+     * 
+     * @param articleId
+     * @param projection
+     * @return 
+     */
+    @Override
+    public Future<RichArticle> enrichArticleWithId(String articleId, Projection projection) {
+        return enrich(articleId, new EnrichmentContext(Deadline.after(timeoutNanos, TimeUnit.NANOSECONDS), projection, null, null));
+    }
+
+    /**
+     * Enriches a batch of articles sharing one deadline. Every article still gets
+     * its own Future, completed as soon as that article is ready, but the assets
+     * are shared across the batch, so a hero image or video used by several of
+     * the articles is only fetched once.
+     * 
+     * @param articleIds
+     * @return 
+     */
+    @Override
+    public Map<String, Future<RichArticle>> enrichArticlesWithIds(Collection<String> articleIds) {
+        Deadline deadline = Deadline.after(timeoutNanos, TimeUnit.NANOSECONDS);
+        Map<String, Call<Image>> images = new ConcurrentHashMap<>();
+        Map<String, Call<Video>> videos = new ConcurrentHashMap<>();
+        Map<String, Future<RichArticle>> results = new LinkedHashMap<>();
+        for (String articleId : articleIds) {
+            results.computeIfAbsent(articleId, id -> enrich(id, new EnrichmentContext(deadline, Projection.FULL, images, videos)));
+        }
+        return results;
+    }
+
+    /**
+     * Fetches the ArticleReference to lookup, then fans out for the assets once it
+     * arrives. Both steps run on the executor, if there is one. If one of the 
+     * clients throws rather than handing back a Future, or the executor rejects
+     * the work, the Future fails in the same way as if it had gone wrong later on.
+     * The root cause can be extracted using getCause() on the resulting 
+     * ExecutionException. If the repository has no ArticleReference for the
+     * id, the cause is an ArticleNotFoundException.
+     * 
+     * Once the returned Future completes, whether it succeeded, failed or was
+     * cancelled by the caller, any client calls of this article's that are
+     * still outstanding are cancelled, unless another article in the batch is
+     * still waiting on them. Cancelling the client's Future is what lets
+     * decorators such as LimitedAssetsServiceClient give back their permits.
+     * 
+     * @param articleId
+     * @param context
+     * @return 
+     */
+    private CompletableFuture<RichArticle> enrich(String articleId, EnrichmentContext context) {
+        long start = System.nanoTime();
+        metrics.started(Stage.TOTAL);
+        CompletableFuture<RichArticle> result = Futures.composeAsync(() -> getArticleReference(articleId, context), executor)
+                .thenCompose(articleReference -> Futures.composeAsync(
+                        () -> getAssets(articleId, articleReference, context), executor));
+        //hand back the dependent, so the metrics have been recorded by the time the caller sees the result.
+        CompletableFuture<RichArticle> returned = result.whenComplete(
+                (richArticle, ex) -> metrics.completed(Stage.TOTAL, System.nanoTime() - start, Futures.unwrap(ex)));
+        returned.whenComplete((richArticle, ex) -> context.finish());
+        return returned;
+    }
+
+    /**
+     * Requests the hero image and every video at the same time and builds the
+     * RichArticle once they have all arrived. This way the article takes as long
+     * as the slowest asset rather than the image plus the slowest video. Assets
+     * the projection leaves out are never requested.
+     * 
+     * @param articleId
+     * @param articleReference
+     * @param context
+     * @return 
+     */
+    private CompletableFuture<RichArticle> getAssets(String articleId, ArticleReference articleReference, EnrichmentContext context) {
+        if (context.isFinished()) {
+            //the caller has given up while we waited for the reference, so don't start on the assets.
+            return Futures.failed(new CancellationException());
+        }
+        if (articleReference == null) {
+            return Futures.failed(new ArticleNotFoundException(articleId));
+        }
+        CompletableFuture<Image> image = context.projection.includesHeroImage()
+                ? getImage(articleReference.getHeroImageUrl(), context)
+                : CompletableFuture.completedFuture(null);
+        Map<String, CompletableFuture<Video>> videoFutures = getVideoFutures(articleReference, context);
+
+        if (partialResults) {
+            List<CompletableFuture<?>> assets = new ArrayList<>(videoFutures.values());
+            assets.add(image);
+            //every asset settles by the deadline at the latest, so this never waits beyond it.
+            return CompletableFuture.allOf(assets.toArray(new CompletableFuture<?>[assets.size()]))
+                    .handle((done, ex) -> getPartialArticle(articleId, articleReference, image, videoFutures));
+        }
+        return image.thenCombine(getVideos(videoFutures.values()), (heroImage, videoList) -> new RichArticle(articleId,
+                articleReference.getName(),
+                heroImage,
+                videoList));
+    }
+
+    /**
+     * Builds a RichArticle from assets that have all settled, leaving out the
+     * ones that failed or timed out and listing them as missing instead, in the
+     * order the ArticleReference first gives them. The videos are unmodifiable,
+     * the same as for a complete article.
+     * 
+     * @param articleId
+     * @param articleReference
+     * @param image
+     * @param videoFutures
+     * @return 
+     */
+    private RichArticle getPartialArticle(String articleId, ArticleReference articleReference,
+            CompletableFuture<Image> image, Map<String, CompletableFuture<Video>> videoFutures) {
+        List<MissingAsset> missingAssets = new ArrayList<>();
+
+        Throwable imageFailure = failureOf(image);
+        if (imageFailure != null) {
+            missingAssets.add(new MissingAsset(MissingAsset.Type.IMAGE, articleReference.getHeroImageUrl(), imageFailure));
+        }
+
+        List<Video> videos = new ArrayList<>(videoFutures.size());
+        for (Map.Entry<String, CompletableFuture<Video>> entry : videoFutures.entrySet()) {
+            CompletableFuture<Video> videoFuture = entry.getValue();
+            Throwable videoFailure = failureOf(videoFuture);
+            if (videoFailure != null) {
+                missingAssets.add(new MissingAsset(MissingAsset.Type.VIDEO, entry.getKey(), videoFailure));
+            } else if (videoFuture.join() != null) {
+                videos.add(videoFuture.join());
+            }
+        }
+
+        return new RichArticle(articleId,
+                articleReference.getName(),
+                imageFailure == null ? image.join() : null,
+                List.copyOf(videos),
+                missingAssets);
+    }
+
+    /**
+     * What a completed Future failed with, or null if it succeeded.
+     * 
+     * @param future
+     * @return 
+     */
+    private static Throwable failureOf(CompletableFuture<?> future) {
+        try {
+            future.join();
+            return null;
+        } catch (CompletionException | CancellationException ex) {
+            return Futures.unwrap(ex);
+        }
+    }
+
+    /**
+     * Gets the ArticleReference given an articleId. Nothing blocks here, the
+     * returned stage completes when the client's Future does, or with a 
+     * TimeoutException if the deadline passes first.
+     * 
+     * @param articleId
+     * @param context
+     * @return
+     */
+    private CompletableFuture<ArticleReference> getArticleReference(String articleId, EnrichmentContext context) {
+        return context.use(call(Stage.REFERENCE, () -> articleRepositoryClient.getArticleReferenceForId(articleId), context.deadline));
+    }
+
+    /**
+     * Gets the Image for a given String URL. The returned stage completes with a
+     * TimeoutException if the asset service doesn't answer before the deadline.
+     * 
+     * @param imageURL
+     * @param context
+     * @return
+     */
+    private CompletableFuture<Image> getImage(String imageURL, EnrichmentContext context) {
+        return context.share(context.images, imageURL,
+                url -> call(Stage.IMAGE, () -> assetsServiceClient.getImageById(url), context.deadline));
+    }
+
+    /**
+     * Gets the list of videos from the Futures for them, in the same order.
+     * All the Futures are requested up front and each video is put in its slot
+     * as soon as it arrives, so there's nothing left to gather once the last
+     * one does. Videos the asset service couldn't find come back as null and
+     * are left out. If any video fails the list fails straight away, without
+     * waiting for the rest.
+     * 
+     * @param videoFutures
+     * @return an unmodifiable list.
+     */
+    private static CompletableFuture<List<Video>> getVideos(Collection<CompletableFuture<Video>> videoFutures) {
+        if (videoFutures.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        CompletableFuture<List<Video>> videoList = new CompletableFuture<>();
+        Video[] slots = new Video[videoFutures.size()];
+        AtomicInteger remaining = new AtomicInteger(slots.length);
+        int i = 0;
+        for (CompletableFuture<Video> videoFuture : videoFutures) {
+            int slot = i++;
+            videoFuture.whenComplete((video, ex) -> {
+                if (ex != null) {
+                    videoList.completeExceptionally(Futures.unwrap(ex));
+                    return;
+                }
+                slots[slot] = video;
+                //the decrement publishes the slot to whichever thread brings the count to zero.
+                if (remaining.decrementAndGet() == 0) {
+                    videoList.complete(compact(slots));
+                }
+            });
+        }
+        return videoList;
+    }
+
+    /**
+     * The non-null videos in an unmodifiable list no bigger than it needs to
+     * be.
+     * 
+     * @param slots
+     * @return 
+     */
+    private static List<Video> compact(Video[] slots) {
+        int found = 0;
+        for (Video video : slots) {
+            if (video != null) {
+                slots[found++] = video;
+            }
+        }
+        return found == slots.length ? List.of(slots) : List.of(Arrays.copyOf(slots, found));
+    }
+    
+    /**
+     * Gets a CompletableFuture<Video> for each distinct video URL in the
+     * ArticleReference, keyed on the URL in the order they first appear. An
+     * article that lists the same video more than once only asks for it, and
+     * shows it, once. No more are asked for than the projection includes.
+     * 
+     * @param articleReference
+     * @param context
+     * @return 
+     */
+    private Map<String, CompletableFuture<Video>> getVideoFutures(ArticleReference articleReference, EnrichmentContext context) {
+        Map<String, CompletableFuture<Video>> videoFutures = new LinkedHashMap<>();
+        int videoLimit = context.projection.getVideoLimit();
+        for (String videoUrl : articleReference.getVideoUrls()) {
+            if (videoFutures.size() >= videoLimit) {
+                break;
+            }
+            videoFutures.computeIfAbsent(videoUrl, v -> context.share(context.videos, v,
+                    url -> call(Stage.VIDEO, () -> assetsServiceClient.getVideoById(url), context.deadline)));
+        }
+        return videoFutures;
+    }
+
+    /**
+     * Calls one of the clients and adapts the Future so we can compose on it,
+     * failing it with a TimeoutException and cancelling the client's Future if it
+     * isn't done before the deadline. If there's a Retrier, a failed call is
+     * retried within the same deadline, and cancelling it cancels whichever
+     * attempt is in progress. The call is reported to the metrics as the given
+     * Stage, once however many attempts it takes.
+     * 
+     * @param <T>
+     * @param stage
+     * @param client
+     * @param deadline
+     * @return 
+     */
+    private <T> Call<T> call(Stage stage, Supplier<Future<T>> client, Deadline deadline) {
+        long start = System.nanoTime();
+        metrics.started(stage);
+        CompletableFuture<T> source;
+        Retrier currentRetrier = retrier;
+        if (currentRetrier != null) {
+            source = currentRetrier.call(() -> Futures.toCompletableFuture(client.get()), deadline, () -> metrics.retried(stage));
+        } else {
+            try {
+                source = Futures.toCompletableFuture(client.get());
+            } catch (RuntimeException ex) {
+                metrics.completed(stage, System.nanoTime() - start, ex);
+                throw ex;
+            }
+        }
+        CompletableFuture<T> result = Futures.within(source, deadline)
+                .whenComplete((value, ex) -> metrics.completed(stage, System.nanoTime() - start, Futures.unwrap(ex)));
+        return new Call<>(result, source);
+    }
+
+    /**
+     * Everything to do with enriching one article: the deadline, the parts of
+     * it that are wanted, the client calls it has made and, for a batch, the asset calls shared with the other
+     * articles in it.
+     */
+    private static final class EnrichmentContext {
+
+        private final Deadline deadline;
+        private final Projection projection;
+        private final Map<String, Call<Image>> images;
+        private final Map<String, Call<Video>> videos;
+        private final Queue<Call<?>> calls = new ConcurrentLinkedQueue<>();
+        private volatile boolean finished;
+
+        EnrichmentContext(Deadline deadline, Projection projection, Map<String, Call<Image>> images,
+                Map<String, Call<Video>> videos) {
+            this.deadline = deadline;
+            this.projection = projection;
+            this.images = images;
+            this.videos = videos;
+        }
+
+        /**
+         * Fetches an asset, or joins the call for it if another article in the
+         * same batch already asked for it and still wants it.
+         */
+        <T> CompletableFuture<T> share(Map<String, Call<T>> assets, String url, Function<String, Call<T>> fetch) {
+            if (assets == null || url == null) {
+                return use(fetch.apply(url));
+            }
+            return use(assets.compute(url, (key, existing) -> existing != null && existing.acquire() ? existing : fetch.apply(key)));
+        }
+
+        /**
+         * Keeps track of a call this article has a share of, so it can let go
+         * of it once the article is finished with.
+         */
+        <T> CompletableFuture<T> use(Call<T> call) {
+            calls.add(call);
+            if (finished) {
+                releaseAll();
+            }
+            return call.result;
+        }
+
+        boolean isFinished() {
+            return finished;
+        }
+
+        void finish() {
+            finished = true;
+            releaseAll();
+        }
+
+        private void releaseAll() {
+            Call<?> call;
+            while ((call = calls.poll()) != null) {
+                call.release();
+            }
+        }
+    }
+
+    /**
+     * A call to one of the clients, shared by however many articles are
+     * using it. Once the last of them lets go, the client's Future is
+     * cancelled if it still hasn't completed, and the call can't be joined any
+     * more.
+     */
+    private static final class Call<T> {
+
+        private final CompletableFuture<T> result;
+        private final CompletableFuture<T> source;
+        //guarded by this
+        private int users = 1;
+        private boolean cancelled;
+
+        Call(CompletableFuture<T> result, CompletableFuture<T> source) {
+            this.result = result;
+            this.source = source;
+        }
+
+        synchronized boolean acquire() {
+            if (cancelled) {
+                return false;
+            }
+            users++;
+            return true;
+        }
+
+        void release() {
+            synchronized (this) {
+                if (--users > 0 || source.isDone()) {
+                    return;
+                }
+                cancelled = true;
+            }
+            source.cancel(true);
+        }
+    }
+
+}
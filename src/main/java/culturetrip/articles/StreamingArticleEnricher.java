@@ -0,0 +1,291 @@
+package culturetrip.articles;
+
+import culturetrip.articles.concurrent.Futures;
+import culturetrip.articles.models.RichArticle;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Enriches a stream of article ids into a stream of RichArticles, for jobs
+ * like re-indexing that work through far more articles than could be held in
+ * memory at once. Subscribe it to a Publisher of ids and subscribe to it for
+ * the RichArticles.
+ *
+ * Ids are only requested from upstream while there are fewer than the maximum
+ * in flight, counting enriched articles the subscriber hasn't asked for yet.
+ * So a slow subscriber slows down the enrichment, and then the reading of ids,
+ * rather than RichArticles piling up, and memory stays the same however many
+ * ids there are.
+ *
+ * By default articles are passed on as soon as they're ready. If it is set to
+ * be ordered they're passed on in the order the ids came in, which means a
+ * slow article holds up the ones behind it. A failed article fails the stream
+ * unless it is set to skip failures, in which case it is counted and left
+ * out. Only one subscriber is supported.
+ *
+ * @author mball
+ */
+public class StreamingArticleEnricher implements Flow.Processor<String, RichArticle> {
+
+    private final ArticleEnricher articleEnricher;
+    private final Set<CompletableFuture<RichArticle>> enriching = ConcurrentHashMap.newKeySet();
+    private final Queue<CompletableFuture<RichArticle>> started = new ConcurrentLinkedQueue<>();
+    private final Queue<CompletableFuture<RichArticle>> finished = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final LongAdder failures = new LongAdder();
+    private int maxInFlight = 16;
+    private boolean ordered;
+    private boolean skipFailures;
+    private Priority priority = Priority.BACKGROUND;
+
+    private volatile Flow.Subscription upstream;
+    private volatile Flow.Subscriber<? super RichArticle> downstream;
+    private volatile boolean upstreamDone;
+    private volatile Throwable upstreamError;
+    private volatile Throwable badRequest;
+    private volatile boolean cancelled;
+
+    //only touched in drain(): ids asked for from upstream that haven't been passed on yet.
+    private int outstanding;
+    private boolean terminated;
+
+    public StreamingArticleEnricher(ArticleEnricher articleEnricher) {
+        this.articleEnricher = articleEnricher;
+    }
+
+    /**
+     * Sets the most articles that can be enriching or waiting for the
+     * subscriber at once, 16 by default. Must be set before subscribing.
+     *
+     * @param maxInFlight
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Sets whether articles are passed on in the order their ids arrived.
+     * Must be set before subscribing.
+     *
+     * @param ordered
+     */
+    public void setOrdered(boolean ordered) {
+        this.ordered = ordered;
+    }
+
+    /**
+     * Sets whether a failed article is left out rather than failing the
+     * stream. Must be set before subscribing.
+     *
+     * @param skipFailures
+     */
+    public void setSkipFailures(boolean skipFailures) {
+        this.skipFailures = skipFailures;
+    }
+
+    /**
+     * Sets the priority the articles are enriched at, background by default.
+     * Must be set before subscribing.
+     *
+     * @param priority
+     */
+    public void setPriority(Priority priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * The number of articles left out because they failed.
+     *
+     * @return
+     */
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super RichArticle> subscriber) {
+        if (downstream != null) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("StreamingArticleEnricher only supports one subscriber"));
+            return;
+        }
+        downstream = subscriber;
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    badRequest = new IllegalArgumentException("Subscribers must request a positive number: " + n);
+                    cancel();
+                    return;
+                }
+                demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                drain();
+            }
+        });
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (upstream != null || cancelled) {
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        drain();
+    }
+
+    @Override
+    public void onNext(String articleId) {
+        if (cancelled) {
+            return;
+        }
+        inFlight.incrementAndGet();
+        CompletableFuture<RichArticle> article;
+        try {
+            article = Futures.toCompletableFuture(articleEnricher.enrichArticleWithId(articleId, priority));
+        } catch (RuntimeException ex) {
+            article = Futures.failed(ex);
+        }
+        CompletableFuture<RichArticle> enrichment = article;
+        enriching.add(enrichment);
+        if (ordered) {
+            started.add(enrichment);
+        }
+        enrichment.whenComplete((richArticle, ex) -> {
+            enriching.remove(enrichment);
+            if (!ordered) {
+                finished.add(enrichment);
+            }
+            drain();
+        });
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        upstreamError = throwable;
+        upstreamDone = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamDone = true;
+        drain();
+    }
+
+    /**
+     * Passes on whatever the subscriber has asked for and is ready, then asks
+     * upstream for more ids if there's room. Only one thread is ever in here,
+     * whoever else calls it just makes that thread go round again, so the
+     * subscriber's signals are never concurrent.
+     */
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            Flow.Subscriber<? super RichArticle> subscriber = downstream;
+            if (!terminated && cancelled) {
+                terminated = true;
+                cancelAll();
+                if (badRequest != null && subscriber != null) {
+                    subscriber.onError(badRequest);
+                }
+            }
+            if (!terminated && subscriber != null) {
+                emit(subscriber);
+            }
+            if (!terminated && subscriber != null && upstreamDone && inFlight.get() == 0) {
+                terminated = true;
+                if (upstreamError != null) {
+                    subscriber.onError(upstreamError);
+                } else {
+                    subscriber.onComplete();
+                }
+            }
+            Flow.Subscription subscription = upstream;
+            if (!terminated && subscriber != null && subscription != null && !upstreamDone && outstanding < maxInFlight) {
+                int request = maxInFlight - outstanding;
+                outstanding = maxInFlight;
+                subscription.request(request);
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void emit(Flow.Subscriber<? super RichArticle> subscriber) {
+        long requested = demand.get();
+        long emitted = 0;
+        while (emitted != requested) {
+            CompletableFuture<RichArticle> next = ordered ? started.peek() : finished.poll();
+            if (next == null || !next.isDone()) {
+                break;
+            }
+            if (ordered) {
+                started.poll();
+            }
+            inFlight.decrementAndGet();
+            outstanding--;
+
+            RichArticle richArticle;
+            try {
+                richArticle = next.join();
+            } catch (CompletionException | CancellationException ex) {
+                if (skipFailures) {
+                    failures.increment();
+                    continue;
+                }
+                terminated = true;
+                cancelAll();
+                subscriber.onError(Futures.unwrap(ex));
+                return;
+            }
+            subscriber.onNext(richArticle);
+            emitted++;
+        }
+        if (emitted != 0 && requested != Long.MAX_VALUE) {
+            demand.addAndGet(-emitted);
+        }
+    }
+
+    private void cancelAll() {
+        cancelled = true;
+        Flow.Subscription subscription = upstream;
+        if (subscription != null) {
+            subscription.cancel();
+        }
+        enriching.forEach(enrichment -> enrichment.cancel(true));
+        started.clear();
+        finished.clear();
+    }
+}
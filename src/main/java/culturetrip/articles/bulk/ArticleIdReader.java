@@ -0,0 +1,108 @@
+package culturetrip.articles.bulk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads article ids, one per line, from a UTF-8 file through a FileChannel and
+ * a fixed size buffer, however big the file is. Blank lines are skipped and
+ * surrounding whitespace, including the \r of Windows line endings, is
+ * trimmed. getOffset() is where the next id starts, which is what a checkpoint
+ * needs to pick up from.
+ *
+ * @author mball
+ */
+public class ArticleIdReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private byte[] line = new byte[128];
+    private int lineLength;
+    private long offset;
+
+    public ArticleIdReader(Path path) throws IOException {
+        this(path, 0);
+    }
+
+    /**
+     * Opens the file to read from the given byte offset, which should be one
+     * returned by getOffset().
+     *
+     * @param path
+     * @param offset
+     * @throws IOException
+     */
+    public ArticleIdReader(Path path, long offset) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.channel.position(offset);
+        this.offset = offset;
+        buffer.flip();
+    }
+
+    /**
+     * The next article id, or null at the end of the file.
+     *
+     * @return
+     * @throws IOException
+     */
+    public String next() throws IOException {
+        while (true) {
+            while (buffer.hasRemaining()) {
+                byte b = buffer.get();
+                offset++;
+                if (b == '\n') {
+                    String articleId = takeLine();
+                    if (articleId != null) {
+                        return articleId;
+                    }
+                } else {
+                    if (lineLength == line.length) {
+                        line = Arrays.copyOf(line, line.length * 2);
+                    }
+                    line[lineLength++] = b;
+                }
+            }
+            buffer.clear();
+            int read = channel.read(buffer);
+            buffer.flip();
+            if (read < 0) {
+                return takeLine();
+            }
+        }
+    }
+
+    /**
+     * The byte offset just past the last id returned.
+     *
+     * @return
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private String takeLine() {
+        int start = 0;
+        int end = lineLength;
+        while (start < end && line[start] <= ' ') {
+            start++;
+        }
+        while (end > start && line[end - 1] <= ' ') {
+            end--;
+        }
+        lineLength = 0;
+        return start == end ? null : new String(line, start, end - start, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,294 @@
+package culturetrip.articles.bulk;
+
+import culturetrip.articles.ArticleEnricher;
+import culturetrip.articles.Priority;
+import culturetrip.articles.concurrent.Futures;
+import culturetrip.articles.models.RichArticle;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.ServiceLoader;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enriches every article id in a file and writes the RichArticles to another
+ * file as newline delimited JSON, one article per line, in the same order as
+ * the ids.
+ *
+ * Up to the parallelism's worth of articles are enriching at once. Ids are
+ * read as they're needed, so only that many are ever held in memory. Articles
+ * that fail are counted, reported and left out.
+ *
+ * Every so often the output is forced to disk and a checkpoint is saved
+ * alongside it, as output.ndjson.checkpoint. If a run is interrupted, running
+ * it again with the same files carries on from the last checkpoint, dropping
+ * anything written after it. The checkpoint is deleted once the run finishes.
+ *
+ * Progress, with records per second, is reported at regular intervals.
+ * Articles are enriched at background priority.
+ *
+ * @author mball
+ */
+public class BulkEnrichmentPipeline {
+
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    private final ArticleEnricher articleEnricher;
+    private int parallelism = 32;
+    private int checkpointInterval = 1000;
+    private long progressIntervalNanos = TimeUnit.SECONDS.toNanos(10);
+    private PrintStream progress = System.err;
+
+    //reused for every article, so writing one doesn't allocate much more than the CharBuffer wrapper.
+    private final StringBuilder json = new StringBuilder(1024);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private final ByteBuffer outputBuffer = ByteBuffer.allocateDirect(OUTPUT_BUFFER_SIZE);
+
+    //the state of the current run.
+    private FileChannel output;
+    private Path checkpointPath;
+    private long inputOffset;
+    private long recordCount;
+    private long failureCount;
+    private long sinceCheckpoint;
+    private long startNanos;
+    private long startRecordCount;
+    private long lastProgressNanos;
+
+    public BulkEnrichmentPipeline(ArticleEnricher articleEnricher) {
+        this.articleEnricher = articleEnricher;
+    }
+
+    /**
+     * Sets how many articles can be enriching at once, 32 by default.
+     *
+     * @param parallelism
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets how many articles are written between checkpoints, 1000 by
+     * default.
+     *
+     * @param checkpointInterval
+     */
+    public void setCheckpointInterval(int checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public void setProgressInterval(long interval, TimeUnit unit) {
+        this.progressIntervalNanos = unit.toNanos(interval);
+    }
+
+    /**
+     * Sets where progress and failed articles are reported, System.err by
+     * default.
+     *
+     * @param progress
+     */
+    public void setProgressStream(PrintStream progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * The number of articles written, including any from before a resumed
+     * run's checkpoint.
+     *
+     * @return
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * Runs the pipeline from input to output, resuming from a checkpoint if
+     * there is one.
+     *
+     * @param input
+     * @param outputPath
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void run(Path input, Path outputPath) throws IOException, InterruptedException {
+        checkpointPath = outputPath.resolveSibling(outputPath.getFileName() + ".checkpoint");
+        Checkpoint checkpoint = Checkpoint.read(checkpointPath);
+        if (checkpoint == null) {
+            checkpoint = new Checkpoint(0, 0, 0, 0);
+        } else {
+            progress.println(String.format("Resuming from %d records", checkpoint.getRecordCount()));
+        }
+        inputOffset = checkpoint.getInputOffset();
+        recordCount = checkpoint.getRecordCount();
+        failureCount = checkpoint.getFailureCount();
+        sinceCheckpoint = 0;
+        startNanos = lastProgressNanos = System.nanoTime();
+        startRecordCount = recordCount;
+
+        try (ArticleIdReader articleIds = new ArticleIdReader(input, inputOffset);
+                FileChannel channel = FileChannel.open(outputPath,
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            output = channel;
+            output.truncate(checkpoint.getOutputOffset());
+            output.position(checkpoint.getOutputOffset());
+            outputBuffer.clear();
+
+            Deque<Pending> window = new ArrayDeque<>(parallelism);
+            String articleId;
+            while ((articleId = articleIds.next()) != null) {
+                window.add(new Pending(articleId, articleIds.getOffset(), enrich(articleId)));
+                if (window.size() >= parallelism) {
+                    write(window.poll());
+                }
+            }
+            while (!window.isEmpty()) {
+                write(window.poll());
+            }
+            flush();
+            output.force(false);
+        } finally {
+            output = null;
+        }
+        Files.deleteIfExists(checkpointPath);
+        reportProgress(System.nanoTime());
+    }
+
+    private CompletableFuture<RichArticle> enrich(String articleId) {
+        try {
+            return Futures.toCompletableFuture(articleEnricher.enrichArticleWithId(articleId, Priority.BACKGROUND));
+        } catch (RuntimeException ex) {
+            return Futures.failed(ex);
+        }
+    }
+
+    /**
+     * Waits for the oldest article in flight and writes it. Waiting on the
+     * oldest keeps the output in the same order as the ids, which is what lets
+     * a checkpoint be a single offset into each file.
+     */
+    private void write(Pending pending) throws IOException, InterruptedException {
+        RichArticle richArticle = null;
+        try {
+            richArticle = pending.richArticle.get();
+        } catch (ExecutionException | CancellationException ex) {
+            failureCount++;
+            progress.println("Failed to enrich " + pending.articleId + ": " + Futures.unwrap(ex));
+        }
+        if (richArticle != null) {
+            json.setLength(0);
+            RichArticleJson.append(richArticle, json);
+            json.append('\n');
+            encode(json);
+            recordCount++;
+        }
+        inputOffset = pending.inputOffset;
+
+        if (++sinceCheckpoint >= checkpointInterval) {
+            checkpoint();
+        }
+        long now = System.nanoTime();
+        if (now - lastProgressNanos >= progressIntervalNanos) {
+            reportProgress(now);
+        }
+    }
+
+    private void encode(CharSequence chars) throws IOException {
+        CharBuffer in = CharBuffer.wrap(chars);
+        encoder.reset();
+        CoderResult result;
+        while ((result = encoder.encode(in, outputBuffer, true)).isOverflow()) {
+            flush();
+        }
+        if (result.isError()) {
+            result.throwException();
+        }
+        while (encoder.flush(outputBuffer).isOverflow()) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        outputBuffer.flip();
+        while (outputBuffer.hasRemaining()) {
+            output.write(outputBuffer);
+        }
+        outputBuffer.clear();
+    }
+
+    /**
+     * Saves how far we've got, after making sure everything written so far is
+     * on disk, so the checkpoint never points past what's actually there.
+     */
+    private void checkpoint() throws IOException {
+        flush();
+        output.force(false);
+        new Checkpoint(inputOffset, output.position(), recordCount, failureCount).write(checkpointPath);
+        sinceCheckpoint = 0;
+    }
+
+    private void reportProgress(long now) {
+        double seconds = (now - startNanos) / 1e9;
+        double rate = seconds > 0 ? (recordCount - startRecordCount) / seconds : 0;
+        progress.println(String.format("%d records, %d failed, %.1f records/s", recordCount, failureCount, rate));
+        lastProgressNanos = now;
+    }
+
+    private static final class Pending {
+
+        private final String articleId;
+        private final long inputOffset;
+        private final CompletableFuture<RichArticle> richArticle;
+
+        Pending(String articleId, long inputOffset, CompletableFuture<RichArticle> richArticle) {
+            this.articleId = articleId;
+            this.inputOffset = inputOffset;
+            this.richArticle = richArticle;
+        }
+    }
+
+    /**
+     * Runs the pipeline from the command line, using the first ArticleEnricher
+     * registered with the ServiceLoader, in
+     * META-INF/services/culturetrip.articles.ArticleEnricher on the classpath.
+     *
+     * @param args the id file, the output file and optionally the parallelism.
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: BulkEnrichmentPipeline <article id file> <ndjson output file> [parallelism]");
+            System.exit(2);
+        }
+        ArticleEnricher articleEnricher = ServiceLoader.load(ArticleEnricher.class).findFirst()
+                .orElseThrow(() -> new IllegalStateException("No ArticleEnricher registered in "
+                        + "META-INF/services/culturetrip.articles.ArticleEnricher"));
+
+        BulkEnrichmentPipeline pipeline = new BulkEnrichmentPipeline(articleEnricher);
+        if (args.length > 2) {
+            pipeline.setParallelism(Integer.parseInt(args[2]));
+        }
+        pipeline.run(Paths.get(args[0]), Paths.get(args[1]));
+    }
+}
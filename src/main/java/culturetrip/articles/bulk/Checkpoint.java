@@ -0,0 +1,84 @@
+package culturetrip.articles.bulk;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * How far a bulk enrichment has got: the offset in the id file to carry on
+ * reading from, how much of the output file is complete, and the counts so
+ * far. It is saved as a small properties file next to the output, replaced
+ * atomically so an interrupted save never leaves a half written checkpoint.
+ *
+ * @author mball
+ */
+public class Checkpoint {
+
+    private final long inputOffset;
+    private final long outputOffset;
+    private final long recordCount;
+    private final long failureCount;
+
+    public Checkpoint(long inputOffset, long outputOffset, long recordCount, long failureCount) {
+        this.inputOffset = inputOffset;
+        this.outputOffset = outputOffset;
+        this.recordCount = recordCount;
+        this.failureCount = failureCount;
+    }
+
+    public long getInputOffset() {
+        return inputOffset;
+    }
+
+    public long getOutputOffset() {
+        return outputOffset;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * Reads a checkpoint, or returns null if there isn't one.
+     *
+     * @param path
+     * @return
+     * @throws IOException
+     */
+    public static Checkpoint read(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path)) {
+            properties.load(reader);
+        }
+        return new Checkpoint(
+                Long.parseLong(properties.getProperty("inputOffset")),
+                Long.parseLong(properties.getProperty("outputOffset")),
+                Long.parseLong(properties.getProperty("recordCount")),
+                Long.parseLong(properties.getProperty("failureCount")));
+    }
+
+    public void write(Path path) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("inputOffset", Long.toString(inputOffset));
+        properties.setProperty("outputOffset", Long.toString(outputOffset));
+        properties.setProperty("recordCount", Long.toString(recordCount));
+        properties.setProperty("failureCount", Long.toString(failureCount));
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp)) {
+            properties.store(writer, "bulk enrichment checkpoint");
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,136 @@
+package culturetrip.articles.bulk;
+
+import culturetrip.articles.models.Image;
+import culturetrip.articles.models.MissingAsset;
+import culturetrip.articles.models.RichArticle;
+import culturetrip.articles.models.Video;
+import java.util.Collection;
+
+/**
+ * Writes RichArticles as JSON. The JSON is appended straight to a
+ * StringBuilder the caller can reuse from one article to the next, without
+ * building a tree or any intermediate Strings, so encoding millions of
+ * articles doesn't churn the heap. An article is always written on one line.
+ *
+ * A null hero image is written as null. Missing assets are only written for
+ * partial articles, as a list of type, url and whether it timed out.
+ *
+ * @author mball
+ */
+public final class RichArticleJson {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private RichArticleJson() {
+    }
+
+    public static void append(RichArticle richArticle, StringBuilder json) {
+        json.append("{\"id\":");
+        appendString(richArticle.getId(), json);
+        json.append(",\"name\":");
+        appendString(richArticle.getName(), json);
+        json.append(",\"heroImage\":");
+        appendImage(richArticle.getHeroImage(), json);
+        json.append(",\"videos\":[");
+        Collection<Video> videos = richArticle.getVideos();
+        if (videos != null) {
+            boolean first = true;
+            for (Video video : videos) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                appendVideo(video, json);
+            }
+        }
+        json.append(']');
+        if (!richArticle.isComplete()) {
+            json.append(",\"missingAssets\":[");
+            boolean first = true;
+            for (MissingAsset missingAsset : richArticle.getMissingAssets()) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                json.append("{\"type\":\"").append(missingAsset.getType().name()).append("\",\"url\":");
+                appendString(missingAsset.getUrl(), json);
+                json.append(",\"timedOut\":").append(missingAsset.isTimedOut()).append('}');
+            }
+            json.append(']');
+        }
+        json.append('}');
+    }
+
+    public static void appendImage(Image image, StringBuilder json) {
+        if (image == null) {
+            json.append("null");
+            return;
+        }
+        json.append("{\"id\":");
+        appendString(image.getId(), json);
+        json.append(",\"altText\":");
+        appendString(image.getAltText(), json);
+        json.append('}');
+    }
+
+    public static void appendVideo(Video video, StringBuilder json) {
+        if (video == null) {
+            json.append("null");
+            return;
+        }
+        json.append("{\"id\":");
+        appendString(video.getId(), json);
+        json.append(",\"caption\":");
+        appendString(video.getCaption(), json);
+        json.append('}');
+    }
+
+    /**
+     * Appends a quoted JSON string, escaping quotes, backslashes, control
+     * characters and the two Unicode line separators, which some readers
+     * treat as line breaks. Anything else, including non-ASCII, is left as it
+     * is.
+     *
+     * @param value
+     * @param json
+     */
+    public static void appendString(String value, StringBuilder json) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+                        json.append("\\u")
+                                .append(HEX[(c >> 12) & 0xf])
+                                .append(HEX[(c >> 8) & 0xf])
+                                .append(HEX[(c >> 4) & 0xf])
+                                .append(HEX[c & 0xf]);
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,479 @@
+package culturetrip.articles.cache;
+
+import culturetrip.articles.models.Image;
+import culturetrip.articles.models.RichArticle;
+import culturetrip.articles.models.Video;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * A store of RichArticles in a memory-mapped file, to sit behind an in-heap
+ * cache. The articles themselves live in the file rather than on the heap, so
+ * millions of them add nothing for the garbage collector to trace, and they
+ * are still there when the JVM restarts.
+ *
+ * The file is a log of records, each written once at the end:
+ *
+ * [int body length][int CRC32 of body][body]
+ *
+ * where the body is a type byte, when it was written and when it expires (in
+ * epoch millis, so they mean the same after a restart), the article id, and
+ * for an article rather than a removal, the name, hero image and videos. The
+ * heap only holds an index from article id to the offset of its latest
+ * record, which is rebuilt by scanning the file on opening. A record that
+ * doesn't match its CRC, from a write cut short, ends the scan. So a crash can
+ * lose entries, but never brings back a corrupt one.
+ *
+ * When the file is full, the live records are slid down over the expired,
+ * replaced and removed ones to make room. The store keeps count of how many
+ * bytes that would free. Unless that's at least an eighth of the file, the
+ * oldest articles are evicted to make up the difference first, so every
+ * compaction frees a good share of the file rather than just enough for one
+ * more article, and a full store doesn't rescan the whole file on every
+ * put. An article too big for the file isn't stored. Partial articles
+ * are never stored.
+ *
+ * A single mapping is limited to 2GB.
+ *
+ * @author mball
+ */
+public class MappedRichArticleStore implements Closeable {
+
+    private static final int MAGIC = 0x52414331;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int END_OFFSET = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final byte REMOVED = 0;
+    private static final byte ARTICLE = 1;
+    private static final int MINIMUM_RECLAIMED_SHARE = 8;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final CacheStats stats = new CacheStats();
+    private final CRC32 crc = new CRC32();
+
+    //guarded by this
+    private final Map<String, Integer> index = new HashMap<>();
+    private ByteBuffer scratch = ByteBuffer.allocate(4096);
+    private int end;
+    //bytes of replaced, removed and noticed expired records, which compaction would free.
+    private int deadBytes;
+    private long compactions;
+
+    /**
+     * Opens the store in the given file, creating it if it doesn't exist, and
+     * loads the index of whatever is already in it.
+     *
+     * @param path
+     * @param capacityBytes the size of the file.
+     * @throws IOException
+     */
+    public MappedRichArticleStore(Path path, int capacityBytes) throws IOException {
+        if (capacityBytes <= HEADER_SIZE) {
+            throw new IllegalArgumentException("capacityBytes is too small: " + capacityBytes);
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacityBytes);
+        this.capacity = capacityBytes;
+        if (buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION) {
+            load();
+        } else {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            setEnd(HEADER_SIZE);
+        }
+    }
+
+    /**
+     * Gets the entry for an article, or null if it isn't stored or has
+     * expired.
+     *
+     * @param articleId
+     * @return
+     */
+    public synchronized Entry get(String articleId) {
+        Integer offset = index.get(articleId);
+        if (offset == null) {
+            stats.recordMiss();
+            return null;
+        }
+        ByteBuffer record = record(offset);
+        record.get();
+        long writtenAtMillis = record.getLong();
+        long expiresAtMillis = record.getLong();
+        if (System.currentTimeMillis() >= expiresAtMillis) {
+            index.remove(articleId);
+            deadBytes += sizeOf(offset);
+            stats.recordExpiration();
+            stats.recordMiss();
+            return null;
+        }
+        stats.recordHit();
+        return new Entry(readArticle(record), writtenAtMillis, expiresAtMillis);
+    }
+
+    /**
+     * Stores an article for the given time to live, replacing any already
+     * stored for its id.
+     *
+     * @param richArticle
+     * @param timeToLive
+     * @param unit
+     * @return whether it was stored.
+     */
+    public synchronized boolean put(RichArticle richArticle, long timeToLive, TimeUnit unit) {
+        if (!richArticle.isComplete()) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        long timeToLiveMillis = unit.toMillis(timeToLive);
+        long expiresAtMillis = now + timeToLiveMillis < now ? Long.MAX_VALUE : now + timeToLiveMillis;
+        return append(richArticle.getId(), ARTICLE, now, expiresAtMillis, richArticle);
+    }
+
+    public synchronized void invalidate(String articleId) {
+        Integer offset = index.remove(articleId);
+        if (offset != null) {
+            deadBytes += sizeOf(offset);
+            //without a record saying so, it would be back after a restart.
+            append(articleId, REMOVED, System.currentTimeMillis(), Long.MAX_VALUE, null);
+        }
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * The bytes of the file in use, including records that compaction would
+     * free.
+     *
+     * @return
+     */
+    public synchronized int getUsedBytes() {
+        return end;
+    }
+
+    /**
+     * The bytes of the file compaction is known to be able to free, not
+     * counting articles that have expired without anyone asking for them.
+     *
+     * @return
+     */
+    public synchronized int getDeadBytes() {
+        return deadBytes;
+    }
+
+    public synchronized long getCompactionCount() {
+        return compactions;
+    }
+
+    public CacheStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Slides the live records down over the expired, replaced and removed
+     * ones, leaving the free space at the end. Records only ever move towards
+     * the start, in order, so the ones not yet moved are never overwritten.
+     */
+    public synchronized void compact() {
+        long now = System.currentTimeMillis();
+        int read = HEADER_SIZE;
+        int write = HEADER_SIZE;
+        while (read < end) {
+            int size = RECORD_HEADER_SIZE + buffer.getInt(read);
+            ByteBuffer record = record(read);
+            byte type = record.get();
+            record.getLong();
+            long expiresAtMillis = record.getLong();
+            String articleId = readString(record);
+
+            Integer latest = index.get(articleId);
+            if (type == ARTICLE && latest != null && latest == read) {
+                if (now >= expiresAtMillis) {
+                    index.remove(articleId);
+                    stats.recordExpiration();
+                } else {
+                    if (write != read) {
+                        byte[] bytes = new byte[size];
+                        ByteBuffer from = buffer.duplicate();
+                        from.position(read);
+                        from.get(bytes);
+                        ByteBuffer to = buffer.duplicate();
+                        to.position(write);
+                        to.put(bytes);
+                        index.put(articleId, write);
+                    }
+                    write += size;
+                }
+            }
+            read += size;
+        }
+        setEnd(write);
+        deadBytes = 0;
+        compactions++;
+    }
+
+    /**
+     * Writes everything to the file and closes it.
+     *
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private boolean append(String articleId, byte type, long writtenAtMillis, long expiresAtMillis, RichArticle richArticle) {
+        ByteBuffer body = encode(articleId, type, writtenAtMillis, expiresAtMillis, richArticle);
+        int size = RECORD_HEADER_SIZE + body.remaining();
+        if (end + size > capacity) {
+            makeRoom(size);
+            if (end + size > capacity) {
+                stats.recordEviction();
+                return false;
+            }
+        }
+        crc.reset();
+        crc.update(body.duplicate());
+        buffer.putInt(end, body.remaining());
+        buffer.putInt(end + 4, (int) crc.getValue());
+        ByteBuffer to = buffer.duplicate();
+        to.position(end + RECORD_HEADER_SIZE);
+        to.put(body.duplicate());
+
+        if (type == ARTICLE) {
+            Integer replaced = index.put(articleId, end);
+            if (replaced != null) {
+                deadBytes += sizeOf(replaced);
+            }
+        } else {
+            deadBytes += size;
+        }
+        setEnd(end + size);
+        return true;
+    }
+
+    /**
+     * Compacts to make room for a record of the given size, if it could ever
+     * fit. Unless the dead records add up to at least an eighth of the file,
+     * the oldest articles are evicted to make up the difference first.
+     *
+     * @param size
+     */
+    private void makeRoom(int size) {
+        if (HEADER_SIZE + size > capacity) {
+            return;
+        }
+        int wanted = Math.max(size - (capacity - end), capacity / MINIMUM_RECLAIMED_SHARE);
+        if (deadBytes < wanted) {
+            evictOldest(wanted - deadBytes);
+        }
+        compact();
+    }
+
+    /**
+     * Drops the live articles nearest the start of the file, which are the
+     * ones written longest ago, until at least the given number of bytes are
+     * dead. Any that have expired on the way are dropped as expired rather
+     * than evicted.
+     *
+     * @param bytes
+     */
+    private void evictOldest(int bytes) {
+        long now = System.currentTimeMillis();
+        int evicted = 0;
+        int offset = HEADER_SIZE;
+        while (offset < end && evicted < bytes) {
+            int size = sizeOf(offset);
+            ByteBuffer record = record(offset);
+            byte type = record.get();
+            record.getLong();
+            long expiresAtMillis = record.getLong();
+            String articleId = readString(record);
+            Integer latest = index.get(articleId);
+            if (type == ARTICLE && latest != null && latest == offset) {
+                index.remove(articleId);
+                deadBytes += size;
+                evicted += size;
+                if (now >= expiresAtMillis) {
+                    stats.recordExpiration();
+                } else {
+                    stats.recordEviction();
+                }
+            }
+            offset += size;
+        }
+    }
+
+    private ByteBuffer encode(String articleId, byte type, long writtenAtMillis, long expiresAtMillis, RichArticle richArticle) {
+        while (true) {
+            try {
+                scratch.clear();
+                scratch.put(type);
+                scratch.putLong(writtenAtMillis);
+                scratch.putLong(expiresAtMillis);
+                writeString(articleId, scratch);
+                if (richArticle != null) {
+                    writeString(richArticle.getName(), scratch);
+                    Image heroImage = richArticle.getHeroImage();
+                    scratch.put((byte) (heroImage == null ? 0 : 1));
+                    if (heroImage != null) {
+                        writeString(heroImage.getId(), scratch);
+                        writeString(heroImage.getAltText(), scratch);
+                    }
+                    scratch.putInt(richArticle.getVideos().size());
+                    for (Video video : richArticle.getVideos()) {
+                        writeString(video.getId(), scratch);
+                        writeString(video.getCaption(), scratch);
+                    }
+                }
+                scratch.flip();
+                return scratch;
+            } catch (BufferOverflowException ex) {
+                scratch = ByteBuffer.allocate(scratch.capacity() * 2);
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the index from the records in the file, stopping at the first
+     * one that is cut short or doesn't match its CRC. The newest record for an
+     * id wins rather than the last in the file, as a compaction cut short can
+     * leave an old record behind the ones it has already moved.
+     */
+    private void load() {
+        long now = System.currentTimeMillis();
+        Map<String, Long> written = new HashMap<>();
+        long recordedEnd = Math.min(buffer.getLong(END_OFFSET), capacity);
+        int offset = HEADER_SIZE;
+        while (offset + RECORD_HEADER_SIZE <= recordedEnd) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + RECORD_HEADER_SIZE + length > recordedEnd) {
+                break;
+            }
+            ByteBuffer body = buffer.duplicate();
+            body.position(offset + RECORD_HEADER_SIZE).limit(offset + RECORD_HEADER_SIZE + length);
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                break;
+            }
+            byte type = body.get();
+            long writtenAtMillis = body.getLong();
+            long expiresAtMillis = body.getLong();
+            String articleId = readString(body);
+            Long newest = written.get(articleId);
+            if (newest == null || writtenAtMillis >= newest) {
+                written.put(articleId, writtenAtMillis);
+                if (type == ARTICLE && now < expiresAtMillis) {
+                    index.put(articleId, offset);
+                } else {
+                    index.remove(articleId);
+                }
+            }
+            offset += RECORD_HEADER_SIZE + length;
+        }
+        setEnd(offset);
+        int liveBytes = 0;
+        for (int live : index.values()) {
+            liveBytes += sizeOf(live);
+        }
+        deadBytes = end - HEADER_SIZE - liveBytes;
+    }
+
+    private int sizeOf(int offset) {
+        return RECORD_HEADER_SIZE + buffer.getInt(offset);
+    }
+
+    private ByteBuffer record(int offset) {
+        ByteBuffer record = buffer.duplicate();
+        record.position(offset + RECORD_HEADER_SIZE).limit(offset + RECORD_HEADER_SIZE + buffer.getInt(offset));
+        return record;
+    }
+
+    private void setEnd(int end) {
+        this.end = end;
+        buffer.putLong(END_OFFSET, end);
+    }
+
+    private static RichArticle readArticle(ByteBuffer record) {
+        String articleId = readString(record);
+        String name = readString(record);
+        Image heroImage = null;
+        if (record.get() == 1) {
+            heroImage = new Image(readString(record), readString(record));
+        }
+        int videoCount = record.getInt();
+        List<Video> videos = new ArrayList<>(videoCount);
+        for (int i = 0; i < videoCount; i++) {
+            videos.add(new Video(readString(record), readString(record)));
+        }
+        return new RichArticle(articleId, name, heroImage, videos);
+    }
+
+    private static void writeString(String value, ByteBuffer out) {
+        if (value == null) {
+            out.putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.putInt(bytes.length);
+        out.put(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A stored article along with when it was written and when it expires.
+     */
+    public static final class Entry {
+
+        private final RichArticle value;
+        private final long writtenAtMillis;
+        private final long expiresAtMillis;
+
+        Entry(RichArticle value, long writtenAtMillis, long expiresAtMillis) {
+            this.value = value;
+            this.writtenAtMillis = writtenAtMillis;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        public RichArticle getValue() {
+            return value;
+        }
+
+        public long getWrittenAtMillis() {
+            return writtenAtMillis;
+        }
+
+        public long getExpiresAtMillis() {
+            return expiresAtMillis;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package culturetrip.articles.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, thread safe cache using segmented LRU eviction.
+ *
+ * New entries go into a probation segment. An entry is only promoted to the
+ * protected segment if it is read again while on probation, so a burst of
+ * one-off keys evicts other one-off keys rather than the popular ones. The
+ * protected segment takes up to 80% of the maximum size, and anything pushed
+ * out of it goes back to the front of probation.
+ *
+ * Every entry has its own time to live, counted from when it was written.
+ * Expired entries are dropped when they are next looked up.
+ *
+ * @author mball
+ */
+public class SegmentedLruCache<K, V> {
+
+    private static final double PROTECTED_SHARE = 0.8;
+
+    private final int maximumSize;
+    private final int maximumProtectedSize;
+    private final LinkedHashMap<K, Entry<V>> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, Entry<V>> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private final CacheStats stats = new CacheStats();
+
+    public SegmentedLruCache(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        this.maximumProtectedSize = (int) (maximumSize * PROTECTED_SHARE);
+    }
+
+    /**
+     * Gets the value for a key, or null if it isn't cached or has expired.
+     *
+     * @param key
+     * @return
+     */
+    public V getIfPresent(K key) {
+        Entry<V> entry = getEntryIfPresent(key);
+        return entry == null ? null : entry.getValue();
+    }
+
+    /**
+     * Gets the entry for a key, which also says when it was written, or null if
+     * it isn't cached or has expired.
+     *
+     * @param key
+     * @return
+     */
+    public synchronized Entry<V> getEntryIfPresent(K key) {
+        Entry<V> entry = protectedSegment.get(key);
+        if (entry == null) {
+            entry = probation.get(key);
+            if (entry != null && !entry.isExpired(System.nanoTime())) {
+                promote(key, entry);
+            }
+        }
+        if (entry == null) {
+            stats.recordMiss();
+            return null;
+        }
+        if (entry.isExpired(System.nanoTime())) {
+            remove(key);
+            stats.recordExpiration();
+            stats.recordMiss();
+            return null;
+        }
+        stats.recordHit();
+        return entry;
+    }
+
+    /**
+     * Gets the value for a key, or null if it isn't cached or has expired,
+     * without counting a hit or miss or promoting it out of probation. For
+     * lookups that shouldn't decide what is protected in the cache.
+     *
+     * @param key
+     * @return
+     */
+    public synchronized V peek(K key) {
+        Entry<V> entry = protectedSegment.get(key);
+        if (entry == null) {
+            entry = probation.get(key);
+        }
+        return entry == null || entry.isExpired(System.nanoTime()) ? null : entry.getValue();
+    }
+
+    /**
+     * Caches a value that never expires, though it can still be evicted.
+     *
+     * @param key
+     * @param value
+     */
+    public void put(K key, V value) {
+        put(key, value, Long.MAX_VALUE);
+    }
+
+    /**
+     * Caches a value for the given time to live. Replacing a value keeps the
+     * entry in whichever segment it was already in.
+     *
+     * @param key
+     * @param value
+     * @param timeToLiveNanos
+     */
+    public void put(K key, V value, long timeToLiveNanos) {
+        put(key, value, 0, timeToLiveNanos);
+    }
+
+    /**
+     * Caches a value that was written a while ago, like one copied from
+     * another cache, so it's as old here as it was there and expires when it
+     * would have.
+     *
+     * @param key
+     * @param value
+     * @param ageNanos how long ago the value was written.
+     * @param timeToLiveNanos from when it was written.
+     */
+    public synchronized void put(K key, V value, long ageNanos, long timeToLiveNanos) {
+        Entry<V> entry = new Entry<>(value, System.nanoTime() - ageNanos, timeToLiveNanos);
+        if (protectedSegment.containsKey(key)) {
+            protectedSegment.put(key, entry);
+            return;
+        }
+        probation.put(key, entry);
+        evictIfNeeded();
+    }
+
+    public synchronized void invalidate(K key) {
+        remove(key);
+    }
+
+    public synchronized void invalidateAll() {
+        probation.clear();
+        protectedSegment.clear();
+    }
+
+    public synchronized int size() {
+        return probation.size() + protectedSegment.size();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public CacheStats getStats() {
+        return stats;
+    }
+
+    private void promote(K key, Entry<V> entry) {
+        probation.remove(key);
+        protectedSegment.put(key, entry);
+        if (protectedSegment.size() > maximumProtectedSize) {
+            //the least recently used protected entry gets another chance on probation.
+            Iterator<Map.Entry<K, Entry<V>>> eldest = protectedSegment.entrySet().iterator();
+            Map.Entry<K, Entry<V>> demoted = eldest.next();
+            eldest.remove();
+            probation.put(demoted.getKey(), demoted.getValue());
+        }
+    }
+
+    private void evictIfNeeded() {
+        while (size() > maximumSize) {
+            LinkedHashMap<K, Entry<V>> victims = probation.isEmpty() ? protectedSegment : probation;
+            Iterator<K> eldest = victims.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+            stats.recordEviction();
+        }
+    }
+
+    private void remove(K key) {
+        if (probation.remove(key) == null) {
+            protectedSegment.remove(key);
+        }
+    }
+
+    /**
+     * A cached value along with when it was written.
+     *
+     * @param <V>
+     */
+    public static final class Entry<V> {
+
+        private final V value;
+        private final long writeNanos;
+        private final long timeToLiveNanos;
+
+        Entry(V value, long writeNanos, long timeToLiveNanos) {
+            this.value = value;
+            this.writeNanos = writeNanos;
+            this.timeToLiveNanos = timeToLiveNanos;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public long getWriteNanos() {
+            return writeNanos;
+        }
+
+        /**
+         * How long ago the value was written.
+         *
+         * @return
+         */
+        public long getAgeNanos() {
+            return System.nanoTime() - writeNanos;
+        }
+
+        boolean isExpired(long nowNanos) {
+            return nowNanos - writeNanos >= timeToLiveNanos;
+        }
+    }
+}
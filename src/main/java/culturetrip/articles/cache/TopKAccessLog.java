@@ -0,0 +1,308 @@
+package culturetrip.articles.cache;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * A compact, sampled log of which articles are being asked for, to decide
+ * what to warm and prefetch. It only keeps the top K articles, whatever the
+ * number of distinct ids.
+ *
+ * Only a sample of accesses are recorded, 1 in 16 by default, which is
+ * plenty to find the popular articles and keeps the cost of an access to a
+ * random number for the rest. Sampled accesses are counted in a count-min
+ * sketch: a few rows of counters, each indexed by a hash of the id with its
+ * own seed, where an id's count is the smallest of its counters. As the rows
+ * are hashed independently, ids that collide in one row rarely collide in the
+ * others. Collisions can only make a count too high, never too low, and with
+ * conservative updates, only raising the counters that are at that smallest
+ * value, not by much. The top K are kept in order of their counts, and an id
+ * whose count beats the least popular of them takes its place.
+ *
+ * Counts are halved at the end of every window of samples, so articles that
+ * have gone quiet make way for the ones being asked for now. An article is
+ * rising if it has been sampled more this window, allowing for how far
+ * through the window we are, than the rising factor times the last window.
+ *
+ * The top K can be saved to a file, most popular first, one id per line, to
+ * warm the caches from after a restart. That is also the input format of the
+ * BulkEnrichmentPipeline.
+ *
+ * @author mball
+ */
+public class TopKAccessLog {
+
+    private static final int DEPTH = 4;
+    private static final long[] SEEDS = {0x9e3779b97f4a7c15L, 0xbf58476d1ce4e5b9L, 0x94d049bb133111ebL, 0x2545f4914f6cdd1dL};
+    private static final Comparator<Entry> BY_COUNT = Comparator.comparingLong((Entry entry) -> entry.count)
+            .thenComparing(entry -> entry.articleId);
+
+    private final int k;
+    private final int mask;
+    private final int[][] counters;
+    private volatile int sampleRate = 16;
+    private volatile double risingFactor = 2;
+
+    //guarded by this
+    private final Map<String, Entry> topK = new HashMap<>();
+    private final TreeSet<Entry> byCount = new TreeSet<>(BY_COUNT);
+    private final int windowSize;
+    private int windowSamples;
+
+    /**
+     * @param k how many of the most popular articles to keep.
+     */
+    public TopKAccessLog(int k) {
+        this(k, k * 10);
+    }
+
+    /**
+     * @param k how many of the most popular articles to keep.
+     * @param windowSize how many samples there are between halving the
+     * counts.
+     */
+    public TopKAccessLog(int k, int windowSize) {
+        if (k <= 0 || windowSize <= 0) {
+            throw new IllegalArgumentException("k and windowSize must be positive: " + k + ", " + windowSize);
+        }
+        this.k = k;
+        this.windowSize = windowSize;
+        //16 counters per row for every article kept keeps collisions with the top K rare.
+        int width = Integer.highestOneBit(Math.max(16, k * 16) - 1) << 1;
+        this.mask = width - 1;
+        this.counters = new int[DEPTH][width];
+    }
+
+    /**
+     * Sets how many accesses there are for every one sampled. 1 samples every
+     * access.
+     *
+     * @param sampleRate
+     */
+    public void setSampleRate(int sampleRate) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("sampleRate must be positive: " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Sets how many times more an article has to be sampled this window than
+     * the last to be rising, 2 by default.
+     *
+     * @param risingFactor
+     */
+    public void setRisingFactor(double risingFactor) {
+        this.risingFactor = risingFactor;
+    }
+
+    /**
+     * Records an access to an article, if it is picked for the sample.
+     *
+     * @param articleId
+     */
+    public void record(String articleId) {
+        if (sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0) {
+            sample(articleId);
+        }
+    }
+
+    private synchronized void sample(String articleId) {
+        long count = increment(indexes(articleId));
+        Entry entry = topK.get(articleId);
+        if (entry != null) {
+            //an entry's place in byCount depends on its count, so it has to come out while that changes.
+            byCount.remove(entry);
+            entry.count = count;
+            entry.window++;
+            byCount.add(entry);
+        } else if (topK.size() < k || count > byCount.first().count) {
+            if (topK.size() == k) {
+                topK.remove(byCount.pollFirst().articleId);
+            }
+            entry = new Entry(articleId);
+            entry.count = count;
+            entry.window = 1;
+            topK.put(articleId, entry);
+            byCount.add(entry);
+        }
+        if (++windowSamples >= windowSize) {
+            endWindow();
+        }
+    }
+
+    /**
+     * Adds one to the counters at the smallest count, and returns the new
+     * count.
+     */
+    private long increment(int[] indexes) {
+        int minimum = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            minimum = Math.min(minimum, counters[row][indexes[row]]);
+        }
+        for (int row = 0; row < DEPTH; row++) {
+            if (counters[row][indexes[row]] == minimum) {
+                counters[row][indexes[row]]++;
+            }
+        }
+        return minimum + 1L;
+    }
+
+    /**
+     * The id's counter in each row. Every row hashes the whole id afresh from
+     * its own seed, FNV-1a then a final mix, rather than remixing one
+     * String.hashCode(), which ids like "Aa" and "BB" share.
+     */
+    private int[] indexes(String articleId) {
+        int[] indexes = new int[DEPTH];
+        for (int row = 0; row < DEPTH; row++) {
+            long h = SEEDS[row];
+            for (int i = 0; i < articleId.length(); i++) {
+                h = (h ^ articleId.charAt(i)) * 0x100000001b3L;
+            }
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            indexes[row] = (int) h & mask;
+        }
+        return indexes;
+    }
+
+    private void endWindow() {
+        for (int[] row : counters) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] >>>= 1;
+            }
+        }
+        for (Entry entry : topK.values()) {
+            entry.count >>>= 1;
+            entry.previousWindow = entry.window;
+            entry.window = 0;
+        }
+        //halving can tie counts that weren't, which reorders them by id.
+        byCount.clear();
+        byCount.addAll(topK.values());
+        windowSamples = 0;
+    }
+
+    /**
+     * The estimated number of sampled accesses to an article, halved at the
+     * end of every window.
+     *
+     * @param articleId
+     * @return
+     */
+    public synchronized long estimateCount(String articleId) {
+        int[] indexes = indexes(articleId);
+        long minimum = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            minimum = Math.min(minimum, counters[row][indexes[row]]);
+        }
+        return minimum;
+    }
+
+    /**
+     * The most popular articles, most popular first.
+     *
+     * @param limit the most to return.
+     * @return
+     */
+    public synchronized List<String> getTopK(int limit) {
+        return byCount.descendingSet().stream()
+                .limit(limit)
+                .map(entry -> entry.articleId)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * The articles whose popularity is rising fastest, fastest first. These
+     * are the ones most likely to be asked for next that weren't already.
+     *
+     * @param limit the most to return.
+     * @return
+     */
+    public synchronized List<String> getRising(int limit) {
+        //what the last window's samples would come to by this far through the window.
+        double progress = (double) windowSamples / windowSize;
+        List<Entry> rising = new ArrayList<>();
+        for (Entry entry : topK.values()) {
+            double expected = entry.previousWindow * progress;
+            if (entry.window > 1 && entry.window > risingFactor * expected) {
+                rising.add(entry);
+            }
+        }
+        rising.sort(Comparator.comparingDouble((Entry entry) -> entry.window / (entry.previousWindow * progress + 1)).reversed());
+        return rising.stream().limit(limit).map(entry -> entry.articleId).collect(Collectors.toList());
+    }
+
+    /**
+     * Saves the top K to a file, most popular first, one id per line. The
+     * file is replaced atomically, so it is never left half written.
+     *
+     * @param path
+     * @throws IOException
+     */
+    public void save(Path path) throws IOException {
+        List<String> articleIds = getTopK(k);
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (String articleId : articleIds) {
+                writer.write(articleId);
+                writer.write('\n');
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the ids saved by save(), most popular first, or an empty list if
+     * there's no file.
+     *
+     * @param path
+     * @return
+     * @throws IOException
+     */
+    public static List<String> load(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return Collections.emptyList();
+        }
+        List<String> articleIds = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    articleIds.add(line);
+                }
+            }
+        }
+        return articleIds;
+    }
+
+    private static final class Entry {
+
+        private final String articleId;
+        private long count;
+        private int window;
+        private int previousWindow;
+
+        Entry(String articleId) {
+            this.articleId = articleId;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package culturetrip.articles.clients;
+
+import culturetrip.articles.models.Image;
+import culturetrip.articles.models.Video;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * Bulk version of the AssetsServiceClient, fetching many assets in one round
+ * trip. Assets that can't be found are left out of the returned Map.
+ *
+ * @author mball
+ */
+public interface AssetsServiceBatchClient {
+    Future<Map<String, Image>> getImagesByIds(Collection<String> ids);
+
+    Future<Map<String, Video>> getVideosByIds(Collection<String> ids);
+}
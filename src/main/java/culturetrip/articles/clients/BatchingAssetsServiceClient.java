@@ -0,0 +1,63 @@
+package culturetrip.articles.clients;
+
+import culturetrip.articles.concurrent.Futures;
+import culturetrip.articles.concurrent.MicroBatcher;
+import culturetrip.articles.models.Image;
+import culturetrip.articles.models.Video;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An AssetsServiceClient that turns individual getImageById and getVideoById
+ * calls into bulk calls on an AssetsServiceBatchClient. Calls made within a
+ * short linger time of each other, up to a maximum batch size, go out as one
+ * round trip and the results are split back out to each caller.
+ *
+ * @author mball
+ */
+public class BatchingAssetsServiceClient implements AssetsServiceClient {
+
+    private final MicroBatcher<String, Image> imageBatcher;
+    private final MicroBatcher<String, Video> videoBatcher;
+
+    public BatchingAssetsServiceClient(AssetsServiceBatchClient assetsServiceBatchClient) {
+        this.imageBatcher = new MicroBatcher<>(
+                ids -> Futures.toCompletableFuture(assetsServiceBatchClient.getImagesByIds(ids)));
+        this.videoBatcher = new MicroBatcher<>(
+                ids -> Futures.toCompletableFuture(assetsServiceBatchClient.getVideosByIds(ids)));
+    }
+
+    /**
+     * Sets how long the first call in a batch waits for others to join it.
+     *
+     * @param linger
+     * @param unit
+     */
+    public void setLinger(long linger, TimeUnit unit) {
+        imageBatcher.setLinger(linger, unit);
+        videoBatcher.setLinger(linger, unit);
+    }
+
+    public void setMaximumBatchSize(int maximumBatchSize) {
+        imageBatcher.setMaximumBatchSize(maximumBatchSize);
+        videoBatcher.setMaximumBatchSize(maximumBatchSize);
+    }
+
+    public MicroBatcher<String, Image> getImageBatcher() {
+        return imageBatcher;
+    }
+
+    public MicroBatcher<String, Video> getVideoBatcher() {
+        return videoBatcher;
+    }
+
+    @Override
+    public Future<Image> getImageById(String id) {
+        return imageBatcher.submit(id);
+    }
+
+    @Override
+    public Future<Video> getVideoById(String id) {
+        return videoBatcher.submit(id);
+    }
+}
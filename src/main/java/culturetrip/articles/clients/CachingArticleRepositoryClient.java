@@ -0,0 +1,109 @@
+package culturetrip.articles.clients;
+
+import culturetrip.articles.cache.CacheStats;
+import culturetrip.articles.cache.SegmentedLruCache;
+import culturetrip.articles.concurrent.Futures;
+import culturetrip.articles.metrics.EnricherMetrics;
+import culturetrip.articles.models.ArticleReference;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An ArticleRepositoryClient that keeps the ArticleReferences it has fetched
+ * in a bounded in-process cache, so popular articles don't go back to the
+ * repository on every request. It wraps another client and can be passed to
+ * SimpleArticleEnricher.setArticleRepositoryClient() in its place.
+ *
+ * Entries expire a fixed time after they were written. If a refresh time is
+ * also set, a hit on an entry older than that is still answered from the
+ * cache, but a single background load is started to replace it.
+ *
+ * Missing articles (a null ArticleReference) and failures are never cached.
+ *
+ * @author mball
+ */
+public class CachingArticleRepositoryClient implements ArticleRepositoryClient {
+
+    private final ArticleRepositoryClient articleRepositoryClient;
+    private final SegmentedLruCache<String, ArticleReference> cache;
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private long expireAfterWriteNanos = Long.MAX_VALUE;
+    private long refreshAfterWriteNanos = Long.MAX_VALUE;
+
+    public CachingArticleRepositoryClient(ArticleRepositoryClient articleRepositoryClient, int maximumSize) {
+        this.articleRepositoryClient = articleRepositoryClient;
+        this.cache = new SegmentedLruCache<>(maximumSize);
+    }
+
+    public void setExpireAfterWrite(long duration, TimeUnit unit) {
+        this.expireAfterWriteNanos = unit.toNanos(duration);
+    }
+
+    public void setRefreshAfterWrite(long duration, TimeUnit unit) {
+        this.refreshAfterWriteNanos = unit.toNanos(duration);
+    }
+
+    public CacheStats getStats() {
+        return cache.getStats();
+    }
+
+    /**
+     * Registers the cache's stats with the metrics as "references".
+     *
+     * @param metrics
+     */
+    public void setMetrics(EnricherMetrics metrics) {
+        metrics.registerCache("references", cache.getStats());
+    }
+
+    @Override
+    public Future<ArticleReference> getArticleReferenceForId(String articleId) {
+        SegmentedLruCache.Entry<ArticleReference> entry = cache.getEntryIfPresent(articleId);
+        if (entry == null) {
+            return load(articleId);
+        }
+        if (entry.getAgeNanos() >= refreshAfterWriteNanos) {
+            refresh(articleId);
+        }
+        return CompletableFuture.completedFuture(entry.getValue());
+    }
+
+    /**
+     * Fetches the ArticleReference from the wrapped client and caches it once
+     * it arrives.
+     *
+     * @param articleId
+     * @return
+     */
+    private CompletableFuture<ArticleReference> load(String articleId) {
+        CompletableFuture<ArticleReference> future
+                = Futures.toCompletableFuture(articleRepositoryClient.getArticleReferenceForId(articleId));
+        future.whenComplete((articleReference, ex) -> {
+            if (ex == null && articleReference != null) {
+                cache.put(articleId, articleReference, expireAfterWriteNanos);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Reloads an entry in the background, unless a reload for it is already
+     * running.
+     *
+     * @param articleId
+     */
+    private void refresh(String articleId) {
+        if (refreshing.add(articleId)) {
+            cache.getStats().recordRefresh();
+            try {
+                load(articleId).whenComplete((articleReference, ex) -> refreshing.remove(articleId));
+            } catch (RuntimeException ex) {
+                //the stale entry is still good for now, so let the next hit try again.
+                refreshing.remove(articleId);
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package culturetrip.articles.clients;
+
+import culturetrip.articles.cache.CacheStats;
+import culturetrip.articles.cache.SegmentedLruCache;
+import culturetrip.articles.concurrent.Futures;
+import culturetrip.articles.metrics.EnricherMetrics;
+import culturetrip.articles.models.Image;
+import culturetrip.articles.models.Video;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * An AssetsServiceClient that caches Images and Videos, so an asset used by
+ * many articles is only fetched once. It wraps another client and can be
+ * passed to SimpleArticleEnricher.setAssetsServiceClient() in its place.
+ *
+ * Images and Videos are kept in separate bounded caches with their own time
+ * to live, so a flood of one can't push out the other. Assets the service
+ * couldn't find (a null result) are cached as well, with a separate time to
+ * live, so references to missing videos don't keep hitting the service.
+ * Failures are never cached.
+ *
+ * @author mball
+ */
+public class CachingAssetsServiceClient implements AssetsServiceClient {
+
+    private final AssetsServiceClient assetsServiceClient;
+    private final SegmentedLruCache<String, Optional<Image>> imageCache;
+    private final SegmentedLruCache<String, Optional<Video>> videoCache;
+    private long imageExpireAfterWriteNanos = Long.MAX_VALUE;
+    private long videoExpireAfterWriteNanos = Long.MAX_VALUE;
+    private long negativeExpireAfterWriteNanos = TimeUnit.MINUTES.toNanos(1);
+
+    public CachingAssetsServiceClient(AssetsServiceClient assetsServiceClient, int maximumImages, int maximumVideos) {
+        this.assetsServiceClient = assetsServiceClient;
+        this.imageCache = new SegmentedLruCache<>(maximumImages);
+        this.videoCache = new SegmentedLruCache<>(maximumVideos);
+    }
+
+    public void setImageExpireAfterWrite(long duration, TimeUnit unit) {
+        this.imageExpireAfterWriteNanos = unit.toNanos(duration);
+    }
+
+    public void setVideoExpireAfterWrite(long duration, TimeUnit unit) {
+        this.videoExpireAfterWriteNanos = unit.toNanos(duration);
+    }
+
+    /**
+     * Sets how long an asset that wasn't found is remembered as missing, for
+     * both Images and Videos.
+     *
+     * @param duration
+     * @param unit
+     */
+    public void setNegativeExpireAfterWrite(long duration, TimeUnit unit) {
+        this.negativeExpireAfterWriteNanos = unit.toNanos(duration);
+    }
+
+    public CacheStats getImageStats() {
+        return imageCache.getStats();
+    }
+
+    public CacheStats getVideoStats() {
+        return videoCache.getStats();
+    }
+
+    /**
+     * Registers the caches' stats with the metrics as "images" and "videos".
+     *
+     * @param metrics
+     */
+    public void setMetrics(EnricherMetrics metrics) {
+        metrics.registerCache("images", imageCache.getStats());
+        metrics.registerCache("videos", videoCache.getStats());
+    }
+
+    @Override
+    public Future<Image> getImageById(String id) {
+        return get(imageCache, id, assetsServiceClient::getImageById, imageExpireAfterWriteNanos);
+    }
+
+    @Override
+    public Future<Video> getVideoById(String id) {
+        return get(videoCache, id, assetsServiceClient::getVideoById, videoExpireAfterWriteNanos);
+    }
+
+    /**
+     * Answers from the given cache if it can, otherwise loads the asset and
+     * caches whatever comes back, including null.
+     *
+     * @param <T>
+     * @param cache
+     * @param id
+     * @param loader
+     * @param expireAfterWriteNanos
+     * @return
+     */
+    private <T> Future<T> get(SegmentedLruCache<String, Optional<T>> cache, String id,
+            Function<String, Future<T>> loader, long expireAfterWriteNanos) {
+        Optional<T> cached = cache.getIfPresent(id);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached.orElse(null));
+        }
+        CompletableFuture<T> future = Futures.toCompletableFuture(loader.apply(id));
+        future.whenComplete((asset, ex) -> {
+            if (ex == null) {
+                cache.put(id, Optional.ofNullable(asset), asset != null ? expireAfterWriteNanos : negativeExpireAfterWriteNanos);
+            }
+        });
+        return future;
+    }
+}
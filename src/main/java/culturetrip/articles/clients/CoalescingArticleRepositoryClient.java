@@ -0,0 +1,33 @@
+package culturetrip.articles.clients;
+
+import culturetrip.articles.concurrent.Futures;
+import culturetrip.articles.concurrent.SingleFlight;
+import culturetrip.articles.models.ArticleReference;
+import java.util.concurrent.Future;
+
+/**
+ * An ArticleRepositoryClient that shares one in-flight lookup between all the
+ * concurrent callers asking for the same article, so a trending article only
+ * costs the repository one call at a time.
+ *
+ * @author mball
+ */
+public class CoalescingArticleRepositoryClient implements ArticleRepositoryClient {
+
+    private final ArticleRepositoryClient articleRepositoryClient;
+    private final SingleFlight<String, ArticleReference> inFlight = new SingleFlight<>();
+
+    public CoalescingArticleRepositoryClient(ArticleRepositoryClient articleRepositoryClient) {
+        this.articleRepositoryClient = articleRepositoryClient;
+    }
+
+    public SingleFlight<String, ArticleReference> getInFlight() {
+        return inFlight;
+    }
+
+    @Override
+    public Future<ArticleReference> getArticleReferenceForId(String articleId) {
+        return inFlight.execute(articleId,
+                id -> Futures.toCompletableFuture(articleRepositoryClient.getArticleReferenceForId(id)));
+    }
+}
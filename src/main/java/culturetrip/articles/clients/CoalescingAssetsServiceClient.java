@@ -0,0 +1,42 @@
+package culturetrip.articles.clients;
+
+import culturetrip.articles.concurrent.Futures;
+import culturetrip.articles.concurrent.SingleFlight;
+import culturetrip.articles.models.Image;
+import culturetrip.articles.models.Video;
+import java.util.concurrent.Future;
+
+/**
+ * An AssetsServiceClient that shares one in-flight lookup between all the
+ * concurrent callers asking for the same Image or Video.
+ *
+ * @author mball
+ */
+public class CoalescingAssetsServiceClient implements AssetsServiceClient {
+
+    private final AssetsServiceClient assetsServiceClient;
+    private final SingleFlight<String, Image> imagesInFlight = new SingleFlight<>();
+    private final SingleFlight<String, Video> videosInFlight = new SingleFlight<>();
+
+    public CoalescingAssetsServiceClient(AssetsServiceClient assetsServiceClient) {
+        this.assetsServiceClient = assetsServiceClient;
+    }
+
+    public SingleFlight<String, Image> getImagesInFlight() {
+        return imagesInFlight;
+    }
+
+    public SingleFlight<String, Video> getVideosInFlight() {
+        return videosInFlight;
+    }
+
+    @Override
+    public Future<Image> getImageById(String id) {
+        return imagesInFlight.execute(id, key -> Futures.toCompletableFuture(assetsServiceClient.getImageById(key)));
+    }
+
+    @Override
+    public Future<Video> getVideoById(String id) {
+        return videosInFlight.execute(id, key -> Futures.toCompletableFuture(assetsServiceClient.getVideoById(key)));
+    }
+}
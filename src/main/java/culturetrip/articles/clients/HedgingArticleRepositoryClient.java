@@ -0,0 +1,33 @@
+package culturetrip.articles.clients;
+
+import culturetrip.articles.concurrent.Futures;
+import culturetrip.articles.concurrent.Hedger;
+import culturetrip.articles.models.ArticleReference;
+import java.util.concurrent.Future;
+
+/**
+ * An ArticleRepositoryClient that hedges slow lookups: if the repository
+ * hasn't answered within the Hedger's delay the lookup is sent again, and
+ * whichever answers first is used. Configure the delay and the hedge rate
+ * through getHedger().
+ *
+ * @author mball
+ */
+public class HedgingArticleRepositoryClient implements ArticleRepositoryClient {
+
+    private final ArticleRepositoryClient articleRepositoryClient;
+    private final Hedger hedger = new Hedger();
+
+    public HedgingArticleRepositoryClient(ArticleRepositoryClient articleRepositoryClient) {
+        this.articleRepositoryClient = articleRepositoryClient;
+    }
+
+    public Hedger getHedger() {
+        return hedger;
+    }
+
+    @Override
+    public Future<ArticleReference> getArticleReferenceForId(String articleId) {
+        return hedger.call(() -> Futures.toCompletableFuture(articleRepositoryClient.getArticleReferenceForId(articleId)));
+    }
+}
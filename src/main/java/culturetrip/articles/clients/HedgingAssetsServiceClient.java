@@ -0,0 +1,42 @@
+package culturetrip.articles.clients;
+
+import culturetrip.articles.concurrent.Futures;
+import culturetrip.articles.concurrent.Hedger;
+import culturetrip.articles.models.Image;
+import culturetrip.articles.models.Video;
+import java.util.concurrent.Future;
+
+/**
+ * An AssetsServiceClient that hedges slow Image and Video lookups. Images and
+ * Videos have a Hedger each, as they don't take the same time to fetch.
+ *
+ * @author mball
+ */
+public class HedgingAssetsServiceClient implements AssetsServiceClient {
+
+    private final AssetsServiceClient assetsServiceClient;
+    private final Hedger imageHedger = new Hedger();
+    private final Hedger videoHedger = new Hedger();
+
+    public HedgingAssetsServiceClient(AssetsServiceClient assetsServiceClient) {
+        this.assetsServiceClient = assetsServiceClient;
+    }
+
+    public Hedger getImageHedger() {
+        return imageHedger;
+    }
+
+    public Hedger getVideoHedger() {
+        return videoHedger;
+    }
+
+    @Override
+    public Future<Image> getImageById(String id) {
+        return imageHedger.call(() -> Futures.toCompletableFuture(assetsServiceClient.getImageById(id)));
+    }
+
+    @Override
+    public Future<Video> getVideoById(String id) {
+        return videoHedger.call(() -> Futures.toCompletableFuture(assetsServiceClient.getVideoById(id)));
+    }
+}
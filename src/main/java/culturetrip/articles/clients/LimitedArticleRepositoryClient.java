@@ -0,0 +1,39 @@
+package culturetrip.articles.clients;
+
+import culturetrip.articles.concurrent.AdaptiveConcurrencyLimiter;
+import culturetrip.articles.concurrent.Futures;
+import culturetrip.articles.models.ArticleReference;
+import java.util.concurrent.Future;
+
+/**
+ * An ArticleRepositoryClient with its own adaptive limit on how many calls can
+ * be in flight. Calls over the limit fail straight away with a
+ * RejectedExecutionException. Giving each client its own limiter keeps a slow
+ * article repository from using up the permits for the assets service, and
+ * the other way around.
+ *
+ * @author mball
+ */
+public class LimitedArticleRepositoryClient implements ArticleRepositoryClient {
+
+    private final ArticleRepositoryClient articleRepositoryClient;
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    public LimitedArticleRepositoryClient(ArticleRepositoryClient articleRepositoryClient) {
+        this(articleRepositoryClient, new AdaptiveConcurrencyLimiter());
+    }
+
+    public LimitedArticleRepositoryClient(ArticleRepositoryClient articleRepositoryClient, AdaptiveConcurrencyLimiter limiter) {
+        this.articleRepositoryClient = articleRepositoryClient;
+        this.limiter = limiter;
+    }
+
+    public AdaptiveConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    @Override
+    public Future<ArticleReference> getArticleReferenceForId(String id) {
+        return limiter.call(() -> Futures.toCompletableFuture(articleRepositoryClient.getArticleReferenceForId(id)));
+    }
+}
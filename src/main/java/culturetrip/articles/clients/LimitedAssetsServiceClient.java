@@ -0,0 +1,44 @@
+package culturetrip.articles.clients;
+
+import culturetrip.articles.concurrent.AdaptiveConcurrencyLimiter;
+import culturetrip.articles.concurrent.Futures;
+import culturetrip.articles.models.Image;
+import culturetrip.articles.models.Video;
+import java.util.concurrent.Future;
+
+/**
+ * An AssetsServiceClient with its own adaptive limit on how many calls can be
+ * in flight. Images and Videos come from the same service, so they share the
+ * one limiter. Calls over the limit fail straight away with a
+ * RejectedExecutionException.
+ *
+ * @author mball
+ */
+public class LimitedAssetsServiceClient implements AssetsServiceClient {
+
+    private final AssetsServiceClient assetsServiceClient;
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    public LimitedAssetsServiceClient(AssetsServiceClient assetsServiceClient) {
+        this(assetsServiceClient, new AdaptiveConcurrencyLimiter());
+    }
+
+    public LimitedAssetsServiceClient(AssetsServiceClient assetsServiceClient, AdaptiveConcurrencyLimiter limiter) {
+        this.assetsServiceClient = assetsServiceClient;
+        this.limiter = limiter;
+    }
+
+    public AdaptiveConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    @Override
+    public Future<Image> getImageById(String id) {
+        return limiter.call(() -> Futures.toCompletableFuture(assetsServiceClient.getImageById(id)));
+    }
+
+    @Override
+    public Future<Video> getVideoById(String id) {
+        return limiter.call(() -> Futures.toCompletableFuture(assetsServiceClient.getVideoById(id)));
+    }
+}
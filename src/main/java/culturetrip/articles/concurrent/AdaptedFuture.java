@@ -0,0 +1,66 @@
+package culturetrip.articles.concurrent;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * A CompletableFuture that mirrors a plain Future. Nothing completes it by
+ * itself, the FuturePoller calls poll() until the source is done.
+ *
+ * @author mball
+ */
+class AdaptedFuture<T> extends CompletableFuture<T> {
+
+    private final Future<T> source;
+
+    AdaptedFuture(Future<T> source) {
+        this.source = source;
+    }
+
+    /**
+     * Copies the result of the source Future across if it is done.
+     *
+     * @param executor where to complete this, and so run whatever depends on
+     * it, or null to do it on the calling thread.
+     * @return true if there is nothing left to poll for.
+     */
+    boolean poll(Executor executor) {
+        if (isDone()) {
+            return true;
+        }
+        if (!source.isDone()) {
+            return false;
+        }
+        if (executor == null) {
+            copyResult();
+        } else {
+            executor.execute(this::copyResult);
+        }
+        return true;
+    }
+
+    private void copyResult() {
+        try {
+            complete(source.get());
+        } catch (ExecutionException ex) {
+            completeExceptionally(ex.getCause() != null ? ex.getCause() : ex);
+        } catch (CancellationException ex) {
+            super.cancel(false);
+        } catch (InterruptedException ex) {
+            //can't happen once the source is done, but keep the flag set for whoever owns the thread.
+            Thread.currentThread().interrupt();
+            completeExceptionally(ex);
+        } catch (RuntimeException ex) {
+            completeExceptionally(ex);
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        source.cancel(mayInterruptIfRunning);
+        return super.cancel(mayInterruptIfRunning);
+    }
+}
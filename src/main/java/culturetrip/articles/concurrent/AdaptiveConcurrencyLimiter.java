@@ -0,0 +1,185 @@
+package culturetrip.articles.concurrent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Limits how many calls can be in flight to a downstream service at once, and
+ * tunes that limit from the round trip times it sees. Calls over the limit are
+ * rejected straight away rather than queued, so a slow service can't build up
+ * an unbounded backlog behind it.
+ *
+ * The limit follows a gradient, in the same spirit as TCP Vegas. A long term
+ * average of the round trip time stands in for how fast the service is when it
+ * isn't loaded. While each new sample stays within a tolerance of that, the
+ * service is keeping up and the limit grows by about its square root. Once
+ * samples start taking longer, requests are queueing downstream and the limit
+ * shrinks in proportion. Timeouts cut it back by a tenth straight away, but
+ * only once per round trip, as AIMD does. A timeout only counts if the call
+ * started after the last cut, so when a deadline times out all of an
+ * article's calls at once the limit is cut once rather than once for each.
+ * Cancellations don't cut it, as calls are mostly cancelled because the caller no
+ * longer needs them, such as the rest of an article's assets once one has
+ * failed, or the loser of a hedge. A call that runs out of time is failed
+ * with a TimeoutException before it is cancelled, see Futures.timeOut().
+ *
+ * @author mball
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double LONG_RTT_WINDOW = 100;
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private volatile int minimumLimit = 1;
+    private volatile int maximumLimit = 200;
+
+    //guarded by this, the limit is also read without the lock.
+    private volatile double limit = 20;
+    private double longRttNanos;
+    private boolean backedOff;
+    private long lastBackoffNanos;
+
+    /**
+     * Sets the current limit, which is where it starts from, 20 by default.
+     *
+     * @param limit
+     */
+    public synchronized void setLimit(int limit) {
+        this.limit = clamp(limit);
+    }
+
+    public void setMinimumLimit(int minimumLimit) {
+        if (minimumLimit <= 0) {
+            throw new IllegalArgumentException("minimumLimit must be positive: " + minimumLimit);
+        }
+        this.minimumLimit = minimumLimit;
+    }
+
+    public void setMaximumLimit(int maximumLimit) {
+        this.maximumLimit = maximumLimit;
+    }
+
+    /**
+     * The number of calls currently allowed in flight.
+     *
+     * @return
+     */
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * The number of calls turned away because the limit had been reached.
+     *
+     * @return
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Takes a permit if there is one going. Every permit taken must be given
+     * back with release().
+     *
+     * @return whether a permit was taken.
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                rejected.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gives a permit back and adjusts the limit from how the call went. A
+     * TimeoutException counts as the service being overloaded, unless the
+     * call started before the limit was last cut for one. Cancellations
+     * and other failures say nothing about its load, so only the permit is
+     * given back.
+     *
+     * @param rttNanos how long the call took.
+     * @param failure what the call failed with, or null.
+     */
+    public void release(long rttNanos, Throwable failure) {
+        int current = inFlight.getAndDecrement();
+        if (failure instanceof TimeoutException) {
+            backOff(System.nanoTime() - rttNanos);
+        } else if (failure == null) {
+            update(Math.max(1, rttNanos), current);
+        }
+    }
+
+    /**
+     * Makes a call if a permit can be had, giving it back when the call
+     * completes. If not, the returned Future has already failed with a
+     * RejectedExecutionException and the call isn't made. The call's own
+     * Future is handed back, so cancelling it cancels the call.
+     *
+     * @param <T>
+     * @param call
+     * @return
+     */
+    public <T> CompletableFuture<T> call(Supplier<? extends CompletableFuture<T>> call) {
+        if (!tryAcquire()) {
+            return Futures.failed(new RejectedExecutionException("Concurrency limit of " + getLimit() + " reached"));
+        }
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException ex) {
+            release(System.nanoTime() - start, ex);
+            return Futures.failed(ex);
+        }
+        future.whenComplete((value, ex) -> release(System.nanoTime() - start, Futures.unwrap(ex)));
+        return future;
+    }
+
+    private synchronized void backOff(long startNanos) {
+        if (backedOff && startNanos - lastBackoffNanos < 0) {
+            //it was already in flight at the last cut, which has allowed for it.
+            return;
+        }
+        limit = clamp(limit * BACKOFF_RATIO);
+        backedOff = true;
+        lastBackoffNanos = System.nanoTime();
+    }
+
+    private synchronized void update(long rttNanos, int inFlightAtRelease) {
+        if (longRttNanos == 0) {
+            longRttNanos = rttNanos;
+        } else {
+            longRttNanos += (rttNanos - longRttNanos) / LONG_RTT_WINDOW;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRttNanos / rttNanos));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        if (newLimit > limit && inFlightAtRelease < limit / 2) {
+            //the limit isn't what's holding the callers back, so there's nothing to learn about raising it.
+            return;
+        }
+        limit = clamp(limit * (1 - SMOOTHING) + newLimit * SMOOTHING);
+    }
+
+    private double clamp(double value) {
+        return Math.max(minimumLimit, Math.min(maximumLimit, value));
+    }
+}
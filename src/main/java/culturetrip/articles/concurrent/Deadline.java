@@ -0,0 +1,57 @@
+package culturetrip.articles.concurrent;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed point in time, measured with System.nanoTime(), by which a whole
+ * piece of work has to be finished. Each step asks for the time that is left
+ * rather than getting a timeout of its own, so the steps can't add up to more
+ * than the original budget.
+ *
+ * It keeps when it started and the budget rather than the sum of the two, as
+ * that overflows for a budget like Long.MAX_VALUE, and a Deadline that far off
+ * would look as if it had already passed.
+ *
+ * @author mball
+ */
+public final class Deadline {
+
+    private final long startNanos;
+    private final long budgetNanos;
+
+    private Deadline(long startNanos, long budgetNanos) {
+        this.startNanos = startNanos;
+        this.budgetNanos = budgetNanos;
+    }
+
+    /**
+     * Creates a Deadline the given amount of time from now. A negative
+     * duration is the same as zero.
+     *
+     * @param duration
+     * @param unit
+     * @return
+     */
+    public static Deadline after(long duration, TimeUnit unit) {
+        return new Deadline(System.nanoTime(), Math.max(0, unit.toNanos(duration)));
+    }
+
+    /**
+     * The time left before the Deadline, which is zero or negative once it has
+     * passed.
+     *
+     * @return
+     */
+    public long remainingNanos() {
+        return budgetNanos - (System.nanoTime() - startNanos);
+    }
+
+    public boolean isExpired() {
+        return remainingNanos() <= 0;
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline[" + TimeUnit.NANOSECONDS.toMillis(remainingNanos()) + "ms remaining]";
+    }
+}
@@ -0,0 +1,116 @@
+package culturetrip.articles.concurrent;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory methods for the executors an enricher can run its work on. Any
+ * Executor can be passed to the enricher, these are the ones we expect to
+ * want: a bounded pool that sheds load once its queue is full, and a virtual
+ * thread per task on JDKs that have them.
+ *
+ * @author mball
+ */
+public final class EnricherExecutors {
+
+    /**
+     * What a bounded pool does with work once its threads are busy and its
+     * queue is full.
+     */
+    public enum RejectionPolicy {
+        /**
+         * Fail straight away with a RejectedExecutionException.
+         */
+        ABORT(new ThreadPoolExecutor.AbortPolicy()),
+        /**
+         * Run the work on the thread that submitted it, which slows the
+         * submitter down to the pool's pace.
+         */
+        CALLER_RUNS(new ThreadPoolExecutor.CallerRunsPolicy());
+
+        private final RejectedExecutionHandler handler;
+
+        RejectionPolicy(RejectedExecutionHandler handler) {
+            this.handler = handler;
+        }
+    }
+
+    private static final MethodHandle NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findVirtualThreadPerTaskExecutor();
+
+    private EnricherExecutors() {
+    }
+
+    /**
+     * A fixed size pool of daemon threads with a bounded queue.
+     *
+     * @param threads
+     * @param queueCapacity
+     * @param rejectionPolicy
+     * @return
+     */
+    public static ExecutorService bounded(int threads, int queueCapacity, RejectionPolicy rejectionPolicy) {
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                daemonThreadFactory("article-enricher-"),
+                rejectionPolicy.handler);
+    }
+
+    /**
+     * Whether this JDK can start a virtual thread per task.
+     *
+     * @return
+     */
+    public static boolean isVirtualThreadPerTaskSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * An executor that starts a new virtual thread for each task. Virtual
+     * threads only exist from JDK 21, so this is looked up at runtime and the
+     * project can still be built for older JDKs.
+     *
+     * @return
+     * @throws UnsupportedOperationException if the JDK doesn't have virtual
+     * threads.
+     */
+    public static ExecutorService virtualThreadPerTask() {
+        if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+            throw new UnsupportedOperationException("Virtual threads need JDK 21 or later, this is "
+                    + System.getProperty("java.version"));
+        }
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke();
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static MethodHandle findVirtualThreadPerTaskExecutor() {
+        try {
+            return MethodHandles.publicLookup().findStatic(Executors.class, "newVirtualThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class));
+        } catch (NoSuchMethodException | IllegalAccessException ex) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,57 @@
+package culturetrip.articles.concurrent;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Checks every pending AdaptedFuture on a single scheduler thread, so waiting
+ * on a plain Future doesn't need a thread of its own. It only runs while
+ * there is something to poll. The ones that are done are completed on the
+ * executor, so nothing that depends on them runs on the scheduler.
+ *
+ * @author mball
+ */
+class FuturePoller implements Runnable {
+
+    private static final long POLL_INTERVAL_MICROS = 500;
+
+    private final ScheduledExecutorService scheduler;
+    private final Executor executor;
+    private final Queue<AdaptedFuture<?>> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    FuturePoller(ScheduledExecutorService scheduler, Executor executor) {
+        this.scheduler = scheduler;
+        this.executor = executor;
+    }
+
+    void register(AdaptedFuture<?> future) {
+        pending.add(future);
+        scheduleIfIdle();
+    }
+
+    @Override
+    public void run() {
+        for (Iterator<AdaptedFuture<?>> it = pending.iterator(); it.hasNext();) {
+            if (it.next().poll(executor)) {
+                it.remove();
+            }
+        }
+        scheduled.set(false);
+        //something may have been registered after we looked, so check again once we are no longer marked as scheduled.
+        if (!pending.isEmpty()) {
+            scheduleIfIdle();
+        }
+    }
+
+    private void scheduleIfIdle() {
+        if (scheduled.compareAndSet(false, true)) {
+            scheduler.schedule(this, POLL_INTERVAL_MICROS, TimeUnit.MICROSECONDS);
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package culturetrip.articles.concurrent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Helpers for composing the Futures returned by the clients without blocking
+ * a thread on each one.
+ *
+ * Plain Futures have no way of telling us when they are done, so anything
+ * that isn't already a CompletionStage is handed to a single shared poller
+ * thread. Timeouts are driven from the same thread, so the number of threads
+ * stays the same however many calls are pending.
+ *
+ * That thread only ever notices that something is due. Completing the
+ * Future, and so running whatever depends on it, like the next call to a
+ * client, is handed to the async executor. Otherwise one slow or blocking
+ * callback would hold up every timeout and poll in the JVM.
+ *
+ * @author mball
+ */
+public final class Futures {
+
+    /**
+     * The one daemon thread that polls plain Futures and fires timeouts.
+     */
+    private static final ScheduledThreadPoolExecutor SCHEDULER = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "article-enricher-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        SCHEDULER.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * The daemon threads that the scheduler hands completions to.
+     */
+    private static final ExecutorService ASYNC = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "article-enricher-async-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static final FuturePoller POLLER = new FuturePoller(SCHEDULER, ASYNC);
+
+    private Futures() {
+    }
+
+    /**
+     * Adapts a Future from one of the clients to a CompletableFuture. If the
+     * Future is already a CompletionStage it is used as it is, otherwise it is
+     * polled until it is done. Cancelling the returned CompletableFuture
+     * cancels the original Future.
+     *
+     * @param <T>
+     * @param future
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> CompletableFuture<T> toCompletableFuture(Future<T> future) {
+        if (future == null) {
+            return failed(new NullPointerException("The client returned a null Future"));
+        }
+        if (future instanceof CompletableFuture) {
+            return (CompletableFuture<T>) future;
+        }
+        if (future instanceof CompletionStage) {
+            return ((CompletionStage<T>) future).toCompletableFuture();
+        }
+        AdaptedFuture<T> adapted = new AdaptedFuture<>(future);
+        if (!adapted.poll(null)) {
+            POLLER.register(adapted);
+        }
+        return adapted;
+    }
+
+    /**
+     * Returns a CompletableFuture that completes the same way as the one given,
+     * unless it takes longer than the timeout, in which case it completes with
+     * a TimeoutException instead and the original is timed out, as nobody is
+     * waiting on it any more. See timeOut().
+     *
+     * @param <T>
+     * @param future
+     * @param timeout
+     * @param unit
+     * @return
+     */
+    public static <T> CompletableFuture<T> within(CompletableFuture<T> future, long timeout, TimeUnit unit) {
+        if (future.isDone()) {
+            return future;
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicBoolean timedOut = new AtomicBoolean();
+        ScheduledFuture<?> timer = scheduleAsync(SCHEDULER, ASYNC, () -> {
+            //time out the original before failing the result, so it is already done by the time anyone sees the timeout.
+            timedOut.set(true);
+            timeOut(future);
+            result.completeExceptionally(new TimeoutException());
+        }, timeout, unit, rejected -> {
+        });
+        future.whenComplete((value, ex) -> {
+            timer.cancel(false);
+            if (timedOut.get()) {
+                result.completeExceptionally(new TimeoutException());
+            } else if (ex != null) {
+                result.completeExceptionally(unwrap(ex));
+            } else {
+                result.complete(value);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Gives up on a Future because it has run out of time. It fails with a
+     * TimeoutException, so whatever is watching it, like the
+     * AdaptiveConcurrencyLimiter, can tell it ran out of time rather than
+     * being cancelled because it was no longer needed. Then it is cancelled,
+     * which cancels the plain Future behind an adapted one.
+     *
+     * @param future
+     */
+    public static void timeOut(CompletableFuture<?> future) {
+        future.completeExceptionally(new TimeoutException());
+        future.cancel(true);
+    }
+
+    /**
+     * Whether a Future has failed with a TimeoutException, such as one given
+     * up on with timeOut().
+     *
+     * @param future
+     * @return
+     */
+    public static boolean isTimedOut(CompletableFuture<?> future) {
+        if (!future.isCompletedExceptionally() || future.isCancelled()) {
+            return false;
+        }
+        try {
+            future.join();
+            return false;
+        } catch (CompletionException ex) {
+            return unwrap(ex) instanceof TimeoutException;
+        }
+    }
+
+    /**
+     * Returns a CompletableFuture that completes the same way as the one given,
+     * unless the Deadline passes first. See within(future, timeout, unit).
+     *
+     * @param <T>
+     * @param future
+     * @param deadline
+     * @return
+     */
+    public static <T> CompletableFuture<T> within(CompletableFuture<T> future, Deadline deadline) {
+        return within(future, Math.max(0, deadline.remainingNanos()), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Runs work that returns a stage on the given executor and returns a
+     * CompletableFuture that completes the same way as that stage. If the
+     * executor rejects the work the result fails with the
+     * RejectedExecutionException, rather than it being thrown at whichever
+     * thread happened to complete the previous stage. A null executor runs the
+     * work straight away on the calling thread, which is never the scheduler.
+     * See asyncExecutor().
+     *
+     * @param <T>
+     * @param work
+     * @param executor
+     * @return
+     */
+    public static <T> CompletableFuture<T> composeAsync(Supplier<? extends CompletionStage<T>> work, Executor executor) {
+        if (executor == null) {
+            return compose(work);
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> compose(work).whenComplete((value, ex) -> {
+                if (ex != null) {
+                    result.completeExceptionally(unwrap(ex));
+                } else {
+                    result.complete(value);
+                }
+            }));
+        } catch (RejectedExecutionException ex) {
+            result.completeExceptionally(ex);
+        }
+        return result;
+    }
+
+    /**
+     * Runs a task on the executor once the delay is up, timing it on the
+     * scheduler. If the executor turns the task away, onRejected is called
+     * instead, on the scheduler thread, so it must be quick. Cancelling the
+     * returned ScheduledFuture before the delay is up stops the task being
+     * handed over at all. See scheduler().
+     *
+     * @param scheduler
+     * @param executor
+     * @param task
+     * @param delay
+     * @param unit
+     * @param onRejected
+     * @return
+     */
+    public static ScheduledFuture<?> scheduleAsync(ScheduledExecutorService scheduler, Executor executor, Runnable task,
+            long delay, TimeUnit unit, Consumer<? super RejectedExecutionException> onRejected) {
+        return scheduler.schedule(() -> {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException ex) {
+                onRejected.accept(ex);
+            }
+        }, delay, unit);
+    }
+
+    /**
+     * Returns a CompletableFuture that has already completed with the given
+     * exception.
+     *
+     * @param <T>
+     * @param ex
+     * @return
+     */
+    public static <T> CompletableFuture<T> failed(Throwable ex) {
+        return CompletableFuture.failedFuture(ex);
+    }
+
+    private static <T> CompletableFuture<T> compose(Supplier<? extends CompletionStage<T>> work) {
+        try {
+            return work.get().toCompletableFuture();
+        } catch (RuntimeException ex) {
+            return failed(ex);
+        }
+    }
+
+    /**
+     * Strips the CompletionException and ExecutionException wrappers off an
+     * exception so we can get at what actually went wrong. Null is passed
+     * straight through.
+     *
+     * @param ex
+     * @return
+     */
+    public static Throwable unwrap(Throwable ex) {
+        while ((ex instanceof CompletionException || ex instanceof ExecutionException) && ex.getCause() != null) {
+            ex = ex.getCause();
+        }
+        return ex;
+    }
+
+    /**
+     * The scheduler shared by everything in the enricher that needs to do
+     * something later.
+     *
+     * It has a single thread, so nothing it runs may be slow: a client call
+     * or a callback that blocks would hold up every timeout, poll and timer in
+     * the JVM. Anything that does real work once its time comes, like sending
+     * a hedge, making a retry, sending a batch or starting a prefetch, is only
+     * timed here and is run on an executor, with scheduleAsync(). The classes
+     * that do so take the executor with setExecutor(), asyncExecutor() by
+     * default, so a bounded one can be given instead, and each decides what it
+     * means for its work to be turned away.
+     *
+     * @return
+     */
+    public static ScheduledExecutorService scheduler() {
+        return SCHEDULER;
+    }
+
+    /**
+     * The default executor for work timed on the scheduler, see scheduler().
+     * It is a cached pool of daemon threads, so work that blocks doesn't hold
+     * up the rest.
+     *
+     * @return
+     */
+    public static Executor asyncExecutor() {
+        return ASYNC;
+    }
+}
@@ -0,0 +1,227 @@
+package culturetrip.articles.concurrent;
+
+import culturetrip.articles.metrics.LatencyHistogram;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Sends a second copy of a call if the first hasn't answered within a delay,
+ * and takes whichever succeeds first, cancelling the other. If the result is
+ * timed out with Futures.timeOut(), both attempts are timed out. A few slow
+ * responses then cost the delay plus a normal response rather than the full
+ * straggler.
+ *
+ * The delay is either fixed, or a percentile of the latencies seen so far,
+ * such as the 95th, once there are enough of them. Hedges are paid for from a
+ * token bucket topped up by a fraction of a token on every call, so they can
+ * never be more than that fraction of the calls, however slow the downstream
+ * service gets.
+ *
+ * Hedges are sent from the executor rather than the scheduler thread that
+ * times them, see Futures.scheduler(). If the executor turns one away, the
+ * primary is left to finish on its own.
+ *
+ * @author mball
+ */
+public class Hedger {
+
+    private static final double BURST = 10;
+    private static final int DELAY_RECALCULATION_INTERVAL = 256;
+
+    private final ScheduledExecutorService scheduler;
+    private volatile Executor executor = Futures.asyncExecutor();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final TokenBucket hedgeBudget = new TokenBucket(BURST);
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgesWon = new LongAdder();
+    private volatile long fixedDelayNanos = TimeUnit.MILLISECONDS.toNanos(50);
+    private volatile double delayPercentile;
+    private volatile int minimumSamples;
+    private volatile long observedDelayNanos = -1;
+    private volatile double maxHedgeRate = 0.05;
+
+    public Hedger() {
+        this(Futures.scheduler());
+    }
+
+    public Hedger(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Hedges any call that hasn't answered after a fixed delay. This is also
+     * the delay used until there are enough samples for setDelayPercentile.
+     *
+     * @param delay
+     * @param unit
+     */
+    public void setDelay(long delay, TimeUnit unit) {
+        this.fixedDelayNanos = unit.toNanos(delay);
+    }
+
+    /**
+     * Hedges any call that has taken longer than the given percentile of the
+     * successful calls seen so far, once at least minimumSamples have been
+     * seen.
+     *
+     * @param percentile
+     * @param minimumSamples
+     */
+    public void setDelayPercentile(double percentile, int minimumSamples) {
+        this.delayPercentile = percentile;
+        this.minimumSamples = minimumSamples;
+    }
+
+    /**
+     * Sets where hedges are sent from, Futures.asyncExecutor() by default.
+     *
+     * @param executor
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the most hedges there can be as a fraction of the calls, 0.05 by
+     * default.
+     *
+     * @param maxHedgeRate
+     */
+    public void setMaxHedgeRate(double maxHedgeRate) {
+        this.maxHedgeRate = maxHedgeRate;
+    }
+
+    public long getCallCount() {
+        return calls.sum();
+    }
+
+    /**
+     * The number of hedges sent.
+     *
+     * @return
+     */
+    public long getHedgeCount() {
+        return hedges.sum();
+    }
+
+    /**
+     * The number of hedges that answered before the call they were hedging.
+     *
+     * @return
+     */
+    public long getHedgeWinCount() {
+        return hedgesWon.sum();
+    }
+
+    /**
+     * The delay that a call made now would be hedged after.
+     *
+     * @return
+     */
+    public long getDelayNanos() {
+        long observed = observedDelayNanos;
+        return observed >= 0 ? observed : fixedDelayNanos;
+    }
+
+    public <T> CompletableFuture<T> call(Supplier<? extends CompletableFuture<T>> call) {
+        calls.increment();
+        hedgeBudget.deposit(maxHedgeRate);
+        if (delayPercentile > 0 && calls.sum() % DELAY_RECALCULATION_INTERVAL == 0 && latencies.getCount() >= minimumSamples) {
+            observedDelayNanos = latencies.getValueAtPercentile(delayPercentile);
+        }
+        return new HedgedCall<>(call).start();
+    }
+
+    /**
+     * One call and, if it comes to it, its hedge.
+     */
+    private final class HedgedCall<T> {
+
+        private final Supplier<? extends CompletableFuture<T>> call;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final AtomicInteger outstanding = new AtomicInteger(1);
+        private final AtomicBoolean answered = new AtomicBoolean();
+        private final long start = System.nanoTime();
+        private volatile CompletableFuture<T> primary;
+        private volatile CompletableFuture<T> hedge;
+
+        HedgedCall(Supplier<? extends CompletableFuture<T>> call) {
+            this.call = call;
+        }
+
+        CompletableFuture<T> start() {
+            primary = attempt(false);
+            if (!result.isDone()) {
+                ScheduledFuture<?> timer = Futures.scheduleAsync(scheduler, executor, this::hedge, getDelayNanos(), TimeUnit.NANOSECONDS, rejected -> {
+                    //no hedge then, the primary is still going.
+                });
+                //whoever wins, or if the caller gives up, the timer and the loser are no longer needed.
+                result.whenComplete((value, ex) -> {
+                    timer.cancel(false);
+                    cancel(primary);
+                    cancel(hedge);
+                });
+            }
+            return result;
+        }
+
+        private void hedge() {
+            //only hedge if the budget allows, and only while the primary is still outstanding.
+            if (result.isDone() || !hedgeBudget.tryAcquire()) {
+                return;
+            }
+            if (outstanding.getAndUpdate(n -> n == 0 ? 0 : n + 1) == 0) {
+                hedgeBudget.deposit(1);
+                return;
+            }
+            hedges.increment();
+            hedge = attempt(true);
+            if (result.isDone()) {
+                cancel(hedge);
+            }
+        }
+
+        private CompletableFuture<T> attempt(boolean isHedge) {
+            CompletableFuture<T> attempt;
+            try {
+                attempt = call.get();
+            } catch (RuntimeException ex) {
+                attempt = Futures.failed(ex);
+            }
+            attempt.whenComplete((value, ex) -> {
+                if (ex == null) {
+                    //count the win before completing, so the counters are up to date by the time the caller sees the result.
+                    if (answered.compareAndSet(false, true)) {
+                        latencies.record(System.nanoTime() - start);
+                        if (isHedge) {
+                            hedgesWon.increment();
+                        }
+                        result.complete(value);
+                    }
+                } else if (outstanding.decrementAndGet() == 0) {
+                    result.completeExceptionally(Futures.unwrap(ex));
+                }
+            });
+            return attempt;
+        }
+
+        private void cancel(CompletableFuture<T> attempt) {
+            if (attempt == null || attempt.isDone()) {
+                return;
+            }
+            if (Futures.isTimedOut(result)) {
+                Futures.timeOut(attempt);
+            } else {
+                attempt.cancel(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package culturetrip.articles.concurrent;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Collects individual lookups into batches and sends each batch with a single
+ * bulk call. A batch is sent once it reaches the maximum batch size, or once
+ * the first lookup in it has waited for the linger time, whichever comes
+ * first. Lookups for a key that is already waiting in the current batch share
+ * its slot.
+ *
+ * A full batch is sent from the thread whose lookup filled it. One whose
+ * linger time is up is sent from the executor, see Futures.scheduler(), and
+ * if the executor turns it away every lookup in it fails.
+ *
+ * @author mball
+ */
+public class MicroBatcher<K, V> {
+
+    private final Function<Collection<K>, CompletableFuture<Map<K, V>>> bulkCall;
+    private final ScheduledExecutorService scheduler;
+    private volatile Executor executor = Futures.asyncExecutor();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder lookups = new LongAdder();
+    private volatile int maximumBatchSize = 50;
+    private volatile long lingerNanos = TimeUnit.MILLISECONDS.toNanos(2);
+
+    //guarded by this
+    private Map<K, CompletableFuture<V>> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> flushTimer;
+
+    public MicroBatcher(Function<Collection<K>, CompletableFuture<Map<K, V>>> bulkCall) {
+        this(bulkCall, Futures.scheduler());
+    }
+
+    public MicroBatcher(Function<Collection<K>, CompletableFuture<Map<K, V>>> bulkCall, ScheduledExecutorService scheduler) {
+        this.bulkCall = bulkCall;
+        this.scheduler = scheduler;
+    }
+
+    public void setMaximumBatchSize(int maximumBatchSize) {
+        if (maximumBatchSize <= 0) {
+            throw new IllegalArgumentException("maximumBatchSize must be positive: " + maximumBatchSize);
+        }
+        this.maximumBatchSize = maximumBatchSize;
+    }
+
+    public void setLinger(long linger, TimeUnit unit) {
+        this.lingerNanos = unit.toNanos(linger);
+    }
+
+    /**
+     * Sets where batches are sent from once their linger time is up,
+     * Futures.asyncExecutor() by default.
+     *
+     * @param executor
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Adds a lookup to the current batch. The returned Future completes with
+     * the value from the bulk call, or null if the bulk call didn't return one
+     * for the key.
+     *
+     * @param key
+     * @return
+     */
+    public CompletableFuture<V> submit(K key) {
+        lookups.increment();
+        CompletableFuture<V> future;
+        Map<K, CompletableFuture<V>> full = null;
+        synchronized (this) {
+            future = pending.get(key);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                pending.put(key, future);
+            }
+            if (pending.size() >= maximumBatchSize) {
+                full = takePending();
+            } else if (flushTimer == null) {
+                flushTimer = Futures.scheduleAsync(scheduler, executor, this::flush, lingerNanos, TimeUnit.NANOSECONDS, this::fail);
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+        //callers get their own dependent Future, so one cancelling doesn't fail everyone sharing the slot.
+        return future.thenApply(Function.identity());
+    }
+
+    /**
+     * Sends whatever is waiting straight away.
+     */
+    public void flush() {
+        Map<K, CompletableFuture<V>> batch;
+        synchronized (this) {
+            batch = takePending();
+        }
+        if (!batch.isEmpty()) {
+            send(batch);
+        }
+    }
+
+    private void fail(RejectedExecutionException ex) {
+        Map<K, CompletableFuture<V>> batch;
+        synchronized (this) {
+            batch = takePending();
+        }
+        batch.values().forEach(future -> future.completeExceptionally(ex));
+    }
+
+    /**
+     * The number of bulk calls made.
+     *
+     * @return
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * The number of individual lookups submitted.
+     *
+     * @return
+     */
+    public long getLookupCount() {
+        return lookups.sum();
+    }
+
+    //must hold the lock.
+    private Map<K, CompletableFuture<V>> takePending() {
+        Map<K, CompletableFuture<V>> batch = pending;
+        pending = new LinkedHashMap<>();
+        if (flushTimer != null) {
+            flushTimer.cancel(false);
+            flushTimer = null;
+        }
+        return batch;
+    }
+
+    private void send(Map<K, CompletableFuture<V>> batch) {
+        batches.increment();
+        try {
+            bulkCall.apply(batch.keySet()).whenComplete((results, ex) -> {
+                if (ex != null) {
+                    Throwable cause = Futures.unwrap(ex);
+                    batch.values().forEach(future -> future.completeExceptionally(cause));
+                } else {
+                    batch.forEach((key, future) -> future.complete(results == null ? null : results.get(key)));
+                }
+            });
+        } catch (RuntimeException ex) {
+            batch.values().forEach(future -> future.completeExceptionally(ex));
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package culturetrip.articles.concurrent;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Tries a failed call again, after an exponential backoff with full jitter:
+ * the nth retry waits a random time between zero and the base delay times
+ * 2^(n-1), capped at the maximum delay. The randomness spreads the retries of
+ * calls that failed together, so they don't all land on the service again at
+ * the same moment.
+ *
+ * A retry is only made if it would start before the call's Deadline, as
+ * there's no point in starting one that can't finish. Retries are also paid
+ * for from a token bucket topped up by a fraction of a token on every call,
+ * so during an outage, when every call fails, they can't be more than that
+ * fraction of the calls on top of them, rather than multiplying the load on a
+ * service that is already down.
+ *
+ * Cancellations and RejectedExecutionExceptions, which mean we are shedding
+ * load ourselves, are never retried.
+ *
+ * Retries are made from the executor once the backoff is up, see
+ * Futures.scheduler(). A retry the executor turns away fails the call with
+ * the failure it was retrying.
+ *
+ * @author mball
+ */
+public class Retrier {
+
+    private static final double BURST = 10;
+
+    private final ScheduledExecutorService scheduler;
+    private volatile Executor executor = Futures.asyncExecutor();
+    private final TokenBucket retryBudget = new TokenBucket(BURST);
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+    private volatile int maxAttempts = 3;
+    private volatile long baseDelayNanos = TimeUnit.MILLISECONDS.toNanos(10);
+    private volatile long maxDelayNanos = TimeUnit.SECONDS.toNanos(1);
+    private volatile double maxRetryRate = 0.1;
+    private volatile Predicate<Throwable> retryable = failure -> true;
+
+    public Retrier() {
+        this(Futures.scheduler());
+    }
+
+    public Retrier(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Sets the most times a call is made, counting the first, 3 by default.
+     *
+     * @param maxAttempts
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("maxAttempts must be positive: " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Sets the backoff before the first retry, which doubles for every retry
+     * after it up to the maximum. 10ms and 1s by default.
+     *
+     * @param baseDelay
+     * @param maxDelay
+     * @param unit
+     */
+    public void setBackoff(long baseDelay, long maxDelay, TimeUnit unit) {
+        this.baseDelayNanos = unit.toNanos(baseDelay);
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+    }
+
+    /**
+     * Sets the most retries there can be as a fraction of the calls, 0.1 by
+     * default.
+     *
+     * @param maxRetryRate
+     */
+    public void setMaxRetryRate(double maxRetryRate) {
+        this.maxRetryRate = maxRetryRate;
+    }
+
+    /**
+     * Sets where retries are made from, Futures.asyncExecutor() by default.
+     *
+     * @param executor
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets which failures are worth retrying, all of them by default. A
+     * failure with nothing to gain from being retried, like a bad request,
+     * should be left out.
+     *
+     * @param retryable
+     */
+    public void setRetryable(Predicate<Throwable> retryable) {
+        this.retryable = retryable;
+    }
+
+    public long getCallCount() {
+        return calls.sum();
+    }
+
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    /**
+     * The number of retries that weren't made because the budget had run
+     * out.
+     *
+     * @return
+     */
+    public long getBudgetExhaustedCount() {
+        return budgetExhausted.sum();
+    }
+
+    /**
+     * Makes a call, retrying it if it fails. The result fails with the last
+     * attempt's failure if it runs out of attempts, budget or time.
+     * Cancelling the result cancels the attempt in progress and stops any
+     * more, and timing it out with Futures.timeOut() times the attempt out.
+     *
+     * @param <T>
+     * @param call
+     * @param deadline
+     * @param onRetry run just before every retry, to count it.
+     * @return
+     */
+    public <T> CompletableFuture<T> call(Supplier<? extends CompletableFuture<T>> call, Deadline deadline, Runnable onRetry) {
+        calls.increment();
+        retryBudget.deposit(maxRetryRate);
+        return new RetriedCall<>(call, deadline, onRetry).start();
+    }
+
+    /**
+     * The full jitter backoff before the given retry, counting from one.
+     *
+     * @param retry
+     * @return
+     */
+    long backoffNanos(int retry) {
+        long ceiling = baseDelayNanos << Math.min(retry - 1, 30);
+        if (ceiling <= 0 || ceiling > maxDelayNanos) {
+            ceiling = maxDelayNanos;
+        }
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private boolean isRetryable(Throwable failure) {
+        return !(failure instanceof CancellationException)
+                && !(failure instanceof RejectedExecutionException)
+                && retryable.test(failure);
+    }
+
+    /**
+     * One call and its retries.
+     */
+    private final class RetriedCall<T> {
+
+        private final Supplier<? extends CompletableFuture<T>> call;
+        private final Deadline deadline;
+        private final Runnable onRetry;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private volatile CompletableFuture<T> current;
+        private volatile ScheduledFuture<?> timer;
+        private int attempts;
+
+        RetriedCall(Supplier<? extends CompletableFuture<T>> call, Deadline deadline, Runnable onRetry) {
+            this.call = call;
+            this.deadline = deadline;
+            this.onRetry = onRetry;
+        }
+
+        CompletableFuture<T> start() {
+            attempt();
+            result.whenComplete((value, ex) -> {
+                if (ex != null) {
+                    ScheduledFuture<?> pending = timer;
+                    if (pending != null) {
+                        pending.cancel(false);
+                    }
+                    abandon(current);
+                }
+            });
+            return result;
+        }
+
+        private void attempt() {
+            if (result.isDone()) {
+                return;
+            }
+            attempts++;
+            CompletableFuture<T> attempt;
+            try {
+                attempt = call.get();
+            } catch (RuntimeException ex) {
+                attempt = Futures.failed(ex);
+            }
+            current = attempt;
+            if (result.isCompletedExceptionally()) {
+                abandon(attempt);
+                return;
+            }
+            attempt.whenComplete((value, ex) -> {
+                if (ex == null) {
+                    result.complete(value);
+                } else {
+                    retryOrFail(Futures.unwrap(ex));
+                }
+            });
+        }
+
+        /**
+         * Stops an attempt the same way the result was stopped, timing it
+         * out if the result timed out and cancelling it otherwise. Does
+         * nothing to an attempt that has already completed.
+         */
+        private void abandon(CompletableFuture<T> attempt) {
+            if (attempt.isDone()) {
+                return;
+            }
+            if (Futures.isTimedOut(result)) {
+                Futures.timeOut(attempt);
+            } else {
+                attempt.cancel(true);
+            }
+        }
+
+        private void retryOrFail(Throwable failure) {
+            if (result.isDone() || attempts >= maxAttempts || !isRetryable(failure)) {
+                result.completeExceptionally(failure);
+                return;
+            }
+            long delayNanos = backoffNanos(attempts);
+            if (delayNanos >= deadline.remainingNanos()) {
+                result.completeExceptionally(failure);
+                return;
+            }
+            if (!retryBudget.tryAcquire()) {
+                budgetExhausted.increment();
+                result.completeExceptionally(failure);
+                return;
+            }
+            retries.increment();
+            onRetry.run();
+            timer = Futures.scheduleAsync(scheduler, executor, this::attempt, delayNanos, TimeUnit.NANOSECONDS,
+                    rejected -> result.completeExceptionally(failure));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package culturetrip.articles.concurrent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Coalesces concurrent calls for the same key, so only the first caller
+ * actually makes the call and everyone who asks while it is in flight shares
+ * the result. The key is forgotten as soon as the call completes, so nothing
+ * is cached, the next caller after that starts a new call.
+ *
+ * Each caller gets their own dependent Future, so one caller cancelling
+ * doesn't cancel the call for everyone else.
+ *
+ * @author mball
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Joins the call in flight for the key, or starts one with the given
+     * function if there isn't one.
+     *
+     * @param key
+     * @param call
+     * @return
+     */
+    public CompletableFuture<V> execute(K key, Function<? super K, ? extends CompletableFuture<V>> call) {
+        CompletableFuture<V> shared = inFlight.get(key);
+        if (shared == null) {
+            CompletableFuture<V> placeholder = new CompletableFuture<>();
+            shared = inFlight.putIfAbsent(key, placeholder);
+            if (shared == null) {
+                calls.increment();
+                start(key, placeholder, call);
+                return placeholder.thenApply(Function.identity());
+            }
+        }
+        coalesced.increment();
+        return shared.thenApply(Function.identity());
+    }
+
+    /**
+     * The number of calls currently in flight.
+     *
+     * @return
+     */
+    public int size() {
+        return inFlight.size();
+    }
+
+    /**
+     * The number of calls that were actually made.
+     *
+     * @return
+     */
+    public long getCallCount() {
+        return calls.sum();
+    }
+
+    /**
+     * The number of callers that joined a call that was already in flight
+     * rather than making their own.
+     *
+     * @return
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    private void start(K key, CompletableFuture<V> placeholder, Function<? super K, ? extends CompletableFuture<V>> call) {
+        try {
+            call.apply(key).whenComplete((value, ex) -> {
+                //forget the key before completing, so anyone who sees the result and calls again gets a fresh call.
+                inFlight.remove(key, placeholder);
+                if (ex != null) {
+                    placeholder.completeExceptionally(Futures.unwrap(ex));
+                } else {
+                    placeholder.complete(value);
+                }
+            });
+        } catch (RuntimeException ex) {
+            inFlight.remove(key, placeholder);
+            placeholder.completeExceptionally(ex);
+        }
+    }
+}
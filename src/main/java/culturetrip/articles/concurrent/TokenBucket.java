@@ -0,0 +1,59 @@
+package culturetrip.articles.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free token bucket. Tokens are deposited by whoever is paying for
+ * them, rather than by a clock, so a bucket can be topped up by a fraction of
+ * a token on every call and spent on the occasional extra call. Tokens are
+ * held in thousandths so fractions add up exactly.
+ *
+ * @author mball
+ */
+public class TokenBucket {
+
+    private static final long SCALE = 1000;
+
+    private final long capacity;
+    private final AtomicLong tokens;
+
+    /**
+     * Creates a full bucket.
+     *
+     * @param capacity the most tokens the bucket can hold.
+     */
+    public TokenBucket(double capacity) {
+        this.capacity = (long) (capacity * SCALE);
+        this.tokens = new AtomicLong(this.capacity);
+    }
+
+    /**
+     * Adds tokens, up to the capacity.
+     *
+     * @param amount
+     */
+    public void deposit(double amount) {
+        long scaled = (long) (amount * SCALE);
+        tokens.accumulateAndGet(scaled, (current, added) -> Math.min(capacity, current + added));
+    }
+
+    /**
+     * Takes one token if there is one.
+     *
+     * @return true if a token was taken.
+     */
+    public boolean tryAcquire() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < SCALE) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - SCALE));
+        return true;
+    }
+
+    public double getTokens() {
+        return (double) tokens.get() / SCALE;
+    }
+}
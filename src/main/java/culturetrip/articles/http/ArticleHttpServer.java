@@ -0,0 +1,341 @@
+package culturetrip.articles.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import culturetrip.articles.ArticleEnricher;
+import culturetrip.articles.ArticleNotFoundException;
+import culturetrip.articles.Projection;
+import culturetrip.articles.bulk.RichArticleJson;
+import culturetrip.articles.concurrent.EnricherExecutors;
+import culturetrip.articles.concurrent.Futures;
+import culturetrip.articles.models.RichArticle;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.ServiceLoader;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Serves GET /articles/{id} from an ArticleEnricher over HTTP, using the
+ * server built into the JDK, so it can run without a servlet container.
+ * Callers that only need some of the article can ask for just those fields,
+ * as in GET /articles/{id}?fields=name,heroImage, see Projection.parse().
+ *
+ * The handler only starts the enrichment and returns, the response is written
+ * once the RichArticle completes. So no thread is held waiting for the
+ * clients, and the number of requests in flight isn't limited by the number
+ * of threads, only by the enricher and whatever limits the clients put on it.
+ * The response is written from the executor rather than whichever thread
+ * completed the article, as a slow HTTP client can block the write and that
+ * thread could be the one that times out every enrichment. If no executor is
+ * set the server starts a bounded pool of its own for the writes, so slow
+ * clients can't take up more than a few threads. A write the executor turns
+ * away has its connection closed.
+ *
+ * Articles are written as JSON by RichArticleJson into a StringBuilder, then
+ * encoded as UTF-8 straight into a byte buffer that is written out as the
+ * body. Both are kept per thread and reused, so no String is ever made of the
+ * response. An article that doesn't exist is answered with 404, whether the
+ * enricher fails with an ArticleNotFoundException or completes with null. A
+ * failed enrichment is answered with 504 if it timed out, 503 if it was
+ * turned away or cancelled, and 502 for anything else, along with a JSON
+ * error.
+ *
+ * @author mball
+ */
+public class ArticleHttpServer {
+
+    private static final String CONTEXT = "/articles/";
+    private static final String CONTENT_TYPE = "application/json; charset=utf-8";
+    private static final int RESPONSE_QUEUE_CAPACITY = 10000;
+
+    private static final ThreadLocal<ResponseBuffer> RESPONSE_BUFFERS = ThreadLocal.withInitial(ResponseBuffer::new);
+
+    private final ArticleEnricher articleEnricher;
+    private Executor executor;
+    private int backlog;
+    private HttpServer server;
+    private volatile Executor responseExecutor;
+    private ExecutorService ownResponseExecutor;
+
+    public ArticleHttpServer(ArticleEnricher articleEnricher) {
+        this.articleEnricher = articleEnricher;
+    }
+
+    /**
+     * Sets where requests are handled, which is up to the point the
+     * enrichment has been started, and where responses are written. If it
+     * isn't set requests are handled on the server's own dispatcher thread,
+     * which is only fine if the enricher never does any real work on the
+     * calling thread, and responses are written from a bounded pool the
+     * server starts itself. The executor should turn work away once it is
+     * full, as EnricherExecutors.RejectionPolicy.ABORT does, rather than run
+     * it on the submitting thread, which for a write is the thread that
+     * completed the article. A request or write that is turned away has its
+     * connection closed. Must be set before starting.
+     *
+     * @param executor
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets how many connections can wait to be accepted, or 0 for the
+     * system's default. Must be set before starting.
+     *
+     * @param backlog
+     */
+    public void setBacklog(int backlog) {
+        this.backlog = backlog;
+    }
+
+    /**
+     * Starts serving on the given address. Use port 0 to have one picked, and
+     * getAddress() to find out which.
+     *
+     * @param address
+     * @throws IOException
+     */
+    public synchronized void start(InetSocketAddress address) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("Already started");
+        }
+        server = HttpServer.create(address, backlog);
+        server.createContext(CONTEXT, this::handle);
+        server.setExecutor(executor);
+        if (executor == null) {
+            ownResponseExecutor = EnricherExecutors.bounded(Runtime.getRuntime().availableProcessors(),
+                    RESPONSE_QUEUE_CAPACITY, EnricherExecutors.RejectionPolicy.ABORT);
+            responseExecutor = ownResponseExecutor;
+        } else {
+            responseExecutor = executor;
+        }
+        server.start();
+    }
+
+    public synchronized InetSocketAddress getAddress() {
+        if (server == null) {
+            throw new IllegalStateException("Not started");
+        }
+        return server.getAddress();
+    }
+
+    /**
+     * Stops accepting requests and waits up to the given number of seconds
+     * for the ones being written to finish.
+     *
+     * @param delaySeconds
+     */
+    public synchronized void stop(int delaySeconds) {
+        if (server != null) {
+            server.stop(delaySeconds);
+            server = null;
+        }
+        if (ownResponseExecutor != null) {
+            ownResponseExecutor.shutdown();
+            ownResponseExecutor = null;
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Allow", "GET");
+            sendError(exchange, 405, "Method not allowed");
+            return;
+        }
+        String articleId = articleIdOf(exchange.getRequestURI().getRawPath());
+        if (articleId == null) {
+            sendError(exchange, 404, "Not found");
+            return;
+        }
+        Projection projection;
+        try {
+            projection = projectionOf(exchange.getRequestURI().getRawQuery());
+        } catch (IllegalArgumentException ex) {
+            sendError(exchange, 400, ex.getMessage());
+            return;
+        }
+
+        CompletableFuture<RichArticle> richArticle;
+        try {
+            richArticle = Futures.toCompletableFuture(projection.isFull()
+                    ? articleEnricher.enrichArticleWithId(articleId)
+                    : articleEnricher.enrichArticleWithId(articleId, projection));
+        } catch (RuntimeException ex) {
+            richArticle = Futures.failed(ex);
+        }
+        richArticle.whenCompleteAsync((article, ex) -> {
+            try {
+                if (ex != null) {
+                    Throwable cause = Futures.unwrap(ex);
+                    if (cause instanceof ArticleNotFoundException) {
+                        sendError(exchange, 404, cause.getMessage());
+                    } else {
+                        sendError(exchange, statusOf(cause), String.valueOf(cause));
+                    }
+                } else if (article == null) {
+                    sendError(exchange, 404, "No article " + articleId);
+                } else {
+                    sendArticle(exchange, article);
+                }
+            } catch (IOException | RuntimeException writeFailed) {
+                //the client has most likely gone, there's nobody left to tell.
+                exchange.close();
+            }
+        }, responseExecutor).exceptionally(rejected -> {
+            //the executor turned the write away, so don't leave the client hanging.
+            exchange.close();
+            return null;
+        });
+    }
+
+    /**
+     * The article id from a raw path of /articles/{id}, or null if the path
+     * isn't one.
+     *
+     * @param rawPath
+     * @return
+     */
+    static String articleIdOf(String rawPath) {
+        if (rawPath == null || !rawPath.startsWith(CONTEXT)) {
+            return null;
+        }
+        String rawId = rawPath.substring(CONTEXT.length());
+        if (rawId.isEmpty() || rawId.indexOf('/') >= 0) {
+            return null;
+        }
+        try {
+            //a + in a path is a plus, not a space as it would be in a query.
+            return URLDecoder.decode(rawId.replace("+", "%2B"), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * The projection from the fields parameter of a raw query, or the whole
+     * article if there isn't one.
+     *
+     * @param rawQuery
+     * @return
+     * @throws IllegalArgumentException if the fields can't be parsed.
+     */
+    static Projection projectionOf(String rawQuery) {
+        if (rawQuery == null) {
+            return Projection.FULL;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            if (parameter.startsWith("fields=")) {
+                return Projection.parse(URLDecoder.decode(parameter.substring("fields=".length()), StandardCharsets.UTF_8));
+            }
+        }
+        return Projection.FULL;
+    }
+
+    private static int statusOf(Throwable failure) {
+        if (failure instanceof TimeoutException) {
+            return 504;
+        }
+        if (failure instanceof RejectedExecutionException || failure instanceof CancellationException) {
+            return 503;
+        }
+        return 502;
+    }
+
+    private static void sendArticle(HttpExchange exchange, RichArticle richArticle) throws IOException {
+        ResponseBuffer response = RESPONSE_BUFFERS.get();
+        response.json.setLength(0);
+        RichArticleJson.append(richArticle, response.json);
+        send(exchange, 200, response);
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        ResponseBuffer response = RESPONSE_BUFFERS.get();
+        response.json.setLength(0);
+        response.json.append("{\"error\":");
+        RichArticleJson.appendString(message, response.json);
+        response.json.append('}');
+        send(exchange, status, response);
+    }
+
+    private static void send(HttpExchange exchange, int status, ResponseBuffer response) throws IOException {
+        ByteBuffer body = response.encode();
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+        exchange.sendResponseHeaders(status, body.remaining());
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body.array(), body.arrayOffset() + body.position(), body.remaining());
+        }
+    }
+
+    /**
+     * The JSON for a response and the bytes it is encoded into, reused for
+     * every response written on the same thread.
+     */
+    private static final class ResponseBuffer {
+
+        private final StringBuilder json = new StringBuilder(1024);
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        private ByteBuffer bytes = ByteBuffer.allocate(4096);
+
+        ByteBuffer encode() throws IOException {
+            CharBuffer in = CharBuffer.wrap(json);
+            bytes.clear();
+            encoder.reset();
+            CoderResult result;
+            while ((result = encoder.encode(in, bytes, true)).isOverflow()) {
+                grow();
+            }
+            if (result.isError()) {
+                result.throwException();
+            }
+            while (encoder.flush(bytes).isOverflow()) {
+                grow();
+            }
+            bytes.flip();
+            return bytes;
+        }
+
+        private void grow() {
+            ByteBuffer bigger = ByteBuffer.allocate(bytes.capacity() * 2);
+            bytes.flip();
+            bigger.put(bytes);
+            bytes = bigger;
+        }
+    }
+
+    /**
+     * Runs the server from the command line, using the first ArticleEnricher
+     * registered with the ServiceLoader, in
+     * META-INF/services/culturetrip.articles.ArticleEnricher on the classpath.
+     *
+     * @param args the port and optionally the number of handler threads.
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: ArticleHttpServer <port> [handler threads]");
+            System.exit(2);
+        }
+        ArticleEnricher articleEnricher = ServiceLoader.load(ArticleEnricher.class).findFirst()
+                .orElseThrow(() -> new IllegalStateException("No ArticleEnricher registered in "
+                        + "META-INF/services/culturetrip.articles.ArticleEnricher"));
+
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        ArticleHttpServer server = new ArticleHttpServer(articleEnricher);
+        server.setExecutor(EnricherExecutors.bounded(threads, 10000, EnricherExecutors.RejectionPolicy.ABORT));
+        server.start(new InetSocketAddress(Integer.parseInt(args[0])));
+        System.err.println("Serving articles on " + server.getAddress());
+    }
+}
@@ -0,0 +1,17 @@
+package culturetrip.articles.metrics;
+
+/**
+ * The JMX view of a cache registered with InMemoryEnricherMetrics.
+ *
+ * @author mball
+ */
+public interface CacheMetricsMXBean {
+
+    long getHitCount();
+
+    long getMissCount();
+
+    long getEvictionCount();
+
+    double getHitRate();
+}
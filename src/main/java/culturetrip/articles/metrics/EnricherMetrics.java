@@ -0,0 +1,66 @@
+package culturetrip.articles.metrics;
+
+import culturetrip.articles.cache.CacheStats;
+
+/**
+ * Where the enricher reports what it is doing. Every stage reports when it
+ * starts and when it completes, so an implementation can keep in-flight
+ * gauges, latency histograms and timeout and failure counts. These are called
+ * on every request, so implementations shouldn't allocate or block.
+ *
+ * InMemoryEnricherMetrics is the default implementation, and can be exported
+ * over JMX with JmxMetricsExporter.
+ *
+ * @author mball
+ */
+public interface EnricherMetrics {
+
+    /**
+     * Metrics that are thrown away, for when nobody is looking.
+     */
+    EnricherMetrics NOOP = new EnricherMetrics() {
+        @Override
+        public void started(Stage stage) {
+        }
+
+        @Override
+        public void completed(Stage stage, long latencyNanos, Throwable failure) {
+        }
+    };
+
+    void started(Stage stage);
+
+    /**
+     * Reports that a stage has finished.
+     *
+     * @param stage
+     * @param latencyNanos how long it took since it started.
+     * @param failure why it failed, or null if it succeeded.
+     */
+    void completed(Stage stage, long latencyNanos, Throwable failure);
+
+    /**
+     * Reports that a call to one of the clients failed and is being retried.
+     * It still only completes once, however many times it is retried.
+     *
+     * @param stage
+     */
+    default void retried(Stage stage) {
+    }
+
+    /**
+     * Adds a cache's counters to the metrics, so its hit rate is reported
+     * alongside everything else. Nothing is registered by the enricher
+     * itself. Each caching decorator registers its own caches when it is
+     * given the metrics with setMetrics(): CachingArticleEnricher as
+     * "articles", "projectedArticles" and "storedArticles",
+     * CachingArticleRepositoryClient as "references" and
+     * CachingAssetsServiceClient as "images" and "videos". Registering a
+     * name again replaces the cache under it.
+     *
+     * @param name
+     * @param stats
+     */
+    default void registerCache(String name, CacheStats stats) {
+    }
+}
@@ -0,0 +1,101 @@
+package culturetrip.articles.metrics;
+
+import culturetrip.articles.cache.CacheStats;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * EnricherMetrics kept in memory: a latency histogram, an in-flight gauge and
+ * timeout, failure and retry counters for every Stage, plus the counters of any
+ * caches registered with it. Everything recorded per request is a counter
+ * update, so nothing is allocated on the hot path.
+ *
+ * @author mball
+ */
+public class InMemoryEnricherMetrics implements EnricherMetrics {
+
+    private final Map<Stage, StageMetrics> stages = new EnumMap<>(Stage.class);
+    private final Map<String, CacheStats> caches = new ConcurrentHashMap<>();
+
+    public InMemoryEnricherMetrics() {
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new StageMetrics());
+        }
+    }
+
+    @Override
+    public void started(Stage stage) {
+        stages.get(stage).inFlight.increment();
+    }
+
+    @Override
+    public void completed(Stage stage, long latencyNanos, Throwable failure) {
+        StageMetrics metrics = stages.get(stage);
+        metrics.inFlight.decrement();
+        metrics.latency.record(latencyNanos);
+        if (failure instanceof TimeoutException) {
+            metrics.timeouts.increment();
+        } else if (failure != null) {
+            metrics.failures.increment();
+        }
+    }
+
+    @Override
+    public void retried(Stage stage) {
+        stages.get(stage).retries.increment();
+    }
+
+    @Override
+    public void registerCache(String name, CacheStats stats) {
+        caches.put(name, stats);
+    }
+
+    public StageMetrics getStage(Stage stage) {
+        return stages.get(stage);
+    }
+
+    public Map<String, CacheStats> getCaches() {
+        return Collections.unmodifiableMap(caches);
+    }
+
+    /**
+     * Everything recorded for one Stage.
+     */
+    public static final class StageMetrics {
+
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder inFlight = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public long getInFlight() {
+            return inFlight.sum();
+        }
+
+        public long getTimeouts() {
+            return timeouts.sum();
+        }
+
+        /**
+         * Failures other than timeouts.
+         *
+         * @return
+         */
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        public long getRetries() {
+            return retries.sum();
+        }
+    }
+}
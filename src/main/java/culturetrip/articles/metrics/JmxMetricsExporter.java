@@ -0,0 +1,158 @@
+package culturetrip.articles.metrics;
+
+import culturetrip.articles.cache.CacheStats;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Publishes InMemoryEnricherMetrics as MXBeans, one per Stage and one per
+ * registered cache, under the given JMX domain:
+ *
+ * domain:type=Stage,name=TOTAL
+ * domain:type=Cache,name=references
+ *
+ * The MXBeans read the live metrics whenever they are asked, so nothing
+ * needs refreshing. Caches have to be registered with the metrics before
+ * export() to be included.
+ *
+ * @author mball
+ */
+public class JmxMetricsExporter {
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final InMemoryEnricherMetrics metrics;
+    private final String domain;
+    private final MBeanServer server;
+    private final List<ObjectName> registered = new ArrayList<>();
+
+    public JmxMetricsExporter(InMemoryEnricherMetrics metrics, String domain) {
+        this(metrics, domain, ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public JmxMetricsExporter(InMemoryEnricherMetrics metrics, String domain, MBeanServer server) {
+        this.metrics = metrics;
+        this.domain = domain;
+        this.server = server;
+    }
+
+    public synchronized void export() throws JMException {
+        for (Stage stage : Stage.values()) {
+            register("Stage", stage.name(),
+                    new StandardMBean(new StageView(metrics.getStage(stage)), StageMetricsMXBean.class, true));
+        }
+        for (Map.Entry<String, CacheStats> cache : metrics.getCaches().entrySet()) {
+            register("Cache", cache.getKey(),
+                    new StandardMBean(new CacheView(cache.getValue()), CacheMetricsMXBean.class, true));
+        }
+    }
+
+    public synchronized void unexport() throws JMException {
+        for (ObjectName name : registered) {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        }
+        registered.clear();
+    }
+
+    private void register(String type, String name, StandardMBean mbean) throws JMException {
+        ObjectName objectName = new ObjectName(domain + ":type=" + type + ",name=" + ObjectName.quote(name));
+        server.registerMBean(mbean, objectName);
+        registered.add(objectName);
+    }
+
+    private static final class StageView implements StageMetricsMXBean {
+
+        private final InMemoryEnricherMetrics.StageMetrics stage;
+
+        StageView(InMemoryEnricherMetrics.StageMetrics stage) {
+            this.stage = stage;
+        }
+
+        @Override
+        public long getCount() {
+            return stage.getLatency().getCount();
+        }
+
+        @Override
+        public long getInFlight() {
+            return stage.getInFlight();
+        }
+
+        @Override
+        public long getTimeouts() {
+            return stage.getTimeouts();
+        }
+
+        @Override
+        public long getFailures() {
+            return stage.getFailures();
+        }
+
+        @Override
+        public long getRetries() {
+            return stage.getRetries();
+        }
+
+        @Override
+        public double getMeanMillis() {
+            return stage.getLatency().getMean() / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getP50Millis() {
+            return stage.getLatency().getValueAtPercentile(50) / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getP99Millis() {
+            return stage.getLatency().getValueAtPercentile(99) / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getP999Millis() {
+            return stage.getLatency().getValueAtPercentile(99.9) / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return stage.getLatency().getMax() / NANOS_PER_MILLI;
+        }
+    }
+
+    private static final class CacheView implements CacheMetricsMXBean {
+
+        private final CacheStats stats;
+
+        CacheView(CacheStats stats) {
+            this.stats = stats;
+        }
+
+        @Override
+        public long getHitCount() {
+            return stats.getHitCount();
+        }
+
+        @Override
+        public long getMissCount() {
+            return stats.getMissCount();
+        }
+
+        @Override
+        public long getEvictionCount() {
+            return stats.getEvictionCount();
+        }
+
+        @Override
+        public double getHitRate() {
+            return stats.getHitRate();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package culturetrip.articles.metrics;
+
+/**
+ * The parts of an enrichment that are measured separately. REFERENCE, IMAGE
+ * and VIDEO are the calls to the clients, TOTAL is the whole enrichment.
+ *
+ * @author mball
+ */
+public enum Stage {
+    REFERENCE,
+    IMAGE,
+    VIDEO,
+    TOTAL
+}
@@ -0,0 +1,30 @@
+package culturetrip.articles.metrics;
+
+/**
+ * The JMX view of one Stage of InMemoryEnricherMetrics. Latencies are in
+ * milliseconds.
+ *
+ * @author mball
+ */
+public interface StageMetricsMXBean {
+
+    long getCount();
+
+    long getInFlight();
+
+    long getTimeouts();
+
+    long getFailures();
+
+    long getRetries();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    double getMaxMillis();
+}
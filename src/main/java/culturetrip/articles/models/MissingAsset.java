@@ -0,0 +1,42 @@
+package culturetrip.articles.models;
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ * An asset that was left out of a partial RichArticle, and why.
+ *
+ * @author mball
+ */
+public class MissingAsset {
+
+    public enum Type {
+        IMAGE,
+        VIDEO
+    }
+
+    private final Type type;
+    private final String url;
+    private final Throwable cause;
+
+    public MissingAsset(Type type, String url, Throwable cause) {
+        this.type = type;
+        this.url = url;
+        this.cause = cause;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public Throwable getCause() {
+        return cause;
+    }
+
+    public boolean isTimedOut() {
+        return cause instanceof TimeoutException;
+    }
+}
@@ -1,6 +1,7 @@
 package culturetrip.articles.models;
 
 import java.util.Collection;
+import java.util.Collections;
 
 public class RichArticle {
 
@@ -8,12 +9,19 @@ public class RichArticle {
     private final String name;
     private final Image heroImage;
     private final Collection<Video> videos;
+    private final Collection<MissingAsset> missingAssets;
 
     public RichArticle(String id, String name, Image heroImage, Collection<Video> videos) {
+        this(id, name, heroImage, videos, Collections.emptyList());
+    }
+
+    public RichArticle(String id, String name, Image heroImage, Collection<Video> videos,
+            Collection<MissingAsset> missingAssets) {
         this.id = id;
         this.name = name;
         this.heroImage = heroImage;
         this.videos = videos;
+        this.missingAssets = missingAssets;
     }
 
     public String getId() {
@@ -31,4 +39,18 @@ public class RichArticle {
     public Collection<Video> getVideos() {
         return videos;
     }
+
+    /**
+     * The assets that failed or didn't arrive before the deadline, when the
+     * enricher is returning partial results. Empty for a complete article.
+     *
+     * @return
+     */
+    public Collection<MissingAsset> getMissingAssets() {
+        return missingAssets;
+    }
+
+    public boolean isComplete() {
+        return missingAssets.isEmpty();
+    }
 }
@@ -0,0 +1,256 @@
+package culturetrip.articles;
+
+import culturetrip.articles.cache.MappedRichArticleStore;
+import culturetrip.articles.metrics.InMemoryEnricherMetrics;
+import culturetrip.articles.models.RichArticle;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author mball
+ */
+public class CachingArticleEnricherTest {
+
+    private static final String ARTICLE_ID = "articleId1";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public CachingArticleEnricherTest() {
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class CachingArticleEnricher when
+     * the same article is asked for twice. We expect it to be enriched once.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testEnrichArticleWithIdCached() throws InterruptedException, ExecutionException {
+        System.out.println("testEnrichArticleWithIdCached");
+
+        AtomicInteger enrichments = new AtomicInteger();
+        CachingArticleEnricher instance = new CachingArticleEnricher(countingEnricher(enrichments), 10);
+
+        assertEquals(ARTICLE_ID, instance.enrichArticleWithId(ARTICLE_ID).get().getId());
+        assertEquals(ARTICLE_ID, instance.enrichArticleWithId(ARTICLE_ID).get().getId());
+
+        assertEquals(1, enrichments.get());
+        assertEquals(1, instance.getStats().getHitCount());
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class CachingArticleEnricher with
+     * a second level, after a restart. We expect the new enricher to answer
+     * from the store without enriching the article again.
+     *
+     * @throws java.io.IOException
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testEnrichArticleWithIdSecondLevelSurvivesRestart() throws IOException, InterruptedException, ExecutionException {
+        System.out.println("testEnrichArticleWithIdSecondLevelSurvivesRestart");
+
+        Path path = folder.getRoot().toPath().resolve("articles.store");
+        AtomicInteger enrichments = new AtomicInteger();
+
+        try (MappedRichArticleStore store = new MappedRichArticleStore(path, 1024 * 1024)) {
+            CachingArticleEnricher instance = new CachingArticleEnricher(countingEnricher(enrichments), 10);
+            instance.setSecondLevel(store);
+            instance.enrichArticleWithId(ARTICLE_ID).get();
+        }
+
+        try (MappedRichArticleStore store = new MappedRichArticleStore(path, 1024 * 1024)) {
+            CachingArticleEnricher instance = new CachingArticleEnricher(countingEnricher(enrichments), 10);
+            instance.setSecondLevel(store);
+
+            assertEquals("name", instance.enrichArticleWithId(ARTICLE_ID).get().getName());
+            assertEquals("name", instance.enrichArticleWithId(ARTICLE_ID).get().getName());
+            assertEquals(1, store.getStats().getHitCount());
+        }
+        assertEquals(1, enrichments.get());
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class CachingArticleEnricher when
+     * an article from the second level goes past its refresh time after
+     * being copied into the heap. We expect it to be refreshed by its age in
+     * the store, not by how long it has been in the heap.
+     *
+     * @throws java.io.IOException
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testEnrichArticleWithIdSecondLevelKeepsAge() throws IOException, InterruptedException, ExecutionException {
+        System.out.println("testEnrichArticleWithIdSecondLevelKeepsAge");
+
+        Path path = folder.getRoot().toPath().resolve("articles.store");
+        AtomicInteger enrichments = new AtomicInteger();
+
+        try (MappedRichArticleStore store = new MappedRichArticleStore(path, 1024 * 1024)) {
+            store.put(new RichArticle(ARTICLE_ID, "stored", null, Collections.emptyList()), 1, TimeUnit.MINUTES);
+            CachingArticleEnricher instance = new CachingArticleEnricher(countingEnricher(enrichments), 10);
+            instance.setSecondLevel(store);
+            instance.setRefreshAfterWrite(100, TimeUnit.MILLISECONDS);
+            TimeUnit.MILLISECONDS.sleep(70);
+
+            assertEquals("stored", instance.enrichArticleWithId(ARTICLE_ID).get().getName());
+            assertEquals(0, instance.getStats().getRefreshCount());
+            TimeUnit.MILLISECONDS.sleep(50);
+
+            assertEquals("stored", instance.enrichArticleWithId(ARTICLE_ID).get().getName());
+            assertEquals(1, instance.getStats().getRefreshCount());
+        }
+        assertEquals(1, enrichments.get());
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class CachingArticleEnricher when
+     * the article is past its refresh time but not its expiry. We expect the
+     * stale article straight away from every call, a single refresh, and the
+     * refreshed article once that completes.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testEnrichArticleWithIdStaleWhileRevalidate() throws InterruptedException, ExecutionException {
+        System.out.println("testEnrichArticleWithIdStaleWhileRevalidate");
+
+        List<CompletableFuture<RichArticle>> enrichments = new CopyOnWriteArrayList<>();
+        CachingArticleEnricher instance = new CachingArticleEnricher(articleId -> {
+            CompletableFuture<RichArticle> richArticle = new CompletableFuture<>();
+            enrichments.add(richArticle);
+            return richArticle;
+        }, 10);
+        instance.setRefreshAfterWrite(20, TimeUnit.MILLISECONDS);
+        instance.setExpireAfterWrite(1, TimeUnit.MINUTES);
+
+        Future<RichArticle> first = instance.enrichArticleWithId(ARTICLE_ID);
+        enrichments.get(0).complete(new RichArticle(ARTICLE_ID, "stale", null, Collections.emptyList()));
+        assertEquals("stale", first.get().getName());
+        TimeUnit.MILLISECONDS.sleep(30);
+
+        for (int i = 0; i < 3; i++) {
+            Future<RichArticle> stale = instance.enrichArticleWithId(ARTICLE_ID);
+            assertTrue(stale.isDone());
+            assertEquals("stale", stale.get().getName());
+        }
+        assertEquals(2, enrichments.size());
+        assertEquals(1, instance.getStats().getRefreshCount());
+
+        enrichments.get(1).complete(new RichArticle(ARTICLE_ID, "fresh", null, Collections.emptyList()));
+        assertEquals("fresh", instance.enrichArticleWithId(ARTICLE_ID).get().getName());
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class CachingArticleEnricher when
+     * the article is past its expiry. We expect the caller to have to wait for
+     * it to be enriched again.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testEnrichArticleWithIdExpired() throws InterruptedException, ExecutionException {
+        System.out.println("testEnrichArticleWithIdExpired");
+
+        AtomicInteger enrichments = new AtomicInteger();
+        CachingArticleEnricher instance = new CachingArticleEnricher(countingEnricher(enrichments), 10);
+        instance.setRefreshAfterWrite(5, TimeUnit.MILLISECONDS);
+        instance.setExpireAfterWrite(10, TimeUnit.MILLISECONDS);
+
+        instance.enrichArticleWithId(ARTICLE_ID).get();
+        TimeUnit.MILLISECONDS.sleep(20);
+        instance.enrichArticleWithId(ARTICLE_ID).get();
+
+        assertEquals(2, enrichments.get());
+        assertEquals(0, instance.getStats().getRefreshCount());
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class CachingArticleEnricher with
+     * a projection. We expect the projected article to be cached on its own,
+     * without touching the cache of whole articles, and to be served from a
+     * whole article once there is one.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testEnrichArticleWithIdProjection() throws InterruptedException, ExecutionException {
+        System.out.println("testEnrichArticleWithIdProjection");
+
+        AtomicInteger enrichments = new AtomicInteger();
+        CachingArticleEnricher instance = new CachingArticleEnricher(countingEnricher(enrichments), 10);
+
+        instance.enrichArticleWithId(ARTICLE_ID, Projection.HERO_IMAGE).get();
+        instance.enrichArticleWithId(ARTICLE_ID, Projection.HERO_IMAGE).get();
+        assertEquals(1, enrichments.get());
+        assertEquals(1, instance.getProjectedStats().getHitCount());
+        assertEquals(0, instance.getStats().getHitCount());
+        assertEquals(0, instance.getStats().getMissCount());
+
+        instance.enrichArticleWithId(ARTICLE_ID).get();
+        assertEquals(2, enrichments.get());
+
+        assertEquals(ARTICLE_ID, instance.enrichArticleWithId(ARTICLE_ID, Projection.firstVideos(1)).get().getId());
+        assertEquals(2, enrichments.get());
+    }
+
+    /**
+     * Test of setMetrics method, of class CachingArticleEnricher. We expect
+     * every cache to be registered with the metrics, including a second level
+     * and a projected cache set after the metrics, and hits to be counted
+     * there.
+     *
+     * @throws java.io.IOException
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testSetMetrics() throws IOException, InterruptedException, ExecutionException {
+        System.out.println("testSetMetrics");
+
+        Path path = folder.getRoot().toPath().resolve("articles.store");
+        InMemoryEnricherMetrics metrics = new InMemoryEnricherMetrics();
+        CachingArticleEnricher instance = new CachingArticleEnricher(countingEnricher(new AtomicInteger()), 10);
+        instance.setMetrics(metrics);
+        assertEquals(Set.of("articles", "projectedArticles"), metrics.getCaches().keySet());
+
+        try (MappedRichArticleStore store = new MappedRichArticleStore(path, 1024 * 1024)) {
+            instance.setSecondLevel(store);
+            instance.setMaximumProjectedSize(5);
+            assertSame(store.getStats(), metrics.getCaches().get("storedArticles"));
+            assertSame(instance.getProjectedStats(), metrics.getCaches().get("projectedArticles"));
+
+            instance.enrichArticleWithId(ARTICLE_ID).get();
+            instance.enrichArticleWithId(ARTICLE_ID).get();
+            assertEquals(1, metrics.getCaches().get("articles").getHitCount());
+        }
+    }
+
+    private static ArticleEnricher countingEnricher(AtomicInteger enrichments) {
+        return articleId -> {
+            enrichments.incrementAndGet();
+            return CompletableFuture.completedFuture(new RichArticle(articleId, "name", null, Collections.emptyList()));
+        };
+    }
+}
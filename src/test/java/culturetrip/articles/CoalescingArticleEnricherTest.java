@@ -0,0 +1,66 @@
+package culturetrip.articles;
+
+import culturetrip.articles.models.RichArticle;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author mball
+ */
+public class CoalescingArticleEnricherTest {
+
+    private final List<Priority> started = new CopyOnWriteArrayList<>();
+    private final List<CompletableFuture<RichArticle>> enrichments = new CopyOnWriteArrayList<>();
+
+    private final ArticleEnricher pendingEnricher = new ArticleEnricher() {
+        @Override
+        public Future<RichArticle> enrichArticleWithId(String articleId) {
+            return enrichArticleWithId(articleId, Priority.INTERACTIVE);
+        }
+
+        @Override
+        public Future<RichArticle> enrichArticleWithId(String articleId, Priority priority) {
+            started.add(priority);
+            CompletableFuture<RichArticle> richArticle = new CompletableFuture<>();
+            enrichments.add(richArticle);
+            return richArticle;
+        }
+    };
+
+    public CoalescingArticleEnricherTest() {
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class CoalescingArticleEnricher
+     * when an interactive caller asks for an article that a background
+     * refresh is already enriching. We expect the interactive caller to get
+     * an interactive enrichment of its own rather than wait in the background
+     * queue, while callers of the same priority still share one.
+     */
+    @Test
+    public void testPrioritiesDontShare() {
+        System.out.println("testPrioritiesDontShare");
+        CoalescingArticleEnricher instance = new CoalescingArticleEnricher(pendingEnricher);
+
+        Future<RichArticle> background = instance.enrichArticleWithId("article1", Priority.BACKGROUND);
+        Future<RichArticle> interactive = instance.enrichArticleWithId("article1");
+        Future<RichArticle> sharedBackground = instance.enrichArticleWithId("article1", Priority.BACKGROUND);
+        Future<RichArticle> sharedInteractive = instance.enrichArticleWithId("article1", Priority.INTERACTIVE);
+
+        assertEquals(List.of(Priority.BACKGROUND, Priority.INTERACTIVE), started);
+        assertEquals(1, instance.getInFlight(Priority.BACKGROUND).getCoalescedCount());
+        assertEquals(1, instance.getInFlight().getCoalescedCount());
+
+        RichArticle richArticle = new RichArticle("article1", "name", null, List.of());
+        enrichments.get(1).complete(richArticle);
+        assertTrue(interactive.isDone());
+        assertTrue(sharedInteractive.isDone());
+        assertFalse(background.isDone());
+        assertFalse(sharedBackground.isDone());
+    }
+}
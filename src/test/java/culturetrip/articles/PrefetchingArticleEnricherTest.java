@@ -0,0 +1,158 @@
+package culturetrip.articles;
+
+import culturetrip.articles.cache.TopKAccessLog;
+import culturetrip.articles.models.RichArticle;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author mball
+ */
+public class PrefetchingArticleEnricherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> enriched = new CopyOnWriteArrayList<>();
+    private final List<Priority> priorities = new CopyOnWriteArrayList<>();
+    private final List<String> threads = new CopyOnWriteArrayList<>();
+
+    private final ArticleEnricher recordingEnricher = new ArticleEnricher() {
+        @Override
+        public Future<RichArticle> enrichArticleWithId(String articleId) {
+            return enrichArticleWithId(articleId, Priority.INTERACTIVE);
+        }
+
+        @Override
+        public Future<RichArticle> enrichArticleWithId(String articleId, Priority priority) {
+            enriched.add(articleId);
+            priorities.add(priority);
+            threads.add(Thread.currentThread().getName());
+            return CompletableFuture.completedFuture(new RichArticle(articleId, "name", null, Collections.emptyList()));
+        }
+    };
+
+    public PrefetchingArticleEnricherTest() {
+    }
+
+    /**
+     * Test of warm method, of class PrefetchingArticleEnricher after a
+     * restart, from the access log saved before it. We expect the articles
+     * that were most popular to be enriched at background priority, no faster
+     * than the rate, and not to count as accesses themselves.
+     *
+     * @throws java.io.IOException
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     * @throws java.util.concurrent.TimeoutException
+     */
+    @Test
+    public void testWarm() throws IOException, InterruptedException, ExecutionException, TimeoutException {
+        System.out.println("testWarm");
+
+        TopKAccessLog accessLog = new TopKAccessLog(10);
+        accessLog.setSampleRate(1);
+        PrefetchingArticleEnricher before = new PrefetchingArticleEnricher(recordingEnricher, accessLog);
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j <= i; j++) {
+                before.enrichArticleWithId("article" + i).get();
+            }
+        }
+        Path path = folder.getRoot().toPath().resolve("access.log");
+        before.saveAccessLog(path);
+        enriched.clear();
+        priorities.clear();
+
+        TopKAccessLog restartedLog = new TopKAccessLog(10);
+        restartedLog.setSampleRate(1);
+        PrefetchingArticleEnricher instance = new PrefetchingArticleEnricher(recordingEnricher, restartedLog);
+        instance.setRate(100);
+
+        long start = System.nanoTime();
+        assertEquals(Integer.valueOf(5), instance.warm(path).get(5, TimeUnit.SECONDS));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(Arrays.asList("article4", "article3", "article2", "article1", "article0"), enriched);
+        assertEquals(Collections.nCopies(5, Priority.BACKGROUND), priorities);
+        assertTrue("Took " + elapsedMillis + "ms", elapsedMillis >= 40);
+        assertEquals(5, instance.getPrefetchCount());
+        assertTrue(restartedLog.getTopK(10).isEmpty());
+    }
+
+    /**
+     * Test of warm method, of class PrefetchingArticleEnricher when two lists
+     * are warmed at the same time. We expect the rate to be shared between
+     * them rather than each getting the whole of it, and the enrichments to
+     * be started off the scheduler thread.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     * @throws java.util.concurrent.TimeoutException
+     */
+    @Test
+    public void testWarmSharesRate() throws InterruptedException, ExecutionException, TimeoutException {
+        System.out.println("testWarmSharesRate");
+
+        PrefetchingArticleEnricher instance = new PrefetchingArticleEnricher(recordingEnricher, new TopKAccessLog(10));
+        instance.setRate(100);
+
+        long start = System.nanoTime();
+        CompletableFuture<Integer> first = instance.warm(Arrays.asList("a0", "a1", "a2"));
+        CompletableFuture<Integer> second = instance.warm(Arrays.asList("b0", "b1", "b2"));
+        assertEquals(Integer.valueOf(3), first.get(5, TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(3), second.get(5, TimeUnit.SECONDS));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(6, enriched.size());
+        assertTrue("Took " + elapsedMillis + "ms", elapsedMillis >= 50);
+        assertFalse(threads.contains("article-enricher-scheduler"));
+    }
+
+    /**
+     * Test of startPrefetching method, of class PrefetchingArticleEnricher
+     * when an article starts being asked for. We expect it to be prefetched
+     * in the background.
+     *
+     * @throws java.lang.InterruptedException
+     */
+    @Test
+    public void testStartPrefetching() throws InterruptedException {
+        System.out.println("testStartPrefetching");
+
+        TopKAccessLog accessLog = new TopKAccessLog(10, 1000);
+        accessLog.setSampleRate(1);
+        PrefetchingArticleEnricher instance = new PrefetchingArticleEnricher(recordingEnricher, accessLog);
+        for (int i = 0; i < 5; i++) {
+            instance.enrichArticleWithId("trending");
+        }
+
+        ScheduledFuture<?> prefetching = instance.startPrefetching(10, 10, TimeUnit.MILLISECONDS);
+        try {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!priorities.contains(Priority.BACKGROUND) && System.nanoTime() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(5);
+            }
+        } finally {
+            prefetching.cancel(false);
+        }
+
+        assertTrue(instance.getPrefetchCount() > 0);
+        assertEquals("trending", enriched.get(enriched.size() - 1));
+        assertEquals(Priority.BACKGROUND, priorities.get(priorities.size() - 1));
+    }
+}
@@ -0,0 +1,206 @@
+package culturetrip.articles;
+
+import culturetrip.articles.models.RichArticle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author mball
+ */
+public class PriorityArticleEnricherTest {
+
+    private final List<String> started = new CopyOnWriteArrayList<>();
+    private final Map<String, CompletableFuture<RichArticle>> enrichments = new ConcurrentHashMap<>();
+    private final Map<String, Priority> priorities = new ConcurrentHashMap<>();
+
+    private final ArticleEnricher pendingEnricher = new ArticleEnricher() {
+        @Override
+        public Future<RichArticle> enrichArticleWithId(String articleId) {
+            return enrichArticleWithId(articleId, Priority.INTERACTIVE);
+        }
+
+        @Override
+        public Future<RichArticle> enrichArticleWithId(String articleId, Priority priority) {
+            started.add(articleId);
+            priorities.put(articleId, priority);
+            CompletableFuture<RichArticle> richArticle = new CompletableFuture<>();
+            enrichments.put(articleId, richArticle);
+            return richArticle;
+        }
+    };
+
+    public PriorityArticleEnricherTest() {
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class PriorityArticleEnricher
+     * when interactive requests arrive behind queued background ones. We
+     * expect the interactive ones to be started first as slots free up, and
+     * the priority to be passed on.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testInteractiveFirst() throws InterruptedException, ExecutionException {
+        System.out.println("testInteractiveFirst");
+
+        PriorityArticleEnricher instance = new PriorityArticleEnricher(pendingEnricher, 2);
+        instance.setBackgroundShare(0.5);
+
+        instance.enrichArticleWithId("background0", Priority.BACKGROUND);
+        instance.enrichArticleWithId("background1", Priority.BACKGROUND);
+        instance.enrichArticleWithId("background2", Priority.BACKGROUND);
+        Future<RichArticle> interactive0 = instance.enrichArticleWithId("interactive0");
+        instance.enrichArticleWithId("interactive1");
+
+        assertEquals(Arrays.asList("background0", "interactive0"), started);
+        assertEquals(Priority.BACKGROUND, priorities.get("background0"));
+        assertEquals(Priority.INTERACTIVE, priorities.get("interactive0"));
+
+        complete("interactive0");
+        assertEquals("interactive0", interactive0.get().getId());
+        assertEquals(Arrays.asList("background0", "interactive0", "interactive1"), started);
+
+        complete("background0");
+        complete("interactive1");
+        assertEquals(Arrays.asList("background0", "interactive0", "interactive1", "background1"), started);
+        assertEquals(2, instance.getInFlight() + instance.getQueued(Priority.BACKGROUND));
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class PriorityArticleEnricher
+     * when there's lots of background work and nothing else. We expect only
+     * the background share of the slots to be used, leaving the rest for
+     * interactive requests.
+     */
+    @Test
+    public void testBackgroundShare() {
+        System.out.println("testBackgroundShare");
+
+        PriorityArticleEnricher instance = new PriorityArticleEnricher(pendingEnricher, 4);
+        instance.setBackgroundShare(0.5);
+
+        for (int i = 0; i < 10; i++) {
+            instance.enrichArticleWithId("background" + i, Priority.BACKGROUND);
+        }
+        assertEquals(2, started.size());
+        assertEquals(2, instance.getBackgroundInFlight());
+        assertEquals(8, instance.getQueued(Priority.BACKGROUND));
+
+        instance.enrichArticleWithId("interactive0");
+        instance.enrichArticleWithId("interactive1");
+        instance.enrichArticleWithId("interactive2");
+        assertEquals(4, started.size());
+        assertEquals(4, instance.getInFlight());
+        assertEquals(1, instance.getQueued(Priority.INTERACTIVE));
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class PriorityArticleEnricher
+     * when requests are cancelled. We expect a queued one never to be
+     * started, and a running one to cancel the wrapped enricher's Future and
+     * give up its slot.
+     */
+    @Test
+    public void testCancel() {
+        System.out.println("testCancel");
+
+        PriorityArticleEnricher instance = new PriorityArticleEnricher(pendingEnricher, 1);
+
+        Future<RichArticle> running = instance.enrichArticleWithId("article0");
+        Future<RichArticle> queued = instance.enrichArticleWithId("article1");
+        instance.enrichArticleWithId("article2");
+
+        assertTrue(queued.cancel(true));
+        assertEquals(1, instance.getQueued(Priority.INTERACTIVE));
+
+        assertTrue(running.cancel(true));
+        assertTrue(enrichments.get("article0").isCancelled());
+        assertEquals(Arrays.asList("article0", "article2"), started);
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class PriorityArticleEnricher
+     * when a queue is full. We expect a RejectedExecutionException for that
+     * priority only.
+     *
+     * @throws java.lang.InterruptedException
+     */
+    @Test
+    public void testMaxQueued() throws InterruptedException {
+        System.out.println("testMaxQueued");
+
+        PriorityArticleEnricher instance = new PriorityArticleEnricher(pendingEnricher, 1);
+        instance.setMaxQueued(1);
+
+        instance.enrichArticleWithId("background0", Priority.BACKGROUND);
+        instance.enrichArticleWithId("background1", Priority.BACKGROUND);
+        Future<RichArticle> rejected = instance.enrichArticleWithId("background2", Priority.BACKGROUND);
+        Future<RichArticle> interactive = instance.enrichArticleWithId("interactive0");
+
+        try {
+            rejected.get();
+            fail("Expected an ExecutionException");
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause(), instanceOf(RejectedExecutionException.class));
+        }
+        assertFalse(interactive.isDone());
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class PriorityArticleEnricher
+     * when thousands of requests are queued behind a slow one, and the rest
+     * complete straight away, as cache hits do. We expect every one of them
+     * to be started once the slow one completes, from a loop rather than by
+     * going deeper into the stack for each one.
+     */
+    @Test
+    public void testQueueDrainsIteratively() {
+        System.out.println("testQueueDrainsIteratively");
+
+        CompletableFuture<RichArticle> slow = new CompletableFuture<>();
+        AtomicInteger deepestStack = new AtomicInteger();
+        PriorityArticleEnricher instance = new PriorityArticleEnricher(articleId -> {
+            if (articleId.equals("slow")) {
+                return slow;
+            }
+            deepestStack.accumulateAndGet(Thread.currentThread().getStackTrace().length, Math::max);
+            return CompletableFuture.completedFuture(new RichArticle(articleId, "name", null, Collections.emptyList()));
+        }, 1);
+
+        instance.enrichArticleWithId("slow");
+        List<Future<RichArticle>> queued = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            queued.add(instance.enrichArticleWithId("article" + i));
+        }
+        assertEquals(5000, instance.getQueued(Priority.INTERACTIVE));
+
+        slow.complete(new RichArticle("slow", "name", null, Collections.emptyList()));
+
+        for (Future<RichArticle> richArticle : queued) {
+            assertTrue(richArticle.isDone());
+        }
+        assertEquals(0, instance.getQueued(Priority.INTERACTIVE));
+        assertEquals(0, instance.getInFlight());
+        assertTrue("Stack depth " + deepestStack.get(), deepestStack.get() < 200);
+    }
+
+    private void complete(String articleId) {
+        enrichments.get(articleId).complete(new RichArticle(articleId, "name", null, Collections.emptyList()));
+    }
+}
@@ -0,0 +1,77 @@
+package culturetrip.articles;
+
+import culturetrip.articles.models.Image;
+import culturetrip.articles.models.MissingAsset;
+import culturetrip.articles.models.RichArticle;
+import culturetrip.articles.models.Video;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeoutException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author mball
+ */
+public class ProjectionTest {
+
+    public ProjectionTest() {
+    }
+
+    /**
+     * Test of parse and toString methods, of class Projection. We expect each
+     * projection to be written in a form that parses back to it, and fields
+     * that don't exist to be turned down.
+     */
+    @Test
+    public void testParse() {
+        System.out.println("testParse");
+
+        assertEquals(Projection.NAME, Projection.parse("name"));
+        assertEquals(Projection.HERO_IMAGE, Projection.parse("name, heroImage"));
+        assertEquals(Projection.FULL, Projection.parse("heroImage,videos"));
+        assertEquals(Projection.firstVideos(3), Projection.parse("videos:3"));
+        for (Projection projection : Arrays.asList(Projection.NAME, Projection.HERO_IMAGE, Projection.VIDEOS,
+                Projection.FULL, Projection.HERO_IMAGE.withFirstVideos(2))) {
+            assertEquals(projection, Projection.parse(projection.toString()));
+        }
+
+        try {
+            Projection.parse("name,body");
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            assertEquals("Unknown field: body", ex.getMessage());
+        }
+    }
+
+    /**
+     * Test of apply method, of class Projection on a partial article. We
+     * expect only the fields and missing assets that were asked for, and the
+     * whole article back untouched for the full projection.
+     */
+    @Test
+    public void testApply() {
+        System.out.println("testApply");
+
+        Image image = new Image("image1", "alt");
+        Video video1 = new Video("video1", "caption 1");
+        Video video2 = new Video("video2", "caption 2");
+        MissingAsset missingVideo = new MissingAsset(MissingAsset.Type.VIDEO, "video3", new TimeoutException());
+        RichArticle whole = new RichArticle("article1", "name", image, Arrays.asList(video1, video2),
+                Arrays.asList(missingVideo));
+
+        RichArticle card = Projection.HERO_IMAGE.apply(whole);
+        assertEquals("name", card.getName());
+        assertEquals(image, card.getHeroImage());
+        assertTrue(card.getVideos().isEmpty());
+        assertTrue(card.isComplete());
+
+        RichArticle firstVideo = Projection.firstVideos(1).apply(whole);
+        assertNull(firstVideo.getHeroImage());
+        assertEquals(Arrays.asList(video1), new ArrayList<>(firstVideo.getVideos()));
+        assertEquals(Arrays.asList(missingVideo), new ArrayList<>(firstVideo.getMissingAssets()));
+
+        assertSame(whole, Projection.FULL.apply(whole));
+    }
+}
@@ -1,503 +1,1261 @@
-
-package culturetrip.articles;
-
-import culturetrip.articles.clients.ArticleRepositoryClient;
-import culturetrip.articles.clients.AssetsServiceClient;
-import culturetrip.articles.models.ArticleReference;
-import culturetrip.articles.models.Image;
-import culturetrip.articles.models.RichArticle;
-import culturetrip.articles.models.Video;
-import java.util.Arrays;
-import java.util.List;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
-import static org.hamcrest.CoreMatchers.instanceOf;
-import org.junit.Test;
-import static org.junit.Assert.*;
-import static org.mockito.ArgumentMatchers.any;
-import org.mockito.Mockito;
-import static org.mockito.Mockito.mock;
-
-/**
- *
- * @author mball
- */
-public class SimpleArticleEnricherTest {
-
-    private static final String ARTICLE_ID_1 = "articleId1";
-    private static final String ARTICLE_ID_2 = "articleId2";
-    private static final String ARTICLE_ID_3 = "articleId3";
-    private static final String ARTICLE_NAME_1 = "articleName";
-    private static final String ARTICLE_NAME_2 = "articleName";
-    private static final String ARTICLE_NAME_3 = "articleName";
-    private static final String IMAGE_URL = "someImageUrl";
-    private static final String IMAGE_ALT_TEXT = "someAltText";
-    private static final String VIDEO_URL_1 = "someVideoURL1";
-    private static final String VIDEO_URL_2 = "someVideoURL2";
-    private static final String VIDEO_URL_3 = "someVideoURL3";
-    private static final String NON_EXISTENT_VIDEO_URL = "someNonExistentVideoURL";
-
-    private static final Video VIDEO_1 = new Video(VIDEO_URL_1, "some Caption 1");
-    private static final Video VIDEO_2 = new Video(VIDEO_URL_2, "some Caption 2");
-    private static final Video VIDEO_3 = new Video(VIDEO_URL_3, "some Caption 3");
-
-    private static final Image IMAGE = new Image(IMAGE_URL, IMAGE_ALT_TEXT);
-
-    private static final List<String> VIDEO_URLS = Arrays.asList(VIDEO_URL_1, VIDEO_URL_2, VIDEO_URL_3);
-
-    public SimpleArticleEnricherTest() {
-    }    
-
-    /**
-     * Test of enrichArticleWithId method, of class SimpleArticleEnricher when
-     * it has all the available resource information.We expect it to build a
-     * complete RichArticle.
-     *
-     * @throws java.lang.InterruptedException
-     * @throws java.util.concurrent.ExecutionException
-     */
-    @Test
-    public void testEnrichArticleWithIdSuccess() throws InterruptedException, ExecutionException {
-        System.out.println("testEnrichArticleWithIdSuccess");
-
-        SimpleArticleEnricher instance = new SimpleArticleEnricher();
-        instance.setTimeoutSeconds(3);
-
-        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
-        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
-
-        Mockito.when(mockAssetsServiceClient.getImageById(IMAGE_URL))
-                .thenReturn(CompletableFuture.completedFuture(IMAGE));
-        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_1))
-                .thenReturn(CompletableFuture.completedFuture(VIDEO_1));
-        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_2))
-                .thenReturn(CompletableFuture.completedFuture(VIDEO_2));
-        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_3))
-                .thenReturn(CompletableFuture.completedFuture(VIDEO_3));
-
-        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
-                .thenReturn(CompletableFuture.completedFuture(
-                        new ArticleReference(ARTICLE_ID_1, ARTICLE_NAME_1, IMAGE_URL, VIDEO_URLS)));
-
-        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
-        instance.setAssetsServiceClient(mockAssetsServiceClient);
-
-        Future<RichArticle> result = instance.enrichArticleWithId(ARTICLE_ID_1);
-
-        RichArticle richArticle = result.get();
-
-        assertEquals(ARTICLE_ID_1, richArticle.getId());
-        assertEquals(ARTICLE_NAME_1, richArticle.getName());
-        assertEquals(IMAGE_URL, richArticle.getHeroImage().getId());
-        assertEquals(3, richArticle.getVideos().size());
-        assertTrue(richArticle.getVideos().contains(VIDEO_1));
-        assertTrue(richArticle.getVideos().contains(VIDEO_2));
-        assertTrue(richArticle.getVideos().contains(VIDEO_3));
-    }
-    
-    /**
-     * Test of enrichArticleWithId method, of class SimpleArticleEnricher when
-     * we make several requests for different articles. it has all the available 
-     * resource information. We expect it to build a complete RichArticle for 
-     * each articleId we pass to it.
-     *
-     * @throws java.lang.InterruptedException
-     * @throws java.util.concurrent.ExecutionException
-     */
-    @Test
-    public void testEnrichArticleWithIdSuccessMultiple() throws InterruptedException, ExecutionException {
-        System.out.println("testEnrichArticleWithIdSuccessMultiple");
-
-        SimpleArticleEnricher instance = new SimpleArticleEnricher();
-        instance.setTimeoutSeconds(3);
-
-        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
-        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
-
-        Mockito.when(mockAssetsServiceClient.getImageById(IMAGE_URL))
-                .thenReturn(CompletableFuture.completedFuture(IMAGE));
-        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_1))
-                .thenReturn(CompletableFuture.completedFuture(VIDEO_1));
-        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_2))
-                .thenReturn(CompletableFuture.completedFuture(VIDEO_2));
-        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_3))
-                .thenReturn(CompletableFuture.completedFuture(VIDEO_3));
-
-        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
-                .thenReturn(CompletableFuture.completedFuture(
-                        new ArticleReference(ARTICLE_ID_1, ARTICLE_NAME_1, IMAGE_URL, Arrays.asList(VIDEO_URL_1))));
-        
-        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_2))
-                .thenReturn(CompletableFuture.completedFuture(
-                        new ArticleReference(ARTICLE_ID_2, ARTICLE_NAME_2, IMAGE_URL, Arrays.asList(VIDEO_URL_1, VIDEO_URL_2))));
-        
-        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_3))
-                .thenReturn(CompletableFuture.completedFuture(
-                        new ArticleReference(ARTICLE_ID_3, ARTICLE_NAME_3, IMAGE_URL, VIDEO_URLS)));
-
-        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
-        instance.setAssetsServiceClient(mockAssetsServiceClient);
-
-        Future<RichArticle> result_1 = instance.enrichArticleWithId(ARTICLE_ID_1);
-        Future<RichArticle> result_2 = instance.enrichArticleWithId(ARTICLE_ID_2);
-        Future<RichArticle> result_3 = instance.enrichArticleWithId(ARTICLE_ID_3);
-
-        RichArticle richArticle_1 = result_1.get();
-        RichArticle richArticle_2 = result_2.get();
-        RichArticle richArticle_3 = result_3.get();
-        
-
-        assertEquals(ARTICLE_ID_1, richArticle_1.getId());
-        assertEquals(ARTICLE_NAME_1, richArticle_1.getName());
-        assertEquals(IMAGE_URL, richArticle_1.getHeroImage().getId());
-        assertEquals(1, richArticle_1.getVideos().size());
-        assertTrue(richArticle_1.getVideos().contains(VIDEO_1));
-        
-        assertEquals(ARTICLE_ID_2, richArticle_2.getId());
-        assertEquals(ARTICLE_NAME_2, richArticle_2.getName());
-        assertEquals(IMAGE_URL, richArticle_2.getHeroImage().getId());
-        assertEquals(2, richArticle_2.getVideos().size());
-        assertTrue(richArticle_2.getVideos().contains(VIDEO_1));
-        assertTrue(richArticle_2.getVideos().contains(VIDEO_2));
-        
-        assertEquals(ARTICLE_ID_3, richArticle_3.getId());
-        assertEquals(ARTICLE_NAME_3, richArticle_3.getName());
-        assertEquals(IMAGE_URL, richArticle_3.getHeroImage().getId());
-        assertEquals(3, richArticle_3.getVideos().size());
-        assertTrue(richArticle_3.getVideos().contains(VIDEO_1));
-        assertTrue(richArticle_3.getVideos().contains(VIDEO_2));
-        assertTrue(richArticle_3.getVideos().contains(VIDEO_3));
-        
-        
-    }
-
-    /**
-     * Test of enrichArticleWithId method, of class SimpleArticleEnricher when
-     * there are no Videos available.We expect it to build a partial RichArticle
-     * without any Videos.
-     *
-     * @throws java.lang.InterruptedException
-     * @throws java.util.concurrent.ExecutionException
-     */
-    @Test
-    public void testEnrichArticleWithIdSuccessNoVideo() throws InterruptedException, ExecutionException {
-        System.out.println("testEnrichArticleWithIdSuccessNoVideo");
-
-        SimpleArticleEnricher instance = new SimpleArticleEnricher();
-
-        instance.setTimeoutSeconds(3);
-
-        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
-        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
-
-        Mockito.when(mockAssetsServiceClient.getImageById(IMAGE_URL))
-                .thenReturn(CompletableFuture.completedFuture(IMAGE));
-        Mockito.when(mockAssetsServiceClient.getVideoById(any()))
-                .thenReturn(CompletableFuture.completedFuture(null));
-
-        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
-                .thenReturn(CompletableFuture.completedFuture(
-                        new ArticleReference(ARTICLE_ID_1, ARTICLE_NAME_1, IMAGE_URL, Arrays.asList(NON_EXISTENT_VIDEO_URL))));
-
-        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
-        instance.setAssetsServiceClient(mockAssetsServiceClient);
-
-        Future<RichArticle> result = instance.enrichArticleWithId(ARTICLE_ID_1);
-
-        RichArticle richArticle = result.get();
-
-        assertEquals(ARTICLE_ID_1, richArticle.getId());
-        assertEquals(ARTICLE_NAME_1, richArticle.getName());
-        assertEquals(IMAGE_URL, richArticle.getHeroImage().getId());
-        assertEquals(0, richArticle.getVideos().size());
-    }
-
-    /**
-     * Test of enrichArticleWithId method, of class SimpleArticleEnricher when
-     * we have no image available. We expect it to build a partial RichArticle
-     * but with the missing image
-     *
-     * @throws java.lang.InterruptedException
-     * @throws java.util.concurrent.ExecutionException
-     */
-    @Test
-    public void testEnrichArticleWithIdSuccessNoImage() throws InterruptedException, ExecutionException {
-        System.out.println("testEnrichArticleWithIdSuccessNoImage");
-
-        SimpleArticleEnricher instance = new SimpleArticleEnricher();
-        instance.setTimeoutSeconds(3);
-
-        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
-        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
-
-        Mockito.when(mockAssetsServiceClient.getImageById(any()))
-                .thenReturn(CompletableFuture.completedFuture(null));
-
-        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_1))
-                .thenReturn(CompletableFuture.completedFuture(VIDEO_1));
-        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_2))
-                .thenReturn(CompletableFuture.completedFuture(VIDEO_2));
-        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_3))
-                .thenReturn(CompletableFuture.completedFuture(VIDEO_3));
-
-        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
-                .thenReturn(CompletableFuture.completedFuture(
-                        new ArticleReference(ARTICLE_ID_1, ARTICLE_NAME_1, IMAGE_URL, VIDEO_URLS)));
-
-        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
-        instance.setAssetsServiceClient(mockAssetsServiceClient);
-
-        Future<RichArticle> result = instance.enrichArticleWithId(ARTICLE_ID_1);
-
-        RichArticle richArticle = result.get();
-
-        assertEquals(ARTICLE_ID_1, richArticle.getId());
-        assertEquals(ARTICLE_NAME_1, richArticle.getName());
-        assertNull(richArticle.getHeroImage());
-        assertEquals(3, richArticle.getVideos().size());
-        assertTrue(richArticle.getVideos().contains(VIDEO_1));
-        assertTrue(richArticle.getVideos().contains(VIDEO_2));
-        assertTrue(richArticle.getVideos().contains(VIDEO_3));
-    }
-
-    /**
-     * Test of enrichArticleWithId method, of class SimpleArticleEnricher when
-     * there is no article to reference.We expect that the Future will throw an
-     * Exception caused by NullPointer when referring to ArticleReference that
-     * doesn't exist.
-     *
-     * @throws java.lang.InterruptedException
-     * @throws java.util.concurrent.ExecutionException
-     */
-    @Test
-    public void testEnrichArticleWithIdNoArticleReference() throws InterruptedException, ExecutionException {
-        System.out.println("testEnrichArticleWithIdNoArticleReference");
-
-        SimpleArticleEnricher instance = new SimpleArticleEnricher();
-        instance.setTimeoutSeconds(3);
-
-        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
-        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
-
-        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
-                .thenReturn(CompletableFuture.completedFuture(null));
-
-        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
-        instance.setAssetsServiceClient(mockAssetsServiceClient);
-
-        CompletableFuture<RichArticle> result
-                = (CompletableFuture<RichArticle>) instance.enrichArticleWithId(ARTICLE_ID_1);
-
-        try {
-            result.get();
-        } catch (ExecutionException ex) {
-            assertThat(ex.getCause(), instanceOf(NullPointerException.class));
-        }
-    }
-
-    /**
-     * Test of enrichArticleWithId method, of class SimpleArticleEnricher when
-     * the Image Future takes too long and we get a TimeoutException.We should
-     * get a TimeoutException thrown when we call get() on our resulting Future.
-     *
-     * @throws java.lang.InterruptedException
-     * @throws java.util.concurrent.ExecutionException
-     */
-    @Test
-    public void testEnrichArticleWithIdTimeoutExceptionOnImageFuture() throws InterruptedException, ExecutionException {
-        System.out.println("testEnrichArticleWithIdTimeoutExceptionOnImageFuture");
-
-        SimpleArticleEnricher instance = new SimpleArticleEnricher();
-        instance.setTimeoutSeconds(3);
-
-        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
-        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
-
-        CompletableFuture<Image> timeoutCompletableFuture
-                = CompletableFuture.supplyAsync(() -> {
-                    try {
-                        TimeUnit.SECONDS.sleep(5);
-                        return null;
-                    } catch (InterruptedException ex) {
-                        return null;
-                    }
-                });
-
-        Mockito.when(mockAssetsServiceClient.getImageById(IMAGE_URL))
-                .thenReturn(timeoutCompletableFuture);
-
-        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
-                .thenReturn(CompletableFuture.completedFuture(
-                        new ArticleReference(ARTICLE_ID_1, ARTICLE_NAME_1, IMAGE_URL, VIDEO_URLS)));
-
-        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
-        instance.setAssetsServiceClient(mockAssetsServiceClient);
-
-        CompletableFuture<RichArticle> result
-                = (CompletableFuture<RichArticle>) instance.enrichArticleWithId(ARTICLE_ID_1);
-
-        try {
-            result.get();
-        } catch (ExecutionException ex) {
-            assertThat(ex.getCause(), instanceOf(TimeoutException.class));
-        }
-    }
-
-    /**
-     * Test of enrichArticleWithId method, of class SimpleArticleEnricher when
-     * the Video Future takes too long and we get a TimeoutException.We should
-     * get a TimeoutException thrown when we call get() on our resulting Future.
-     *
-     * @throws java.lang.InterruptedException
-     * @throws java.util.concurrent.ExecutionException
-     */
-    @Test
-    public void testEnrichArticleWithIdTimeoutExceptionOnVideoFuture() throws InterruptedException, ExecutionException {
-        System.out.println("testEnrichArticleWithIdTimeoutExceptionOnVideoFuture");
-
-        SimpleArticleEnricher instance = new SimpleArticleEnricher();
-        instance.setTimeoutSeconds(3);
-
-        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
-        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
-
-        CompletableFuture<Video> timeoutCompletableFuture
-                = CompletableFuture.supplyAsync(() -> {
-                    try {
-                        TimeUnit.SECONDS.sleep(5);
-                        return null;
-                    } catch (InterruptedException ex) {
-                        return null;
-                    }
-                });
-
-        Mockito.when(mockAssetsServiceClient.getImageById(IMAGE_URL))
-                .thenReturn(CompletableFuture.completedFuture(IMAGE));
-        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_1))
-                .thenReturn(timeoutCompletableFuture);
-        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_2))
-                .thenReturn(CompletableFuture.completedFuture(VIDEO_2));
-        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_3))
-                .thenReturn(CompletableFuture.completedFuture(VIDEO_3));
-
-        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
-                .thenReturn(CompletableFuture.completedFuture(
-                        new ArticleReference(ARTICLE_ID_1, ARTICLE_NAME_1, IMAGE_URL, VIDEO_URLS)));
-
-        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
-        instance.setAssetsServiceClient(mockAssetsServiceClient);
-
-        CompletableFuture<RichArticle> result
-                = (CompletableFuture<RichArticle>) instance.enrichArticleWithId(ARTICLE_ID_1);
-
-        try {
-            result.get();
-        } catch (ExecutionException ex) {
-            assertThat(ex.getCause(), instanceOf(TimeoutException.class));
-        }
-    }
-
-    /**
-     * Test of enrichArticleWithId method, of class SimpleArticleEnricher when
-     * the ArticleReference Future takes too long and we get a
-     * TimeoutException.We should get a TimeoutException thrown when we call
-     * get() on our resulting Future.
-     *
-     * @throws java.lang.InterruptedException
-     * @throws java.util.concurrent.ExecutionException
-     */
-    @Test
-    public void testEnrichArticleWithIdTimeoutExceptionOnArticleReferenceFuture() throws InterruptedException, ExecutionException {
-        System.out.println("testEnrichArticleWithIdTimeoutExceptionOnArticleReferenceFuture");
-
-        SimpleArticleEnricher instance = new SimpleArticleEnricher();
-        instance.setTimeoutSeconds(3);
-
-        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
-        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
-
-        CompletableFuture<ArticleReference> timeoutCompletableFuture
-                = CompletableFuture.supplyAsync(() -> {
-                    try {
-                        TimeUnit.SECONDS.sleep(5);
-                        return null;
-                    } catch (InterruptedException ex) {
-                        ex.printStackTrace();
-                        return null;
-                    }
-                });
-
-        Mockito.when(mockAssetsServiceClient.getImageById(IMAGE_URL))
-                .thenReturn(CompletableFuture.completedFuture(IMAGE));
-        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_1))
-                .thenReturn(CompletableFuture.completedFuture(VIDEO_1));
-
-        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
-                .thenReturn(timeoutCompletableFuture);
-
-        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
-        instance.setAssetsServiceClient(mockAssetsServiceClient);
-
-        CompletableFuture<RichArticle> result
-                = (CompletableFuture<RichArticle>) instance.enrichArticleWithId(ARTICLE_ID_1);
-
-        try {
-            result.get();
-        } catch (ExecutionException ex) {
-            assertThat(ex.getCause(), instanceOf(TimeoutException.class));
-        }
-    }
-
-    /**
-     * Test of enrichArticleWithId method, of class SimpleArticleEnricher when
-     * the ArticleReference Future takes too long and we get a
-     * TimeoutException.We should get a TimeoutException thrown when we call
-     * get() on our resulting Future.
-     *
-     * @throws java.lang.InterruptedException
-     * @throws java.util.concurrent.ExecutionException
-     */
-    @Test
-    public void testEnrichArticleWithIdInteruptExceptionOnArticleReferenceFuture() throws InterruptedException, ExecutionException {
-        System.out.println("testEnrichArticleWithIdInteruptExceptionOnArticleReferenceFuture");
-
-        SimpleArticleEnricher instance = new SimpleArticleEnricher();
-        instance.setTimeoutSeconds(3);
-
-        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
-        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
-
-        CompletableFuture<ArticleReference> timeoutCompletableFuture
-                = CompletableFuture.supplyAsync(() -> {
-                    try {
-                        TimeUnit.SECONDS.sleep(5);
-                        return null;
-                    } catch (InterruptedException ex) {
-                        return null;
-                    }
-                });
-
-        Mockito.when(mockAssetsServiceClient.getImageById(IMAGE_URL))
-                .thenReturn(CompletableFuture.completedFuture(IMAGE));
-        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_1))
-                .thenReturn(CompletableFuture.completedFuture(VIDEO_1));
-
-        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
-                .thenReturn(timeoutCompletableFuture);
-
-        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
-        instance.setAssetsServiceClient(mockAssetsServiceClient);
-
-        CompletableFuture<RichArticle> result
-                = (CompletableFuture<RichArticle>) instance.enrichArticleWithId(ARTICLE_ID_1);
-
-        try {
-            result.get();
-        } catch (ExecutionException ex) {
-            assertThat(ex.getCause(), instanceOf(TimeoutException.class));
-        }
-    }
-}
+
+package culturetrip.articles;
+
+import culturetrip.articles.clients.ArticleRepositoryClient;
+import culturetrip.articles.clients.AssetsServiceClient;
+import culturetrip.articles.clients.LimitedAssetsServiceClient;
+import culturetrip.articles.concurrent.EnricherExecutors;
+import culturetrip.articles.concurrent.Futures;
+import culturetrip.articles.concurrent.Retrier;
+import culturetrip.articles.metrics.InMemoryEnricherMetrics;
+import culturetrip.articles.metrics.Stage;
+import culturetrip.articles.models.ArticleReference;
+import culturetrip.articles.models.Image;
+import culturetrip.articles.models.MissingAsset;
+import culturetrip.articles.models.RichArticle;
+import culturetrip.articles.models.Video;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import org.mockito.Mockito;
+import static org.mockito.Mockito.mock;
+
+/**
+ *
+ * @author mball
+ */
+public class SimpleArticleEnricherTest {
+
+    private static final String ARTICLE_ID_1 = "articleId1";
+    private static final String ARTICLE_ID_2 = "articleId2";
+    private static final String ARTICLE_ID_3 = "articleId3";
+    private static final String ARTICLE_NAME_1 = "articleName";
+    private static final String ARTICLE_NAME_2 = "articleName";
+    private static final String ARTICLE_NAME_3 = "articleName";
+    private static final String IMAGE_URL = "someImageUrl";
+    private static final String IMAGE_ALT_TEXT = "someAltText";
+    private static final String VIDEO_URL_1 = "someVideoURL1";
+    private static final String VIDEO_URL_2 = "someVideoURL2";
+    private static final String VIDEO_URL_3 = "someVideoURL3";
+    private static final String NON_EXISTENT_VIDEO_URL = "someNonExistentVideoURL";
+
+    private static final Video VIDEO_1 = new Video(VIDEO_URL_1, "some Caption 1");
+    private static final Video VIDEO_2 = new Video(VIDEO_URL_2, "some Caption 2");
+    private static final Video VIDEO_3 = new Video(VIDEO_URL_3, "some Caption 3");
+
+    private static final Image IMAGE = new Image(IMAGE_URL, IMAGE_ALT_TEXT);
+
+    private static final List<String> VIDEO_URLS = Arrays.asList(VIDEO_URL_1, VIDEO_URL_2, VIDEO_URL_3);
+
+    public SimpleArticleEnricherTest() {
+    }    
+
+    /**
+     * Test of enrichArticleWithId method, of class SimpleArticleEnricher when
+     * it has all the available resource information.We expect it to build a
+     * complete RichArticle.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testEnrichArticleWithIdSuccess() throws InterruptedException, ExecutionException {
+        System.out.println("testEnrichArticleWithIdSuccess");
+
+        SimpleArticleEnricher instance = new SimpleArticleEnricher();
+        instance.setTimeoutSeconds(3);
+
+        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
+        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
+
+        Mockito.when(mockAssetsServiceClient.getImageById(IMAGE_URL))
+                .thenReturn(CompletableFuture.completedFuture(IMAGE));
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_1))
+                .thenReturn(CompletableFuture.completedFuture(VIDEO_1));
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_2))
+                .thenReturn(CompletableFuture.completedFuture(VIDEO_2));
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_3))
+                .thenReturn(CompletableFuture.completedFuture(VIDEO_3));
+
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
+                .thenReturn(CompletableFuture.completedFuture(
+                        new ArticleReference(ARTICLE_ID_1, ARTICLE_NAME_1, IMAGE_URL, VIDEO_URLS)));
+
+        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
+        instance.setAssetsServiceClient(mockAssetsServiceClient);
+
+        Future<RichArticle> result = instance.enrichArticleWithId(ARTICLE_ID_1);
+
+        RichArticle richArticle = result.get();
+
+        assertEquals(ARTICLE_ID_1, richArticle.getId());
+        assertEquals(ARTICLE_NAME_1, richArticle.getName());
+        assertEquals(IMAGE_URL, richArticle.getHeroImage().getId());
+        assertEquals(3, richArticle.getVideos().size());
+        assertTrue(richArticle.getVideos().contains(VIDEO_1));
+        assertTrue(richArticle.getVideos().contains(VIDEO_2));
+        assertTrue(richArticle.getVideos().contains(VIDEO_3));
+    }
+    
+    /**
+     * Test of enrichArticleWithId method, of class SimpleArticleEnricher when
+     * the clients hand back plain Futures rather than CompletableFutures. We
+     * expect the enricher to wait for them without blocking the caller and
+     * build a complete RichArticle once they are done.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testEnrichArticleWithIdSuccessPlainFutures() throws InterruptedException, ExecutionException {
+        System.out.println("testEnrichArticleWithIdSuccessPlainFutures");
+
+        SimpleArticleEnricher instance = new SimpleArticleEnricher();
+        instance.setTimeoutSeconds(3);
+
+        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
+        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
+
+        FutureTask<ArticleReference> articleReferenceFuture = new FutureTask<>(
+                () -> new ArticleReference(ARTICLE_ID_1, ARTICLE_NAME_1, IMAGE_URL, Arrays.asList(VIDEO_URL_1)));
+        FutureTask<Image> imageFuture = new FutureTask<>(() -> IMAGE);
+        FutureTask<Video> videoFuture = new FutureTask<>(() -> VIDEO_1);
+        imageFuture.run();
+        videoFuture.run();
+
+        Mockito.when(mockAssetsServiceClient.getImageById(IMAGE_URL))
+                .thenReturn(imageFuture);
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_1))
+                .thenReturn(videoFuture);
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
+                .thenReturn(articleReferenceFuture);
+
+        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
+        instance.setAssetsServiceClient(mockAssetsServiceClient);
+
+        Future<RichArticle> result = instance.enrichArticleWithId(ARTICLE_ID_1);
+        assertFalse(result.isDone());
+
+        articleReferenceFuture.run();
+
+        RichArticle richArticle = result.get();
+
+        assertEquals(ARTICLE_ID_1, richArticle.getId());
+        assertEquals(IMAGE_URL, richArticle.getHeroImage().getId());
+        assertEquals(1, richArticle.getVideos().size());
+        assertTrue(richArticle.getVideos().contains(VIDEO_1));
+    }
+    
+    /**
+     * Test of enrichArticleWithId method, of class SimpleArticleEnricher when
+     * the hero image is slow. We expect every video to be requested as soon as
+     * the ArticleReference arrives rather than after the image.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testEnrichArticleWithIdRequestsAssetsConcurrently() throws InterruptedException, ExecutionException {
+        System.out.println("testEnrichArticleWithIdRequestsAssetsConcurrently");
+
+        SimpleArticleEnricher instance = new SimpleArticleEnricher();
+        instance.setTimeoutSeconds(3);
+
+        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
+        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
+
+        CompletableFuture<Image> slowImageFuture = new CompletableFuture<>();
+
+        Mockito.when(mockAssetsServiceClient.getImageById(IMAGE_URL))
+                .thenReturn(slowImageFuture);
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_1))
+                .thenReturn(CompletableFuture.completedFuture(VIDEO_1));
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_2))
+                .thenReturn(CompletableFuture.completedFuture(VIDEO_2));
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_3))
+                .thenReturn(CompletableFuture.completedFuture(VIDEO_3));
+
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
+                .thenReturn(CompletableFuture.completedFuture(
+                        new ArticleReference(ARTICLE_ID_1, ARTICLE_NAME_1, IMAGE_URL, VIDEO_URLS)));
+
+        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
+        instance.setAssetsServiceClient(mockAssetsServiceClient);
+
+        Future<RichArticle> result = instance.enrichArticleWithId(ARTICLE_ID_1);
+
+        //the image hasn't arrived yet, but every video should already have been asked for.
+        Mockito.verify(mockAssetsServiceClient).getVideoById(VIDEO_URL_1);
+        Mockito.verify(mockAssetsServiceClient).getVideoById(VIDEO_URL_2);
+        Mockito.verify(mockAssetsServiceClient).getVideoById(VIDEO_URL_3);
+        assertFalse(result.isDone());
+
+        slowImageFuture.complete(IMAGE);
+
+        RichArticle richArticle = result.get();
+
+        assertEquals(IMAGE_URL, richArticle.getHeroImage().getId());
+        assertEquals(3, richArticle.getVideos().size());
+    }
+    
+    /**
+     * Test of enrichArticleWithId method, of class SimpleArticleEnricher when
+     * we make several requests for different articles. it has all the available 
+     * resource information. We expect it to build a complete RichArticle for 
+     * each articleId we pass to it.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testEnrichArticleWithIdSuccessMultiple() throws InterruptedException, ExecutionException {
+        System.out.println("testEnrichArticleWithIdSuccessMultiple");
+
+        SimpleArticleEnricher instance = new SimpleArticleEnricher();
+        instance.setTimeoutSeconds(3);
+
+        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
+        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
+
+        Mockito.when(mockAssetsServiceClient.getImageById(IMAGE_URL))
+                .thenReturn(CompletableFuture.completedFuture(IMAGE));
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_1))
+                .thenReturn(CompletableFuture.completedFuture(VIDEO_1));
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_2))
+                .thenReturn(CompletableFuture.completedFuture(VIDEO_2));
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_3))
+                .thenReturn(CompletableFuture.completedFuture(VIDEO_3));
+
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
+                .thenReturn(CompletableFuture.completedFuture(
+                        new ArticleReference(ARTICLE_ID_1, ARTICLE_NAME_1, IMAGE_URL, Arrays.asList(VIDEO_URL_1))));
+        
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_2))
+                .thenReturn(CompletableFuture.completedFuture(
+                        new ArticleReference(ARTICLE_ID_2, ARTICLE_NAME_2, IMAGE_URL, Arrays.asList(VIDEO_URL_1, VIDEO_URL_2))));
+        
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_3))
+                .thenReturn(CompletableFuture.completedFuture(
+                        new ArticleReference(ARTICLE_ID_3, ARTICLE_NAME_3, IMAGE_URL, VIDEO_URLS)));
+
+        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
+        instance.setAssetsServiceClient(mockAssetsServiceClient);
+
+        Future<RichArticle> result_1 = instance.enrichArticleWithId(ARTICLE_ID_1);
+        Future<RichArticle> result_2 = instance.enrichArticleWithId(ARTICLE_ID_2);
+        Future<RichArticle> result_3 = instance.enrichArticleWithId(ARTICLE_ID_3);
+
+        RichArticle richArticle_1 = result_1.get();
+        RichArticle richArticle_2 = result_2.get();
+        RichArticle richArticle_3 = result_3.get();
+        
+
+        assertEquals(ARTICLE_ID_1, richArticle_1.getId());
+        assertEquals(ARTICLE_NAME_1, richArticle_1.getName());
+        assertEquals(IMAGE_URL, richArticle_1.getHeroImage().getId());
+        assertEquals(1, richArticle_1.getVideos().size());
+        assertTrue(richArticle_1.getVideos().contains(VIDEO_1));
+        
+        assertEquals(ARTICLE_ID_2, richArticle_2.getId());
+        assertEquals(ARTICLE_NAME_2, richArticle_2.getName());
+        assertEquals(IMAGE_URL, richArticle_2.getHeroImage().getId());
+        assertEquals(2, richArticle_2.getVideos().size());
+        assertTrue(richArticle_2.getVideos().contains(VIDEO_1));
+        assertTrue(richArticle_2.getVideos().contains(VIDEO_2));
+        
+        assertEquals(ARTICLE_ID_3, richArticle_3.getId());
+        assertEquals(ARTICLE_NAME_3, richArticle_3.getName());
+        assertEquals(IMAGE_URL, richArticle_3.getHeroImage().getId());
+        assertEquals(3, richArticle_3.getVideos().size());
+        assertTrue(richArticle_3.getVideos().contains(VIDEO_1));
+        assertTrue(richArticle_3.getVideos().contains(VIDEO_2));
+        assertTrue(richArticle_3.getVideos().contains(VIDEO_3));
+        
+        
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class SimpleArticleEnricher when
+     * there are no Videos available.We expect it to build a partial RichArticle
+     * without any Videos.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testEnrichArticleWithIdSuccessNoVideo() throws InterruptedException, ExecutionException {
+        System.out.println("testEnrichArticleWithIdSuccessNoVideo");
+
+        SimpleArticleEnricher instance = new SimpleArticleEnricher();
+
+        instance.setTimeoutSeconds(3);
+
+        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
+        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
+
+        Mockito.when(mockAssetsServiceClient.getImageById(IMAGE_URL))
+                .thenReturn(CompletableFuture.completedFuture(IMAGE));
+        Mockito.when(mockAssetsServiceClient.getVideoById(any()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
+                .thenReturn(CompletableFuture.completedFuture(
+                        new ArticleReference(ARTICLE_ID_1, ARTICLE_NAME_1, IMAGE_URL, Arrays.asList(NON_EXISTENT_VIDEO_URL))));
+
+        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
+        instance.setAssetsServiceClient(mockAssetsServiceClient);
+
+        Future<RichArticle> result = instance.enrichArticleWithId(ARTICLE_ID_1);
+
+        RichArticle richArticle = result.get();
+
+        assertEquals(ARTICLE_ID_1, richArticle.getId());
+        assertEquals(ARTICLE_NAME_1, richArticle.getName());
+        assertEquals(IMAGE_URL, richArticle.getHeroImage().getId());
+        assertEquals(0, richArticle.getVideos().size());
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class SimpleArticleEnricher when
+     * we have no image available. We expect it to build a partial RichArticle
+     * but with the missing image
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testEnrichArticleWithIdSuccessNoImage() throws InterruptedException, ExecutionException {
+        System.out.println("testEnrichArticleWithIdSuccessNoImage");
+
+        SimpleArticleEnricher instance = new SimpleArticleEnricher();
+        instance.setTimeoutSeconds(3);
+
+        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
+        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
+
+        Mockito.when(mockAssetsServiceClient.getImageById(any()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_1))
+                .thenReturn(CompletableFuture.completedFuture(VIDEO_1));
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_2))
+                .thenReturn(CompletableFuture.completedFuture(VIDEO_2));
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_3))
+                .thenReturn(CompletableFuture.completedFuture(VIDEO_3));
+
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
+                .thenReturn(CompletableFuture.completedFuture(
+                        new ArticleReference(ARTICLE_ID_1, ARTICLE_NAME_1, IMAGE_URL, VIDEO_URLS)));
+
+        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
+        instance.setAssetsServiceClient(mockAssetsServiceClient);
+
+        Future<RichArticle> result = instance.enrichArticleWithId(ARTICLE_ID_1);
+
+        RichArticle richArticle = result.get();
+
+        assertEquals(ARTICLE_ID_1, richArticle.getId());
+        assertEquals(ARTICLE_NAME_1, richArticle.getName());
+        assertNull(richArticle.getHeroImage());
+        assertEquals(3, richArticle.getVideos().size());
+        assertTrue(richArticle.getVideos().contains(VIDEO_1));
+        assertTrue(richArticle.getVideos().contains(VIDEO_2));
+        assertTrue(richArticle.getVideos().contains(VIDEO_3));
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class SimpleArticleEnricher when
+     * there is no article to reference.We expect that the Future will throw an
+     * Exception caused by an ArticleNotFoundException, so callers can tell a
+     * missing article from one that failed.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testEnrichArticleWithIdNoArticleReference() throws InterruptedException, ExecutionException {
+        System.out.println("testEnrichArticleWithIdNoArticleReference");
+
+        SimpleArticleEnricher instance = new SimpleArticleEnricher();
+        instance.setTimeoutSeconds(3);
+
+        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
+        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
+
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
+        instance.setAssetsServiceClient(mockAssetsServiceClient);
+
+        CompletableFuture<RichArticle> result
+                = (CompletableFuture<RichArticle>) instance.enrichArticleWithId(ARTICLE_ID_1);
+
+        try {
+            result.get();
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause(), instanceOf(ArticleNotFoundException.class));
+        }
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class SimpleArticleEnricher when
+     * the Image Future takes too long and we get a TimeoutException.We should
+     * get a TimeoutException thrown when we call get() on our resulting Future.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testEnrichArticleWithIdTimeoutExceptionOnImageFuture() throws InterruptedException, ExecutionException {
+        System.out.println("testEnrichArticleWithIdTimeoutExceptionOnImageFuture");
+
+        SimpleArticleEnricher instance = new SimpleArticleEnricher();
+        instance.setTimeoutSeconds(3);
+
+        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
+        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
+
+        CompletableFuture<Image> timeoutCompletableFuture
+                = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        TimeUnit.SECONDS.sleep(5);
+                        return null;
+                    } catch (InterruptedException ex) {
+                        return null;
+                    }
+                });
+
+        Mockito.when(mockAssetsServiceClient.getImageById(IMAGE_URL))
+                .thenReturn(timeoutCompletableFuture);
+
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
+                .thenReturn(CompletableFuture.completedFuture(
+                        new ArticleReference(ARTICLE_ID_1, ARTICLE_NAME_1, IMAGE_URL, VIDEO_URLS)));
+
+        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
+        instance.setAssetsServiceClient(mockAssetsServiceClient);
+
+        CompletableFuture<RichArticle> result
+                = (CompletableFuture<RichArticle>) instance.enrichArticleWithId(ARTICLE_ID_1);
+
+        try {
+            result.get();
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause(), instanceOf(TimeoutException.class));
+        }
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class SimpleArticleEnricher when
+     * the Video Future takes too long and we get a TimeoutException.We should
+     * get a TimeoutException thrown when we call get() on our resulting Future.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testEnrichArticleWithIdTimeoutExceptionOnVideoFuture() throws InterruptedException, ExecutionException {
+        System.out.println("testEnrichArticleWithIdTimeoutExceptionOnVideoFuture");
+
+        SimpleArticleEnricher instance = new SimpleArticleEnricher();
+        instance.setTimeoutSeconds(3);
+
+        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
+        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
+
+        CompletableFuture<Video> timeoutCompletableFuture
+                = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        TimeUnit.SECONDS.sleep(5);
+                        return null;
+                    } catch (InterruptedException ex) {
+                        return null;
+                    }
+                });
+
+        Mockito.when(mockAssetsServiceClient.getImageById(IMAGE_URL))
+                .thenReturn(CompletableFuture.completedFuture(IMAGE));
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_1))
+                .thenReturn(timeoutCompletableFuture);
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_2))
+                .thenReturn(CompletableFuture.completedFuture(VIDEO_2));
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_3))
+                .thenReturn(CompletableFuture.completedFuture(VIDEO_3));
+
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
+                .thenReturn(CompletableFuture.completedFuture(
+                        new ArticleReference(ARTICLE_ID_1, ARTICLE_NAME_1, IMAGE_URL, VIDEO_URLS)));
+
+        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
+        instance.setAssetsServiceClient(mockAssetsServiceClient);
+
+        CompletableFuture<RichArticle> result
+                = (CompletableFuture<RichArticle>) instance.enrichArticleWithId(ARTICLE_ID_1);
+
+        try {
+            result.get();
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause(), instanceOf(TimeoutException.class));
+        }
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class SimpleArticleEnricher when
+     * the ArticleReference Future takes too long and we get a
+     * TimeoutException.We should get a TimeoutException thrown when we call
+     * get() on our resulting Future.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testEnrichArticleWithIdTimeoutExceptionOnArticleReferenceFuture() throws InterruptedException, ExecutionException {
+        System.out.println("testEnrichArticleWithIdTimeoutExceptionOnArticleReferenceFuture");
+
+        SimpleArticleEnricher instance = new SimpleArticleEnricher();
+        instance.setTimeoutSeconds(3);
+
+        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
+        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
+
+        CompletableFuture<ArticleReference> timeoutCompletableFuture
+                = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        TimeUnit.SECONDS.sleep(5);
+                        return null;
+                    } catch (InterruptedException ex) {
+                        ex.printStackTrace();
+                        return null;
+                    }
+                });
+
+        Mockito.when(mockAssetsServiceClient.getImageById(IMAGE_URL))
+                .thenReturn(CompletableFuture.completedFuture(IMAGE));
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_1))
+                .thenReturn(CompletableFuture.completedFuture(VIDEO_1));
+
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
+                .thenReturn(timeoutCompletableFuture);
+
+        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
+        instance.setAssetsServiceClient(mockAssetsServiceClient);
+
+        CompletableFuture<RichArticle> result
+                = (CompletableFuture<RichArticle>) instance.enrichArticleWithId(ARTICLE_ID_1);
+
+        try {
+            result.get();
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause(), instanceOf(TimeoutException.class));
+        }
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class SimpleArticleEnricher when
+     * the ArticleReference Future takes too long and we get a
+     * TimeoutException.We should get a TimeoutException thrown when we call
+     * get() on our resulting Future.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testEnrichArticleWithIdInteruptExceptionOnArticleReferenceFuture() throws InterruptedException, ExecutionException {
+        System.out.println("testEnrichArticleWithIdInteruptExceptionOnArticleReferenceFuture");
+
+        SimpleArticleEnricher instance = new SimpleArticleEnricher();
+        instance.setTimeoutSeconds(3);
+
+        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
+        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
+
+        CompletableFuture<ArticleReference> timeoutCompletableFuture
+                = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        TimeUnit.SECONDS.sleep(5);
+                        return null;
+                    } catch (InterruptedException ex) {
+                        return null;
+                    }
+                });
+
+        Mockito.when(mockAssetsServiceClient.getImageById(IMAGE_URL))
+                .thenReturn(CompletableFuture.completedFuture(IMAGE));
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_1))
+                .thenReturn(CompletableFuture.completedFuture(VIDEO_1));
+
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
+                .thenReturn(timeoutCompletableFuture);
+
+        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
+        instance.setAssetsServiceClient(mockAssetsServiceClient);
+
+        CompletableFuture<RichArticle> result
+                = (CompletableFuture<RichArticle>) instance.enrichArticleWithId(ARTICLE_ID_1);
+
+        try {
+            result.get();
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause(), instanceOf(TimeoutException.class));
+        }
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class SimpleArticleEnricher when
+     * the ArticleReference and the Image are each quicker than the timeout but
+     * together take longer. We expect a TimeoutException, as the timeout covers
+     * the whole call, once the timeout is up rather than a timeout after the
+     * ArticleReference arrived, and the Image Future to be timed out too.
+     *
+     * @throws java.lang.InterruptedException
+     */
+    @Test
+    public void testEnrichArticleWithIdDeadlineCoversWholeRequest() throws InterruptedException {
+        System.out.println("testEnrichArticleWithIdDeadlineCoversWholeRequest");
+
+        SimpleArticleEnricher instance = new SimpleArticleEnricher();
+        instance.setTimeout(1000, TimeUnit.MILLISECONDS);
+
+        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
+        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
+
+        CompletableFuture<ArticleReference> slowArticleReferenceFuture = new CompletableFuture<>();
+        CompletableFuture<Image> neverCompletingImageFuture = new CompletableFuture<>();
+
+        Mockito.when(mockAssetsServiceClient.getImageById(IMAGE_URL))
+                .thenReturn(neverCompletingImageFuture);
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
+                .thenReturn(slowArticleReferenceFuture);
+
+        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
+        instance.setAssetsServiceClient(mockAssetsServiceClient);
+
+        long startNanos = System.nanoTime();
+        Future<RichArticle> result = instance.enrichArticleWithId(ARTICLE_ID_1);
+
+        //halfway to the deadline, so there's plenty of slack either side of it.
+        TimeUnit.MILLISECONDS.sleep(500);
+        slowArticleReferenceFuture.complete(
+                new ArticleReference(ARTICLE_ID_1, ARTICLE_NAME_1, IMAGE_URL, Arrays.asList()));
+
+        try {
+            result.get(2, TimeUnit.SECONDS);
+            fail("Expected an ExecutionException");
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause(), instanceOf(TimeoutException.class));
+        } catch (TimeoutException ex) {
+            fail("The deadline should have failed the result");
+        }
+        //a timeout started afresh for the Image would only have failed it 1500ms in.
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        assertTrue("Timed out after " + elapsedMillis + "ms", elapsedMillis < 1500);
+        assertTrue(Futures.isTimedOut(neverCompletingImageFuture));
+    }
+
+    /**
+     * Test of enrichArticlesWithIds method, of class SimpleArticleEnricher when
+     * the articles in the batch share their hero image and some videos. We
+     * expect a complete RichArticle for each articleId, with every distinct
+     * asset fetched only once.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testEnrichArticlesWithIdsSharesAssets() throws InterruptedException, ExecutionException {
+        System.out.println("testEnrichArticlesWithIdsSharesAssets");
+
+        SimpleArticleEnricher instance = new SimpleArticleEnricher();
+        instance.setTimeoutSeconds(3);
+
+        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
+        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
+
+        Mockito.when(mockAssetsServiceClient.getImageById(IMAGE_URL))
+                .thenReturn(CompletableFuture.completedFuture(IMAGE));
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_1))
+                .thenReturn(CompletableFuture.completedFuture(VIDEO_1));
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_2))
+                .thenReturn(CompletableFuture.completedFuture(VIDEO_2));
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_3))
+                .thenReturn(CompletableFuture.completedFuture(VIDEO_3));
+
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
+                .thenReturn(CompletableFuture.completedFuture(
+                        new ArticleReference(ARTICLE_ID_1, ARTICLE_NAME_1, IMAGE_URL, Arrays.asList(VIDEO_URL_1))));
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_2))
+                .thenReturn(CompletableFuture.completedFuture(
+                        new ArticleReference(ARTICLE_ID_2, ARTICLE_NAME_2, IMAGE_URL, Arrays.asList(VIDEO_URL_1, VIDEO_URL_2))));
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_3))
+                .thenReturn(CompletableFuture.completedFuture(
+                        new ArticleReference(ARTICLE_ID_3, ARTICLE_NAME_3, IMAGE_URL, VIDEO_URLS)));
+
+        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
+        instance.setAssetsServiceClient(mockAssetsServiceClient);
+
+        Map<String, Future<RichArticle>> results
+                = instance.enrichArticlesWithIds(Arrays.asList(ARTICLE_ID_1, ARTICLE_ID_2, ARTICLE_ID_3, ARTICLE_ID_1));
+
+        assertEquals(Arrays.asList(ARTICLE_ID_1, ARTICLE_ID_2, ARTICLE_ID_3), new ArrayList<>(results.keySet()));
+        assertEquals(1, results.get(ARTICLE_ID_1).get().getVideos().size());
+        assertEquals(2, results.get(ARTICLE_ID_2).get().getVideos().size());
+        assertEquals(3, results.get(ARTICLE_ID_3).get().getVideos().size());
+
+        Mockito.verify(mockArticleRepositoryClient, Mockito.times(1)).getArticleReferenceForId(ARTICLE_ID_1);
+        Mockito.verify(mockAssetsServiceClient, Mockito.times(1)).getImageById(IMAGE_URL);
+        Mockito.verify(mockAssetsServiceClient, Mockito.times(1)).getVideoById(VIDEO_URL_1);
+        Mockito.verify(mockAssetsServiceClient, Mockito.times(1)).getVideoById(VIDEO_URL_2);
+        Mockito.verify(mockAssetsServiceClient, Mockito.times(1)).getVideoById(VIDEO_URL_3);
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class SimpleArticleEnricher when
+     * it is given its own executor. We expect the client calls to be made from
+     * the executor's threads.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testEnrichArticleWithIdRunsOnExecutor() throws InterruptedException, ExecutionException {
+        System.out.println("testEnrichArticleWithIdRunsOnExecutor");
+
+        SimpleArticleEnricher instance = new SimpleArticleEnricher();
+        instance.setTimeoutSeconds(3);
+        ExecutorService executor = EnricherExecutors.bounded(2, 10, EnricherExecutors.RejectionPolicy.ABORT);
+        instance.setExecutor(executor);
+
+        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
+        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
+        List<String> callingThreads = new CopyOnWriteArrayList<>();
+
+        Mockito.when(mockAssetsServiceClient.getImageById(IMAGE_URL)).thenAnswer(invocation -> {
+            callingThreads.add(Thread.currentThread().getName());
+            return CompletableFuture.completedFuture(IMAGE);
+        });
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1)).thenAnswer(invocation -> {
+            callingThreads.add(Thread.currentThread().getName());
+            return CompletableFuture.completedFuture(
+                    new ArticleReference(ARTICLE_ID_1, ARTICLE_NAME_1, IMAGE_URL, Arrays.asList()));
+        });
+
+        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
+        instance.setAssetsServiceClient(mockAssetsServiceClient);
+
+        try {
+            assertEquals(IMAGE_URL, instance.enrichArticleWithId(ARTICLE_ID_1).get().getHeroImage().getId());
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(2, callingThreads.size());
+        for (String callingThread : callingThreads) {
+            assertTrue(callingThread.startsWith("article-enricher-"));
+        }
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class SimpleArticleEnricher when
+     * its bounded executor is full. We expect the Future to fail straight away
+     * with a RejectedExecutionException.
+     *
+     * @throws java.lang.InterruptedException
+     */
+    @Test
+    public void testEnrichArticleWithIdExecutorRejects() throws InterruptedException {
+        System.out.println("testEnrichArticleWithIdExecutorRejects");
+
+        SimpleArticleEnricher instance = new SimpleArticleEnricher();
+        instance.setTimeoutSeconds(3);
+        ExecutorService executor = EnricherExecutors.bounded(1, 1, EnricherExecutors.RejectionPolicy.ABORT);
+        instance.setExecutor(executor);
+
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        executor.execute(() -> {
+        });
+
+        instance.setArticleRepositoryClient(mock(ArticleRepositoryClient.class));
+        instance.setAssetsServiceClient(mock(AssetsServiceClient.class));
+
+        Future<RichArticle> result = instance.enrichArticleWithId(ARTICLE_ID_1);
+        try {
+            assertTrue(result.isDone());
+            result.get();
+            fail("Expected an ExecutionException");
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause(), instanceOf(RejectedExecutionException.class));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class SimpleArticleEnricher when
+     * it has metrics and one of the videos times out. We expect every stage to
+     * be recorded, the timeout to be counted against the videos and nothing to
+     * be left in flight.
+     *
+     * @throws java.lang.InterruptedException
+     */
+    @Test
+    public void testEnrichArticleWithIdRecordsMetrics() throws InterruptedException {
+        System.out.println("testEnrichArticleWithIdRecordsMetrics");
+
+        SimpleArticleEnricher instance = new SimpleArticleEnricher();
+        instance.setTimeout(200, TimeUnit.MILLISECONDS);
+        InMemoryEnricherMetrics metrics = new InMemoryEnricherMetrics();
+        instance.setMetrics(metrics);
+
+        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
+        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
+
+        Mockito.when(mockAssetsServiceClient.getImageById(IMAGE_URL))
+                .thenReturn(CompletableFuture.completedFuture(IMAGE));
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_1))
+                .thenReturn(CompletableFuture.completedFuture(VIDEO_1));
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_2))
+                .thenReturn(new CompletableFuture<>());
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
+                .thenReturn(CompletableFuture.completedFuture(
+                        new ArticleReference(ARTICLE_ID_1, ARTICLE_NAME_1, IMAGE_URL, Arrays.asList(VIDEO_URL_1, VIDEO_URL_2))));
+
+        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
+        instance.setAssetsServiceClient(mockAssetsServiceClient);
+
+        try {
+            instance.enrichArticleWithId(ARTICLE_ID_1).get();
+            fail("Expected an ExecutionException");
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause(), instanceOf(TimeoutException.class));
+        }
+
+        assertEquals(1, metrics.getStage(Stage.REFERENCE).getLatency().getCount());
+        assertEquals(1, metrics.getStage(Stage.IMAGE).getLatency().getCount());
+        assertEquals(2, metrics.getStage(Stage.VIDEO).getLatency().getCount());
+        assertEquals(1, metrics.getStage(Stage.VIDEO).getTimeouts());
+        assertEquals(1, metrics.getStage(Stage.TOTAL).getTimeouts());
+        for (Stage stage : Stage.values()) {
+            assertEquals(0, metrics.getStage(stage).getInFlight());
+        }
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class SimpleArticleEnricher in
+     * partial results mode when one video never arrives and another fails. We
+     * expect the article back at the deadline with the assets that did arrive,
+     * in an unmodifiable list as for a complete article, and the other two
+     * listed as missing in the order of the reference.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testEnrichArticleWithIdPartialResults() throws InterruptedException, ExecutionException {
+        System.out.println("testEnrichArticleWithIdPartialResults");
+
+        SimpleArticleEnricher instance = new SimpleArticleEnricher();
+        instance.setTimeout(200, TimeUnit.MILLISECONDS);
+        instance.setPartialResults(true);
+
+        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
+        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
+
+        CompletableFuture<Video> failedVideo = new CompletableFuture<>();
+        failedVideo.completeExceptionally(new IllegalStateException());
+
+        Mockito.when(mockAssetsServiceClient.getImageById(IMAGE_URL))
+                .thenReturn(CompletableFuture.completedFuture(IMAGE));
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_1))
+                .thenReturn(CompletableFuture.completedFuture(VIDEO_1));
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_2))
+                .thenReturn(new CompletableFuture<>());
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_3))
+                .thenReturn(failedVideo);
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
+                .thenReturn(CompletableFuture.completedFuture(
+                        new ArticleReference(ARTICLE_ID_1, ARTICLE_NAME_1, IMAGE_URL, VIDEO_URLS)));
+
+        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
+        instance.setAssetsServiceClient(mockAssetsServiceClient);
+
+        long start = System.nanoTime();
+        RichArticle richArticle = instance.enrichArticleWithId(ARTICLE_ID_1).get();
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+
+        assertEquals(ARTICLE_NAME_1, richArticle.getName());
+        assertEquals(IMAGE, richArticle.getHeroImage());
+        assertEquals(Arrays.asList(VIDEO_1), new ArrayList<>(richArticle.getVideos()));
+        try {
+            richArticle.getVideos().add(VIDEO_2);
+            fail("Expected an UnsupportedOperationException");
+        } catch (UnsupportedOperationException ex) {
+            //the videos can't be changed once the article is built.
+        }
+        assertFalse(richArticle.isComplete());
+
+        Iterator<MissingAsset> missingAssets = richArticle.getMissingAssets().iterator();
+        MissingAsset timedOut = missingAssets.next();
+        assertEquals(MissingAsset.Type.VIDEO, timedOut.getType());
+        assertEquals(VIDEO_URL_2, timedOut.getUrl());
+        assertTrue(timedOut.isTimedOut());
+        MissingAsset failed = missingAssets.next();
+        assertEquals(VIDEO_URL_3, failed.getUrl());
+        assertThat(failed.getCause(), instanceOf(IllegalStateException.class));
+        assertFalse(missingAssets.hasNext());
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class SimpleArticleEnricher in
+     * partial results mode when the hero image never arrives. We expect the
+     * article without an image, and the image listed as missing.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testEnrichArticleWithIdPartialResultsNoImage() throws InterruptedException, ExecutionException {
+        System.out.println("testEnrichArticleWithIdPartialResultsNoImage");
+
+        SimpleArticleEnricher instance = new SimpleArticleEnricher();
+        instance.setTimeout(100, TimeUnit.MILLISECONDS);
+        instance.setPartialResults(true);
+
+        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
+        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
+
+        Mockito.when(mockAssetsServiceClient.getImageById(IMAGE_URL))
+                .thenReturn(new CompletableFuture<>());
+        Mockito.when(mockAssetsServiceClient.getVideoById(any()))
+                .thenReturn(CompletableFuture.completedFuture(VIDEO_1));
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
+                .thenReturn(CompletableFuture.completedFuture(
+                        new ArticleReference(ARTICLE_ID_1, ARTICLE_NAME_1, IMAGE_URL, Arrays.asList(VIDEO_URL_1))));
+
+        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
+        instance.setAssetsServiceClient(mockAssetsServiceClient);
+
+        RichArticle richArticle = instance.enrichArticleWithId(ARTICLE_ID_1).get();
+
+        assertNull(richArticle.getHeroImage());
+        assertEquals(1, richArticle.getVideos().size());
+        MissingAsset missingAsset = richArticle.getMissingAssets().iterator().next();
+        assertEquals(MissingAsset.Type.IMAGE, missingAsset.getType());
+        assertEquals(IMAGE_URL, missingAsset.getUrl());
+        assertTrue(missingAsset.isTimedOut());
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class SimpleArticleEnricher when
+     * the caller cancels while the assets are still being fetched. We expect
+     * every outstanding client Future to be cancelled, and the permits they
+     * held with the assets service to be given back.
+     */
+    @Test
+    public void testEnrichArticleWithIdCancelCancelsClientCalls() {
+        System.out.println("testEnrichArticleWithIdCancelCancelsClientCalls");
+
+        SimpleArticleEnricher instance = new SimpleArticleEnricher();
+        instance.setTimeoutSeconds(3);
+
+        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
+        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
+
+        CompletableFuture<Image> imageFuture = new CompletableFuture<>();
+        CompletableFuture<Video> videoFuture = new CompletableFuture<>();
+        Mockito.when(mockAssetsServiceClient.getImageById(IMAGE_URL)).thenReturn(imageFuture);
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_1)).thenReturn(videoFuture);
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_2))
+                .thenReturn(CompletableFuture.completedFuture(VIDEO_2));
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
+                .thenReturn(CompletableFuture.completedFuture(
+                        new ArticleReference(ARTICLE_ID_1, ARTICLE_NAME_1, IMAGE_URL, Arrays.asList(VIDEO_URL_1, VIDEO_URL_2))));
+
+        LimitedAssetsServiceClient limitedAssetsServiceClient = new LimitedAssetsServiceClient(mockAssetsServiceClient);
+        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
+        instance.setAssetsServiceClient(limitedAssetsServiceClient);
+
+        Future<RichArticle> result = instance.enrichArticleWithId(ARTICLE_ID_1);
+        assertEquals(2, limitedAssetsServiceClient.getLimiter().getInFlight());
+
+        assertTrue(result.cancel(true));
+
+        assertTrue(imageFuture.isCancelled());
+        assertTrue(videoFuture.isCancelled());
+        assertEquals(0, limitedAssetsServiceClient.getLimiter().getInFlight());
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class SimpleArticleEnricher when
+     * the caller cancels while waiting for the ArticleReference. We expect the
+     * reference Future to be cancelled and no assets to be asked for.
+     */
+    @Test
+    public void testEnrichArticleWithIdCancelBeforeReference() {
+        System.out.println("testEnrichArticleWithIdCancelBeforeReference");
+
+        SimpleArticleEnricher instance = new SimpleArticleEnricher();
+        instance.setTimeoutSeconds(3);
+
+        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
+        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
+
+        CompletableFuture<ArticleReference> referenceFuture = new CompletableFuture<>();
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1)).thenReturn(referenceFuture);
+
+        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
+        instance.setAssetsServiceClient(mockAssetsServiceClient);
+
+        instance.enrichArticleWithId(ARTICLE_ID_1).cancel(true);
+
+        assertTrue(referenceFuture.isCancelled());
+        Mockito.verifyZeroInteractions(mockAssetsServiceClient);
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class SimpleArticleEnricher when
+     * one video fails while another is still outstanding. We expect the
+     * article to fail and the outstanding video to be cancelled, as nobody
+     * needs it any more.
+     *
+     * @throws java.lang.InterruptedException
+     */
+    @Test
+    public void testEnrichArticleWithIdFailureCancelsOutstandingCalls() throws InterruptedException {
+        System.out.println("testEnrichArticleWithIdFailureCancelsOutstandingCalls");
+
+        SimpleArticleEnricher instance = new SimpleArticleEnricher();
+        instance.setTimeoutSeconds(3);
+
+        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
+        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
+
+        CompletableFuture<Video> failingVideoFuture = new CompletableFuture<>();
+        CompletableFuture<Video> outstandingVideoFuture = new CompletableFuture<>();
+        Mockito.when(mockAssetsServiceClient.getImageById(IMAGE_URL))
+                .thenReturn(CompletableFuture.completedFuture(IMAGE));
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_1)).thenReturn(failingVideoFuture);
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_2)).thenReturn(outstandingVideoFuture);
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
+                .thenReturn(CompletableFuture.completedFuture(
+                        new ArticleReference(ARTICLE_ID_1, ARTICLE_NAME_1, IMAGE_URL, Arrays.asList(VIDEO_URL_1, VIDEO_URL_2))));
+
+        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
+        instance.setAssetsServiceClient(mockAssetsServiceClient);
+
+        Future<RichArticle> result = instance.enrichArticleWithId(ARTICLE_ID_1);
+        failingVideoFuture.completeExceptionally(new IllegalStateException());
+
+        try {
+            result.get();
+            fail("Expected an ExecutionException");
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause(), instanceOf(IllegalStateException.class));
+        }
+        assertTrue(outstandingVideoFuture.isCancelled());
+    }
+
+    /**
+     * Test of enrichArticlesWithIds method, of class SimpleArticleEnricher when
+     * one article in the batch is cancelled while its hero image, shared with
+     * another article, is still outstanding. We expect the image to carry on
+     * for the other article, and only be cancelled once that is cancelled
+     * too.
+     */
+    @Test
+    public void testEnrichArticlesWithIdsCancelKeepsSharedAssets() {
+        System.out.println("testEnrichArticlesWithIdsCancelKeepsSharedAssets");
+
+        SimpleArticleEnricher instance = new SimpleArticleEnricher();
+        instance.setTimeoutSeconds(3);
+
+        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
+        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
+
+        CompletableFuture<Image> imageFuture = new CompletableFuture<>();
+        Mockito.when(mockAssetsServiceClient.getImageById(IMAGE_URL)).thenReturn(imageFuture);
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
+                .thenReturn(CompletableFuture.completedFuture(
+                        new ArticleReference(ARTICLE_ID_1, ARTICLE_NAME_1, IMAGE_URL, Arrays.asList())));
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_2))
+                .thenReturn(CompletableFuture.completedFuture(
+                        new ArticleReference(ARTICLE_ID_2, ARTICLE_NAME_2, IMAGE_URL, Arrays.asList())));
+
+        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
+        instance.setAssetsServiceClient(mockAssetsServiceClient);
+
+        Map<String, Future<RichArticle>> results = instance.enrichArticlesWithIds(Arrays.asList(ARTICLE_ID_1, ARTICLE_ID_2));
+
+        results.get(ARTICLE_ID_1).cancel(true);
+        assertFalse(imageFuture.isCancelled());
+
+        results.get(ARTICLE_ID_2).cancel(true);
+        assertTrue(imageFuture.isCancelled());
+        Mockito.verify(mockAssetsServiceClient, Mockito.times(1)).getImageById(IMAGE_URL);
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class SimpleArticleEnricher when
+     * the ArticleReference lists the same videos more than once and they
+     * arrive in the reverse order. We expect a single call per distinct video,
+     * and the videos in the order they first appear in the reference.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testEnrichArticleWithIdDuplicateVideos() throws InterruptedException, ExecutionException {
+        System.out.println("testEnrichArticleWithIdDuplicateVideos");
+
+        SimpleArticleEnricher instance = new SimpleArticleEnricher();
+        instance.setTimeoutSeconds(3);
+
+        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
+        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
+
+        CompletableFuture<Video> videoFuture1 = new CompletableFuture<>();
+        CompletableFuture<Video> videoFuture2 = new CompletableFuture<>();
+        CompletableFuture<Video> videoFuture3 = new CompletableFuture<>();
+        Mockito.when(mockAssetsServiceClient.getImageById(IMAGE_URL))
+                .thenReturn(CompletableFuture.completedFuture(IMAGE));
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_1)).thenReturn(videoFuture1);
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_2)).thenReturn(videoFuture2);
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_3)).thenReturn(videoFuture3);
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
+                .thenReturn(CompletableFuture.completedFuture(new ArticleReference(ARTICLE_ID_1, ARTICLE_NAME_1, IMAGE_URL,
+                        Arrays.asList(VIDEO_URL_2, VIDEO_URL_1, VIDEO_URL_2, VIDEO_URL_3, VIDEO_URL_1, VIDEO_URL_2))));
+
+        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
+        instance.setAssetsServiceClient(mockAssetsServiceClient);
+
+        Future<RichArticle> result = instance.enrichArticleWithId(ARTICLE_ID_1);
+        videoFuture3.complete(VIDEO_3);
+        videoFuture1.complete(VIDEO_1);
+        assertFalse(result.isDone());
+        videoFuture2.complete(VIDEO_2);
+
+        RichArticle richArticle = result.get();
+
+        assertEquals(Arrays.asList(VIDEO_2, VIDEO_1, VIDEO_3), new ArrayList<>(richArticle.getVideos()));
+        Mockito.verify(mockAssetsServiceClient, Mockito.times(1)).getVideoById(VIDEO_URL_1);
+        Mockito.verify(mockAssetsServiceClient, Mockito.times(1)).getVideoById(VIDEO_URL_2);
+        Mockito.verify(mockAssetsServiceClient, Mockito.times(1)).getVideoById(VIDEO_URL_3);
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class SimpleArticleEnricher with
+     * a Retrier, when one video fails the first time it is asked for. We
+     * expect only that video to be asked for again, a complete RichArticle,
+     * and the retry in the metrics.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testEnrichArticleWithIdRetriesFailedCall() throws InterruptedException, ExecutionException {
+        System.out.println("testEnrichArticleWithIdRetriesFailedCall");
+
+        SimpleArticleEnricher instance = new SimpleArticleEnricher();
+        instance.setTimeoutSeconds(3);
+        Retrier retrier = new Retrier();
+        retrier.setBackoff(1, 5, TimeUnit.MILLISECONDS);
+        instance.setRetrier(retrier);
+        InMemoryEnricherMetrics metrics = new InMemoryEnricherMetrics();
+        instance.setMetrics(metrics);
+
+        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
+        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
+
+        Mockito.when(mockAssetsServiceClient.getImageById(IMAGE_URL))
+                .thenReturn(CompletableFuture.completedFuture(IMAGE));
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_1))
+                .thenReturn(CompletableFuture.completedFuture(VIDEO_1));
+        CompletableFuture<Video> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException());
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_2))
+                .thenReturn(failed, CompletableFuture.completedFuture(VIDEO_2));
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
+                .thenReturn(CompletableFuture.completedFuture(
+                        new ArticleReference(ARTICLE_ID_1, ARTICLE_NAME_1, IMAGE_URL, Arrays.asList(VIDEO_URL_1, VIDEO_URL_2))));
+
+        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
+        instance.setAssetsServiceClient(mockAssetsServiceClient);
+
+        RichArticle richArticle = instance.enrichArticleWithId(ARTICLE_ID_1).get();
+
+        assertEquals(Arrays.asList(VIDEO_1, VIDEO_2), new ArrayList<>(richArticle.getVideos()));
+        Mockito.verify(mockAssetsServiceClient, Mockito.times(1)).getVideoById(VIDEO_URL_1);
+        Mockito.verify(mockAssetsServiceClient, Mockito.times(2)).getVideoById(VIDEO_URL_2);
+        assertEquals(1, metrics.getStage(Stage.VIDEO).getRetries());
+        assertEquals(0, metrics.getStage(Stage.VIDEO).getFailures());
+        assertEquals(2, metrics.getStage(Stage.VIDEO).getLatency().getCount());
+    }
+
+    /**
+     * Test of enrichArticleWithId method, of class SimpleArticleEnricher with
+     * a projection. We expect only the assets it includes to be asked for:
+     * the hero image and no videos for a card, and the first two videos and
+     * no image for the other.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testEnrichArticleWithIdProjection() throws InterruptedException, ExecutionException {
+        System.out.println("testEnrichArticleWithIdProjection");
+
+        SimpleArticleEnricher instance = new SimpleArticleEnricher();
+        instance.setTimeoutSeconds(3);
+
+        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
+        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
+
+        Mockito.when(mockAssetsServiceClient.getImageById(IMAGE_URL))
+                .thenReturn(CompletableFuture.completedFuture(IMAGE));
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_1))
+                .thenReturn(CompletableFuture.completedFuture(VIDEO_1));
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_2))
+                .thenReturn(CompletableFuture.completedFuture(VIDEO_2));
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
+                .thenReturn(CompletableFuture.completedFuture(
+                        new ArticleReference(ARTICLE_ID_1, ARTICLE_NAME_1, IMAGE_URL, VIDEO_URLS)));
+
+        instance.setArticleRepositoryClient(mockArticleRepositoryClient);
+        instance.setAssetsServiceClient(mockAssetsServiceClient);
+
+        RichArticle card = instance.enrichArticleWithId(ARTICLE_ID_1, Projection.HERO_IMAGE).get();
+        assertEquals(ARTICLE_NAME_1, card.getName());
+        assertEquals(IMAGE, card.getHeroImage());
+        assertTrue(card.getVideos().isEmpty());
+        Mockito.verify(mockAssetsServiceClient, Mockito.never()).getVideoById(any());
+
+        RichArticle firstVideos = instance.enrichArticleWithId(ARTICLE_ID_1, Projection.firstVideos(2)).get();
+        assertNull(firstVideos.getHeroImage());
+        assertEquals(Arrays.asList(VIDEO_1, VIDEO_2), new ArrayList<>(firstVideos.getVideos()));
+        Mockito.verify(mockAssetsServiceClient, Mockito.times(1)).getImageById(IMAGE_URL);
+        Mockito.verify(mockAssetsServiceClient, Mockito.never()).getVideoById(VIDEO_URL_3);
+    }
+}
@@ -0,0 +1,218 @@
+package culturetrip.articles;
+
+import culturetrip.articles.concurrent.Futures;
+import culturetrip.articles.models.RichArticle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author mball
+ */
+public class StreamingArticleEnricherTest {
+
+    private static final int ARTICLE_COUNT = 50;
+
+    public StreamingArticleEnricherTest() {
+    }
+
+    /**
+     * Test of the StreamingArticleEnricher when it is ordered and the earlier
+     * articles take longer than the later ones. We expect every article in the
+     * order its id was published, then completion.
+     *
+     * @throws java.lang.InterruptedException
+     */
+    @Test
+    public void testOrdered() throws InterruptedException {
+        System.out.println("testOrdered");
+
+        StreamingArticleEnricher instance = new StreamingArticleEnricher(articleId -> {
+            CompletableFuture<RichArticle> richArticle = new CompletableFuture<>();
+            long delay = ARTICLE_COUNT - Integer.parseInt(articleId.substring("article".length()));
+            Futures.scheduler().schedule(() -> richArticle.complete(article(articleId)), delay / 5, TimeUnit.MILLISECONDS);
+            return richArticle;
+        });
+        instance.setOrdered(true);
+        instance.setMaxInFlight(8);
+
+        CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        publish(instance, subscriber, ARTICLE_COUNT);
+
+        assertTrue(subscriber.done.await(5, TimeUnit.SECONDS));
+        assertNull(subscriber.error);
+        assertEquals(articleIds(ARTICLE_COUNT), subscriber.articleIds());
+    }
+
+    /**
+     * Test of the StreamingArticleEnricher when the enrichments don't complete
+     * by themselves. We expect no more than the maximum in flight to be
+     * started, and more to be started as they complete.
+     *
+     * @throws java.lang.InterruptedException
+     */
+    @Test
+    public void testBoundedInFlight() throws InterruptedException {
+        System.out.println("testBoundedInFlight");
+
+        List<CompletableFuture<RichArticle>> enrichments = new CopyOnWriteArrayList<>();
+        StreamingArticleEnricher instance = new StreamingArticleEnricher(articleId -> {
+            CompletableFuture<RichArticle> richArticle = new CompletableFuture<>();
+            enrichments.add(richArticle);
+            return richArticle;
+        });
+        instance.setMaxInFlight(4);
+
+        CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        publish(instance, subscriber, ARTICLE_COUNT);
+        TimeUnit.MILLISECONDS.sleep(100);
+        assertEquals(4, enrichments.size());
+
+        for (int i = 0; i < ARTICLE_COUNT; i++) {
+            awaitSize(enrichments, i + 1);
+            enrichments.get(i).complete(article("article" + i));
+        }
+
+        assertTrue(subscriber.done.await(5, TimeUnit.SECONDS));
+        assertEquals(ARTICLE_COUNT, subscriber.articles.size());
+    }
+
+    /**
+     * Test of the StreamingArticleEnricher when the subscriber only asks for
+     * two articles. We expect only those two to be passed on, and no more to be
+     * enriched than those plus the maximum in flight.
+     *
+     * @throws java.lang.InterruptedException
+     */
+    @Test
+    public void testBackpressure() throws InterruptedException {
+        System.out.println("testBackpressure");
+
+        List<String> enriched = new CopyOnWriteArrayList<>();
+        StreamingArticleEnricher instance = new StreamingArticleEnricher(articleId -> {
+            enriched.add(articleId);
+            return CompletableFuture.completedFuture(article(articleId));
+        });
+        instance.setMaxInFlight(4);
+
+        CollectingSubscriber subscriber = new CollectingSubscriber(2);
+        publish(instance, subscriber, ARTICLE_COUNT);
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        assertEquals(2, subscriber.articles.size());
+        assertEquals(6, enriched.size());
+        assertEquals(1, subscriber.done.getCount());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertTrue(subscriber.done.await(5, TimeUnit.SECONDS));
+        assertEquals(ARTICLE_COUNT, subscriber.articles.size());
+    }
+
+    /**
+     * Test of the StreamingArticleEnricher when one of the articles fails. We
+     * expect the stream to fail with its exception, or if it is set to skip
+     * failures, the article to be left out and counted.
+     *
+     * @throws java.lang.InterruptedException
+     */
+    @Test
+    public void testFailure() throws InterruptedException {
+        System.out.println("testFailure");
+
+        ArticleEnricher articleEnricher = articleId -> articleId.equals("article7")
+                ? Futures.failed(new IllegalStateException())
+                : CompletableFuture.completedFuture(article(articleId));
+
+        CollectingSubscriber failing = new CollectingSubscriber(Long.MAX_VALUE);
+        publish(new StreamingArticleEnricher(articleEnricher), failing, ARTICLE_COUNT);
+        assertTrue(failing.done.await(5, TimeUnit.SECONDS));
+        assertThat(failing.error, instanceOf(IllegalStateException.class));
+
+        StreamingArticleEnricher skipping = new StreamingArticleEnricher(articleEnricher);
+        skipping.setSkipFailures(true);
+        CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        publish(skipping, subscriber, ARTICLE_COUNT);
+        assertTrue(subscriber.done.await(5, TimeUnit.SECONDS));
+        assertNull(subscriber.error);
+        assertEquals(ARTICLE_COUNT - 1, subscriber.articles.size());
+        assertEquals(1, skipping.getFailureCount());
+    }
+
+    private static void publish(StreamingArticleEnricher instance, Flow.Subscriber<RichArticle> subscriber, int count) {
+        SubmissionPublisher<String> publisher = new SubmissionPublisher<>();
+        publisher.subscribe(instance);
+        instance.subscribe(subscriber);
+        new Thread(() -> {
+            articleIds(count).forEach(publisher::submit);
+            publisher.close();
+        }).start();
+    }
+
+    private static void awaitSize(List<?> list, int size) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (list.size() < size && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+    }
+
+    private static List<String> articleIds(int count) {
+        return IntStream.range(0, count).mapToObj(i -> "article" + i).collect(Collectors.toList());
+    }
+
+    private static RichArticle article(String articleId) {
+        return new RichArticle(articleId, "name of " + articleId, null, Collections.emptyList());
+    }
+
+    private static final class CollectingSubscriber implements Flow.Subscriber<RichArticle> {
+
+        private final long initialRequest;
+        private final List<RichArticle> articles = new CopyOnWriteArrayList<>();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Flow.Subscription subscription;
+        private volatile Throwable error;
+
+        CollectingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        List<String> articleIds() {
+            List<String> articleIds = new ArrayList<>();
+            articles.forEach(article -> articleIds.add(article.getId()));
+            return articleIds;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initialRequest);
+        }
+
+        @Override
+        public void onNext(RichArticle item) {
+            articles.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            done.countDown();
+        }
+    }
+}
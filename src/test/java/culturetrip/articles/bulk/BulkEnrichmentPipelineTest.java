@@ -0,0 +1,126 @@
+package culturetrip.articles.bulk;
+
+import culturetrip.articles.ArticleEnricher;
+import culturetrip.articles.concurrent.Futures;
+import culturetrip.articles.models.RichArticle;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author mball
+ */
+public class BulkEnrichmentPipelineTest {
+
+    private static final int ARTICLE_COUNT = 100;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public BulkEnrichmentPipelineTest() {
+    }
+
+    /**
+     * Test of run method, of class BulkEnrichmentPipeline with blank lines and
+     * Windows line endings in the id file and one article that fails. We
+     * expect a line of JSON for every other article, in the order of the ids,
+     * and the checkpoint to be gone at the end.
+     *
+     * @throws java.io.IOException
+     * @throws java.lang.InterruptedException
+     */
+    @Test
+    public void testRun() throws IOException, InterruptedException {
+        System.out.println("testRun");
+
+        Path input = folder.newFile("ids.txt").toPath();
+        Files.write(input, ("article1\r\n\r\n  article2\narticle3\r\narticle4").getBytes(StandardCharsets.UTF_8));
+        Path output = folder.getRoot().toPath().resolve("articles.ndjson");
+
+        BulkEnrichmentPipeline instance = new BulkEnrichmentPipeline(articleId -> articleId.equals("article3")
+                ? Futures.failed(new IllegalStateException())
+                : CompletableFuture.completedFuture(article(articleId)));
+        instance.setProgressStream(new PrintStream(new ByteArrayOutputStream()));
+        instance.run(input, output);
+
+        assertEquals(lines("article1", "article2", "article4"), Files.readAllLines(output));
+        assertEquals(3, instance.getRecordCount());
+        assertEquals(1, instance.getFailureCount());
+        assertFalse(Files.exists(output.resolveSibling("articles.ndjson.checkpoint")));
+    }
+
+    /**
+     * Test of run method, of class BulkEnrichmentPipeline when the first run
+     * is interrupted part way through. We expect the second run to carry on
+     * from the checkpoint, and the output to end up with every article exactly
+     * once, in order.
+     *
+     * @throws java.io.IOException
+     * @throws java.lang.InterruptedException
+     */
+    @Test
+    public void testRunResumes() throws IOException, InterruptedException {
+        System.out.println("testRunResumes");
+
+        List<String> articleIds = IntStream.range(0, ARTICLE_COUNT).mapToObj(i -> "article" + i).collect(Collectors.toList());
+        Path input = folder.newFile("ids.txt").toPath();
+        Files.write(input, articleIds);
+        Path output = folder.getRoot().toPath().resolve("articles.ndjson");
+
+        Thread pipelineThread = Thread.currentThread();
+        ArticleEnricher stalling = articleId -> {
+            if (articleId.equals("article55")) {
+                Futures.scheduler().schedule(pipelineThread::interrupt, 50, TimeUnit.MILLISECONDS);
+                return new CompletableFuture<>();
+            }
+            return CompletableFuture.completedFuture(article(articleId));
+        };
+        BulkEnrichmentPipeline interrupted = new BulkEnrichmentPipeline(stalling);
+        interrupted.setParallelism(4);
+        interrupted.setCheckpointInterval(10);
+        interrupted.setProgressStream(new PrintStream(new ByteArrayOutputStream()));
+        try {
+            interrupted.run(input, output);
+            fail("Expected an InterruptedException");
+        } catch (InterruptedException ex) {
+            //expected.
+        }
+        Checkpoint checkpoint = Checkpoint.read(output.resolveSibling("articles.ndjson.checkpoint"));
+        assertEquals(50, checkpoint.getRecordCount());
+
+        BulkEnrichmentPipeline resumed = new BulkEnrichmentPipeline(
+                articleId -> CompletableFuture.completedFuture(article(articleId)));
+        resumed.setProgressStream(new PrintStream(new ByteArrayOutputStream()));
+        resumed.run(input, output);
+
+        assertEquals(lines(articleIds.toArray(new String[ARTICLE_COUNT])), Files.readAllLines(output));
+        assertEquals(ARTICLE_COUNT, resumed.getRecordCount());
+    }
+
+    private static List<String> lines(String... articleIds) {
+        return Arrays.stream(articleIds).map(articleId -> {
+            StringBuilder json = new StringBuilder();
+            RichArticleJson.append(article(articleId), json);
+            return json.toString();
+        }).collect(Collectors.toList());
+    }
+
+    private static RichArticle article(String articleId) {
+        return new RichArticle(articleId, "name of " + articleId, null, Collections.emptyList());
+    }
+}
@@ -0,0 +1,61 @@
+package culturetrip.articles.bulk;
+
+import culturetrip.articles.models.Image;
+import culturetrip.articles.models.MissingAsset;
+import culturetrip.articles.models.RichArticle;
+import culturetrip.articles.models.Video;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeoutException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author mball
+ */
+public class RichArticleJsonTest {
+
+    public RichArticleJsonTest() {
+    }
+
+    /**
+     * Test of append method, of class RichArticleJson for a complete article
+     * with text that needs escaping. We expect it all on one line, with the
+     * quotes, backslashes and control characters escaped.
+     */
+    @Test
+    public void testAppend() {
+        System.out.println("testAppend");
+
+        RichArticle richArticle = new RichArticle("article1", "Tom's \"best\" tapas\\bars",
+                new Image("image1", "line one\nline two"),
+                Arrays.asList(new Video("video1", "tab\there"), new Video("video2", "caf\u00e9 \u0001")));
+
+        StringBuilder json = new StringBuilder();
+        RichArticleJson.append(richArticle, json);
+
+        assertEquals("{\"id\":\"article1\",\"name\":\"Tom's \\\"best\\\" tapas\\\\bars\","
+                + "\"heroImage\":{\"id\":\"image1\",\"altText\":\"line one\\nline two\"},"
+                + "\"videos\":[{\"id\":\"video1\",\"caption\":\"tab\\there\"},"
+                + "{\"id\":\"video2\",\"caption\":\"caf\u00e9 \\u0001\"}]}", json.toString());
+    }
+
+    /**
+     * Test of append method, of class RichArticleJson for a partial article
+     * with no hero image. We expect a null hero image and the missing assets.
+     */
+    @Test
+    public void testAppendPartial() {
+        System.out.println("testAppendPartial");
+
+        RichArticle richArticle = new RichArticle("article1", "name", null, Collections.emptyList(),
+                Arrays.asList(new MissingAsset(MissingAsset.Type.IMAGE, "image1", new TimeoutException())));
+
+        StringBuilder json = new StringBuilder();
+        RichArticleJson.append(richArticle, json);
+
+        assertEquals("{\"id\":\"article1\",\"name\":\"name\",\"heroImage\":null,\"videos\":[],"
+                + "\"missingAssets\":[{\"type\":\"IMAGE\",\"url\":\"image1\",\"timedOut\":true}]}", json.toString());
+    }
+}
@@ -0,0 +1,188 @@
+package culturetrip.articles.cache;
+
+import culturetrip.articles.models.Image;
+import culturetrip.articles.models.MissingAsset;
+import culturetrip.articles.models.RichArticle;
+import culturetrip.articles.models.Video;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author mball
+ */
+public class MappedRichArticleStoreTest {
+
+    private static final int CAPACITY = 64 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public MappedRichArticleStoreTest() {
+    }
+
+    /**
+     * Test of put and get methods, of class MappedRichArticleStore across a
+     * restart. We expect the article to come back intact from the reopened
+     * file, and an invalidated one to stay gone.
+     *
+     * @throws java.io.IOException
+     */
+    @Test
+    public void testGetAfterReopen() throws IOException {
+        System.out.println("testGetAfterReopen");
+
+        Path path = folder.getRoot().toPath().resolve("articles.store");
+        try (MappedRichArticleStore instance = new MappedRichArticleStore(path, CAPACITY)) {
+            instance.put(article("article1"), 1, TimeUnit.HOURS);
+            instance.put(article("article2"), 1, TimeUnit.HOURS);
+            instance.invalidate("article2");
+        }
+
+        try (MappedRichArticleStore instance = new MappedRichArticleStore(path, CAPACITY)) {
+            RichArticle richArticle = instance.get("article1").getValue();
+            assertEquals("article1", richArticle.getId());
+            assertEquals("Tapas in cafés", richArticle.getName());
+            assertEquals("alt text", richArticle.getHeroImage().getAltText());
+            assertEquals("video2", new ArrayList<>(richArticle.getVideos()).get(1).getId());
+            assertNull(new ArrayList<>(richArticle.getVideos()).get(1).getCaption());
+            assertNull(instance.get("article2"));
+            assertEquals(1, instance.size());
+        }
+    }
+
+    /**
+     * Test of get method, of class MappedRichArticleStore when the entry has
+     * passed its time to live. We expect a miss.
+     *
+     * @throws java.io.IOException
+     * @throws java.lang.InterruptedException
+     */
+    @Test
+    public void testGetExpired() throws IOException, InterruptedException {
+        System.out.println("testGetExpired");
+
+        try (MappedRichArticleStore instance = new MappedRichArticleStore(folder.newFile().toPath(), CAPACITY)) {
+            instance.put(article("article1"), 10, TimeUnit.MILLISECONDS);
+            TimeUnit.MILLISECONDS.sleep(20);
+
+            assertNull(instance.get("article1"));
+            assertEquals(1, instance.getStats().getExpirationCount());
+        }
+    }
+
+    /**
+     * Test of put method, of class MappedRichArticleStore when the same few
+     * articles are written over and over until the file fills up. We expect
+     * compaction to make room, and the latest of each to be kept.
+     *
+     * @throws java.io.IOException
+     */
+    @Test
+    public void testPutCompacts() throws IOException {
+        System.out.println("testPutCompacts");
+
+        try (MappedRichArticleStore instance = new MappedRichArticleStore(folder.newFile().toPath(), 4096)) {
+            for (int i = 0; i < 200; i++) {
+                RichArticle richArticle = new RichArticle("article" + (i % 5), "version " + i, null, Collections.emptyList());
+                assertTrue(instance.put(richArticle, 1, TimeUnit.HOURS));
+            }
+
+            assertTrue(instance.getCompactionCount() > 0);
+            assertEquals(5, instance.size());
+            for (int i = 0; i < 5; i++) {
+                assertEquals("version " + (195 + i), instance.get("article" + i).getValue().getName());
+            }
+        }
+    }
+
+    /**
+     * Test of put method, of class MappedRichArticleStore when the file is
+     * full of articles that are all still live. We expect the oldest to be
+     * evicted to make room for the new ones, and compaction to free enough
+     * each time that it only happens every so often rather than on every put.
+     *
+     * @throws java.io.IOException
+     */
+    @Test
+    public void testPutEvictsOldest() throws IOException {
+        System.out.println("testPutEvictsOldest");
+
+        try (MappedRichArticleStore instance = new MappedRichArticleStore(folder.newFile().toPath(), 4096)) {
+            for (int i = 0; i < 500; i++) {
+                RichArticle richArticle = new RichArticle("article" + i, "name", null, Collections.emptyList());
+                assertTrue(instance.put(richArticle, 1, TimeUnit.HOURS));
+            }
+
+            assertTrue("Compacted " + instance.getCompactionCount() + " times", instance.getCompactionCount() < 100);
+            assertEquals(500 - instance.size(), instance.getStats().getEvictionCount());
+            assertNull(instance.get("article0"));
+            assertNotNull(instance.get("article499"));
+        }
+    }
+
+    /**
+     * Test of the MappedRichArticleStore constructor when the last record was
+     * only partly written. We expect it to be dropped and the ones before it
+     * kept.
+     *
+     * @throws java.io.IOException
+     */
+    @Test
+    public void testOpenDropsTornRecord() throws IOException {
+        System.out.println("testOpenDropsTornRecord");
+
+        Path path = folder.getRoot().toPath().resolve("articles.store");
+        int torn;
+        try (MappedRichArticleStore instance = new MappedRichArticleStore(path, CAPACITY)) {
+            instance.put(article("article1"), 1, TimeUnit.HOURS);
+            torn = instance.getUsedBytes();
+            instance.put(article("article2"), 1, TimeUnit.HOURS);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3, 4}), torn + 20);
+        }
+
+        try (MappedRichArticleStore instance = new MappedRichArticleStore(path, CAPACITY)) {
+            assertNotNull(instance.get("article1"));
+            assertNull(instance.get("article2"));
+            assertEquals(torn, instance.getUsedBytes());
+        }
+    }
+
+    /**
+     * Test of put method, of class MappedRichArticleStore with a partial
+     * article. We expect it not to be stored.
+     *
+     * @throws java.io.IOException
+     */
+    @Test
+    public void testPutPartial() throws IOException {
+        System.out.println("testPutPartial");
+
+        try (MappedRichArticleStore instance = new MappedRichArticleStore(folder.newFile().toPath(), CAPACITY)) {
+            RichArticle partial = new RichArticle("article1", "name", null, Collections.emptyList(),
+                    Arrays.asList(new MissingAsset(MissingAsset.Type.IMAGE, "image1", new TimeoutException())));
+
+            assertFalse(instance.put(partial, 1, TimeUnit.HOURS));
+            assertNull(instance.get("article1"));
+        }
+    }
+
+    private static RichArticle article(String articleId) {
+        return new RichArticle(articleId, "Tapas in cafés", new Image("image1", "alt text"),
+                Arrays.asList(new Video("video1", "caption"), new Video("video2", null)));
+    }
+}
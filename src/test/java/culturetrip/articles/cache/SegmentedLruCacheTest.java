@@ -0,0 +1,53 @@
+package culturetrip.articles.cache;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author mball
+ */
+public class SegmentedLruCacheTest {
+
+    public SegmentedLruCacheTest() {
+    }
+
+    /**
+     * Test of put method, of class SegmentedLruCache when a run of keys that
+     * are only used once goes through a full cache. We expect the key that was
+     * read again to survive, as it was promoted out of probation.
+     */
+    @Test
+    public void testPutScanResistant() {
+        System.out.println("testPutScanResistant");
+
+        SegmentedLruCache<String, String> instance = new SegmentedLruCache<>(10);
+        instance.put("popular", "value");
+        assertEquals("value", instance.getIfPresent("popular"));
+
+        for (int i = 0; i < 100; i++) {
+            instance.put("oneOff" + i, "value");
+        }
+
+        assertEquals("value", instance.getIfPresent("popular"));
+        assertEquals(10, instance.size());
+        assertEquals(91, instance.getStats().getEvictionCount());
+    }
+
+    /**
+     * Test of getIfPresent method, of class SegmentedLruCache when the entry
+     * has passed its time to live. We expect a miss.
+     */
+    @Test
+    public void testGetIfPresentExpired() {
+        System.out.println("testGetIfPresentExpired");
+
+        SegmentedLruCache<String, String> instance = new SegmentedLruCache<>(10);
+        instance.put("key", "value", 0);
+
+        assertNull(instance.getIfPresent("key"));
+        assertEquals(0, instance.size());
+        assertEquals(1, instance.getStats().getMissCount());
+        assertEquals(1, instance.getStats().getExpirationCount());
+    }
+}
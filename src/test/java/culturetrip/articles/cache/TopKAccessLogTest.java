@@ -0,0 +1,139 @@
+package culturetrip.articles.cache;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author mball
+ */
+public class TopKAccessLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public TopKAccessLogTest() {
+    }
+
+    /**
+     * Test of getTopK method, of class TopKAccessLog when a few articles are
+     * asked for far more often than a long tail of others. We expect those
+     * few at the top, most popular first, with the collisions in the tail
+     * not getting in the way.
+     */
+    @Test
+    public void testGetTopK() {
+        System.out.println("testGetTopK");
+
+        TopKAccessLog instance = new TopKAccessLog(10);
+        instance.setSampleRate(1);
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            int popular = i % 10;
+            if (popular < 2) {
+                instance.record("popular0");
+            } else if (popular < 4) {
+                instance.record("popular" + (popular - 1));
+            } else {
+                instance.record("tail" + random.nextInt(100000));
+            }
+        }
+
+        assertEquals(new HashSet<>(Arrays.asList("popular0", "popular1", "popular2")), new HashSet<>(instance.getTopK(3)));
+        assertEquals("popular0", instance.getTopK(1).get(0));
+        assertTrue(instance.estimateCount("popular1") >= instance.estimateCount("tail1"));
+    }
+
+    /**
+     * Test of getTopK method, of class TopKAccessLog when an article is
+     * sampled as often as the least popular of a full top K. We expect it not
+     * to take the least popular one's place, as it hasn't beaten it.
+     */
+    @Test
+    public void testGetTopKTieDoesntDisplace() {
+        System.out.println("testGetTopKTieDoesntDisplace");
+
+        TopKAccessLog instance = new TopKAccessLog(2);
+        instance.setSampleRate(1);
+        instance.record("article1");
+        instance.record("article2");
+        instance.record("article3");
+
+        assertEquals(new HashSet<>(Arrays.asList("article1", "article2")), new HashSet<>(instance.getTopK(2)));
+    }
+
+    /**
+     * Test of estimateCount method, of class TopKAccessLog when two ids share
+     * a String.hashCode(). We expect one being asked for not to count towards
+     * the other, as each row of the sketch hashes the ids itself.
+     */
+    @Test
+    public void testEstimateCountSameHashCode() {
+        System.out.println("testEstimateCountSameHashCode");
+
+        assertEquals("AaAa".hashCode(), "BBBB".hashCode());
+        TopKAccessLog instance = new TopKAccessLog(10);
+        instance.setSampleRate(1);
+        for (int i = 0; i < 50; i++) {
+            instance.record("AaAa");
+        }
+
+        assertEquals(50, instance.estimateCount("AaAa"));
+        assertEquals(0, instance.estimateCount("BBBB"));
+    }
+
+    /**
+     * Test of getRising method, of class TopKAccessLog when an article that
+     * was rarely asked for suddenly becomes popular. We expect it to be
+     * rising, and the steadily popular ones not to be.
+     */
+    @Test
+    public void testGetRising() {
+        System.out.println("testGetRising");
+
+        TopKAccessLog instance = new TopKAccessLog(10, 100);
+        instance.setSampleRate(1);
+        for (int i = 0; i < 300; i++) {
+            instance.record("steady" + (i % 4));
+        }
+        for (int i = 0; i < 50; i++) {
+            instance.record(i % 2 == 0 ? "trending" : "steady" + (i % 4));
+        }
+
+        List<String> rising = instance.getRising(5);
+        assertEquals(Arrays.asList("trending"), rising);
+    }
+
+    /**
+     * Test of save and load methods, of class TopKAccessLog. We expect the
+     * top K back, most popular first, and nothing for a file that doesn't
+     * exist.
+     *
+     * @throws java.io.IOException
+     */
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        System.out.println("testSaveAndLoad");
+
+        TopKAccessLog instance = new TopKAccessLog(10);
+        instance.setSampleRate(1);
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j <= i; j++) {
+                instance.record("article" + i);
+            }
+        }
+        Path path = folder.getRoot().toPath().resolve("access.log");
+        instance.save(path);
+
+        assertEquals(Arrays.asList("article2", "article1", "article0"), TopKAccessLog.load(path));
+        assertTrue(TopKAccessLog.load(folder.getRoot().toPath().resolve("missing.log")).isEmpty());
+    }
+}
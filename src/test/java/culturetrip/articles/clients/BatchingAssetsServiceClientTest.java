@@ -0,0 +1,112 @@
+package culturetrip.articles.clients;
+
+import culturetrip.articles.models.Video;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author mball
+ */
+public class BatchingAssetsServiceClientTest {
+
+    private static final int VIDEO_COUNT = 30;
+
+    public BatchingAssetsServiceClientTest() {
+    }
+
+    /**
+     * Test of getVideoById method, of class BatchingAssetsServiceClient when an
+     * article asks for 30 videos at once. We expect them to go out in batches
+     * of the maximum size, each caller to get its own video back, and missing
+     * videos to come back as null.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testGetVideoByIdBatches() throws InterruptedException, ExecutionException {
+        System.out.println("testGetVideoByIdBatches");
+
+        SimulatedAssetsService assetsService = new SimulatedAssetsService(1, 0, TimeUnit.MILLISECONDS);
+        BatchingAssetsServiceClient instance = new BatchingAssetsServiceClient(assetsService);
+        instance.setMaximumBatchSize(10);
+        instance.setLinger(1, TimeUnit.SECONDS);
+
+        List<Future<Video>> videos = new ArrayList<>();
+        for (int i = 0; i < VIDEO_COUNT; i++) {
+            videos.add(instance.getVideoById("video" + i));
+        }
+        Future<Video> missing = instance.getVideoById("missingVideo");
+        instance.getVideoBatcher().flush();
+
+        for (int i = 0; i < VIDEO_COUNT; i++) {
+            assertEquals("video" + i, videos.get(i).get().getId());
+        }
+        assertNull(missing.get());
+        assertEquals(4, assetsService.getRoundTrips());
+        assertEquals(4, instance.getVideoBatcher().getBatchCount());
+    }
+
+    /**
+     * Test of getImageById method, of class BatchingAssetsServiceClient when a
+     * single call doesn't fill a batch. We expect it to be sent once the linger
+     * time is up.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testGetImageByIdLinger() throws InterruptedException, ExecutionException {
+        System.out.println("testGetImageByIdLinger");
+
+        SimulatedAssetsService assetsService = new SimulatedAssetsService(1, 0, TimeUnit.MILLISECONDS);
+        BatchingAssetsServiceClient instance = new BatchingAssetsServiceClient(assetsService);
+        instance.setLinger(5, TimeUnit.MILLISECONDS);
+
+        assertEquals("image", instance.getImageById("image").get().getId());
+        assertEquals(1, assetsService.getRoundTrips());
+    }
+
+    /**
+     * Test of getVideoById method, of class BatchingAssetsServiceClient
+     * compared with calling the service directly for the same 30 videos. We
+     * expect a round trip for each video without batching, and a single one
+     * with it. How much faster that is is measured by BatchingBenchmark in
+     * the benchmarks module.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testBatchingRoundTrips() throws InterruptedException, ExecutionException {
+        System.out.println("testBatchingRoundTrips");
+
+        SimulatedAssetsService unbatched = new SimulatedAssetsService(1, 0, TimeUnit.MILLISECONDS);
+        lookUpVideos(unbatched);
+        assertEquals(VIDEO_COUNT, unbatched.getRoundTrips());
+
+        SimulatedAssetsService assetsService = new SimulatedAssetsService(1, 0, TimeUnit.MILLISECONDS);
+        BatchingAssetsServiceClient batching = new BatchingAssetsServiceClient(assetsService);
+        batching.setLinger(1, TimeUnit.SECONDS);
+        batching.setMaximumBatchSize(VIDEO_COUNT);
+        lookUpVideos(batching);
+        assertEquals(1, assetsService.getRoundTrips());
+        assertEquals(1, batching.getVideoBatcher().getBatchCount());
+    }
+
+    private static void lookUpVideos(AssetsServiceClient client) throws InterruptedException, ExecutionException {
+        List<Future<Video>> videos = new ArrayList<>();
+        for (int i = 0; i < VIDEO_COUNT; i++) {
+            videos.add(client.getVideoById("video" + i));
+        }
+        for (Future<Video> video : videos) {
+            assertNotNull(video.get());
+        }
+    }
+}
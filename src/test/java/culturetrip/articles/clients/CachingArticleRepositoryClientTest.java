@@ -0,0 +1,170 @@
+package culturetrip.articles.clients;
+
+import culturetrip.articles.metrics.InMemoryEnricherMetrics;
+import culturetrip.articles.models.ArticleReference;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.mockito.Mockito;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+
+/**
+ *
+ * @author mball
+ */
+public class CachingArticleRepositoryClientTest {
+
+    private static final String ARTICLE_ID_1 = "articleId1";
+    private static final String ARTICLE_ID_2 = "articleId2";
+    private static final ArticleReference ARTICLE_REFERENCE_1
+            = new ArticleReference(ARTICLE_ID_1, "articleName", "someImageUrl", Arrays.asList("someVideoURL1"));
+    private static final ArticleReference ARTICLE_REFERENCE_2
+            = new ArticleReference(ARTICLE_ID_2, "articleName", "someImageUrl", Arrays.asList("someVideoURL1"));
+
+    public CachingArticleRepositoryClientTest() {
+    }
+
+    /**
+     * Test of getArticleReferenceForId method, of class
+     * CachingArticleRepositoryClient when the same article is asked for twice.
+     * We expect the second call to be answered from the cache, and counted in
+     * the metrics it was given.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testGetArticleReferenceForIdHit() throws InterruptedException, ExecutionException {
+        System.out.println("testGetArticleReferenceForIdHit");
+
+        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
+                .thenReturn(CompletableFuture.completedFuture(ARTICLE_REFERENCE_1));
+
+        CachingArticleRepositoryClient instance = new CachingArticleRepositoryClient(mockArticleRepositoryClient, 10);
+        InMemoryEnricherMetrics metrics = new InMemoryEnricherMetrics();
+        instance.setMetrics(metrics);
+
+        assertSame(ARTICLE_REFERENCE_1, instance.getArticleReferenceForId(ARTICLE_ID_1).get());
+        assertSame(ARTICLE_REFERENCE_1, instance.getArticleReferenceForId(ARTICLE_ID_1).get());
+
+        Mockito.verify(mockArticleRepositoryClient, times(1)).getArticleReferenceForId(ARTICLE_ID_1);
+        assertEquals(1, instance.getStats().getHitCount());
+        assertEquals(1, instance.getStats().getMissCount());
+        assertEquals(1, metrics.getCaches().get("references").getHitCount());
+    }
+
+    /**
+     * Test of getArticleReferenceForId method, of class
+     * CachingArticleRepositoryClient when the article doesn't exist. We expect
+     * the null not to be cached.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testGetArticleReferenceForIdMissingNotCached() throws InterruptedException, ExecutionException {
+        System.out.println("testGetArticleReferenceForIdMissingNotCached");
+
+        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        CachingArticleRepositoryClient instance = new CachingArticleRepositoryClient(mockArticleRepositoryClient, 10);
+
+        assertNull(instance.getArticleReferenceForId(ARTICLE_ID_1).get());
+        assertNull(instance.getArticleReferenceForId(ARTICLE_ID_1).get());
+
+        Mockito.verify(mockArticleRepositoryClient, times(2)).getArticleReferenceForId(ARTICLE_ID_1);
+    }
+
+    /**
+     * Test of getArticleReferenceForId method, of class
+     * CachingArticleRepositoryClient when the entry has expired. We expect it
+     * to go back to the repository.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testGetArticleReferenceForIdExpired() throws InterruptedException, ExecutionException {
+        System.out.println("testGetArticleReferenceForIdExpired");
+
+        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
+                .thenReturn(CompletableFuture.completedFuture(ARTICLE_REFERENCE_1));
+
+        CachingArticleRepositoryClient instance = new CachingArticleRepositoryClient(mockArticleRepositoryClient, 10);
+        instance.setExpireAfterWrite(20, TimeUnit.MILLISECONDS);
+
+        instance.getArticleReferenceForId(ARTICLE_ID_1).get();
+        TimeUnit.MILLISECONDS.sleep(50);
+        instance.getArticleReferenceForId(ARTICLE_ID_1).get();
+
+        Mockito.verify(mockArticleRepositoryClient, times(2)).getArticleReferenceForId(ARTICLE_ID_1);
+        assertEquals(1, instance.getStats().getExpirationCount());
+    }
+
+    /**
+     * Test of getArticleReferenceForId method, of class
+     * CachingArticleRepositoryClient when the entry is due a refresh. We expect
+     * the cached value straight away and one reload in the background.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testGetArticleReferenceForIdRefresh() throws InterruptedException, ExecutionException {
+        System.out.println("testGetArticleReferenceForIdRefresh");
+
+        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
+        CompletableFuture<ArticleReference> pendingReload = new CompletableFuture<>();
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
+                .thenReturn(CompletableFuture.completedFuture(ARTICLE_REFERENCE_1))
+                .thenReturn(pendingReload);
+
+        CachingArticleRepositoryClient instance = new CachingArticleRepositoryClient(mockArticleRepositoryClient, 10);
+        instance.setRefreshAfterWrite(20, TimeUnit.MILLISECONDS);
+
+        instance.getArticleReferenceForId(ARTICLE_ID_1).get();
+        TimeUnit.MILLISECONDS.sleep(50);
+
+        assertSame(ARTICLE_REFERENCE_1, instance.getArticleReferenceForId(ARTICLE_ID_1).get());
+        assertSame(ARTICLE_REFERENCE_1, instance.getArticleReferenceForId(ARTICLE_ID_1).get());
+
+        Mockito.verify(mockArticleRepositoryClient, times(2)).getArticleReferenceForId(ARTICLE_ID_1);
+        assertEquals(1, instance.getStats().getRefreshCount());
+    }
+
+    /**
+     * Test of getArticleReferenceForId method, of class
+     * CachingArticleRepositoryClient when there are more articles than fit. We
+     * expect the oldest to be evicted and counted.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testGetArticleReferenceForIdEviction() throws InterruptedException, ExecutionException {
+        System.out.println("testGetArticleReferenceForIdEviction");
+
+        ArticleRepositoryClient mockArticleRepositoryClient = mock(ArticleRepositoryClient.class);
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_1))
+                .thenReturn(CompletableFuture.completedFuture(ARTICLE_REFERENCE_1));
+        Mockito.when(mockArticleRepositoryClient.getArticleReferenceForId(ARTICLE_ID_2))
+                .thenReturn(CompletableFuture.completedFuture(ARTICLE_REFERENCE_2));
+
+        CachingArticleRepositoryClient instance = new CachingArticleRepositoryClient(mockArticleRepositoryClient, 1);
+
+        instance.getArticleReferenceForId(ARTICLE_ID_1).get();
+        instance.getArticleReferenceForId(ARTICLE_ID_2).get();
+        instance.getArticleReferenceForId(ARTICLE_ID_1).get();
+
+        Mockito.verify(mockArticleRepositoryClient, times(2)).getArticleReferenceForId(ARTICLE_ID_1);
+        assertEquals(2, instance.getStats().getEvictionCount());
+    }
+}
@@ -0,0 +1,128 @@
+package culturetrip.articles.clients;
+
+import culturetrip.articles.metrics.InMemoryEnricherMetrics;
+import culturetrip.articles.models.Image;
+import culturetrip.articles.models.Video;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.mockito.Mockito;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+
+/**
+ *
+ * @author mball
+ */
+public class CachingAssetsServiceClientTest {
+
+    private static final String IMAGE_URL = "someImageUrl";
+    private static final String VIDEO_URL_1 = "someVideoURL1";
+    private static final String NON_EXISTENT_VIDEO_URL = "someNonExistentVideoURL";
+
+    private static final Image IMAGE = new Image(IMAGE_URL, "someAltText");
+    private static final Video VIDEO_1 = new Video(VIDEO_URL_1, "some Caption 1");
+
+    public CachingAssetsServiceClientTest() {
+    }
+
+    /**
+     * Test of getImageById and getVideoById methods, of class
+     * CachingAssetsServiceClient when the same assets are asked for twice. We
+     * expect each to be fetched once and counted in its own region, which the
+     * metrics it was given report.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testGetAssetsHit() throws InterruptedException, ExecutionException {
+        System.out.println("testGetAssetsHit");
+
+        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
+        Mockito.when(mockAssetsServiceClient.getImageById(IMAGE_URL))
+                .thenReturn(CompletableFuture.completedFuture(IMAGE));
+        Mockito.when(mockAssetsServiceClient.getVideoById(VIDEO_URL_1))
+                .thenReturn(CompletableFuture.completedFuture(VIDEO_1));
+
+        CachingAssetsServiceClient instance = new CachingAssetsServiceClient(mockAssetsServiceClient, 10, 10);
+        InMemoryEnricherMetrics metrics = new InMemoryEnricherMetrics();
+        instance.setMetrics(metrics);
+
+        for (int i = 0; i < 2; i++) {
+            assertSame(IMAGE, instance.getImageById(IMAGE_URL).get());
+            assertSame(VIDEO_1, instance.getVideoById(VIDEO_URL_1).get());
+        }
+
+        Mockito.verify(mockAssetsServiceClient, times(1)).getImageById(IMAGE_URL);
+        Mockito.verify(mockAssetsServiceClient, times(1)).getVideoById(VIDEO_URL_1);
+        assertEquals(1, instance.getImageStats().getHitCount());
+        assertEquals(1, instance.getVideoStats().getHitCount());
+        assertSame(instance.getImageStats(), metrics.getCaches().get("images"));
+        assertSame(instance.getVideoStats(), metrics.getCaches().get("videos"));
+    }
+
+    /**
+     * Test of getVideoById method, of class CachingAssetsServiceClient when the
+     * video doesn't exist. We expect the null to be cached until the negative
+     * time to live runs out.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testGetVideoByIdNegativeCaching() throws InterruptedException, ExecutionException {
+        System.out.println("testGetVideoByIdNegativeCaching");
+
+        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
+        Mockito.when(mockAssetsServiceClient.getVideoById(NON_EXISTENT_VIDEO_URL))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        CachingAssetsServiceClient instance = new CachingAssetsServiceClient(mockAssetsServiceClient, 10, 10);
+        instance.setNegativeExpireAfterWrite(50, TimeUnit.MILLISECONDS);
+
+        assertNull(instance.getVideoById(NON_EXISTENT_VIDEO_URL).get());
+        assertNull(instance.getVideoById(NON_EXISTENT_VIDEO_URL).get());
+        Mockito.verify(mockAssetsServiceClient, times(1)).getVideoById(NON_EXISTENT_VIDEO_URL);
+
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        assertNull(instance.getVideoById(NON_EXISTENT_VIDEO_URL).get());
+        Mockito.verify(mockAssetsServiceClient, times(2)).getVideoById(NON_EXISTENT_VIDEO_URL);
+    }
+
+    /**
+     * Test of getImageById method, of class CachingAssetsServiceClient when the
+     * asset service fails. We expect the failure not to be cached.
+     *
+     * @throws java.lang.InterruptedException
+     */
+    @Test
+    public void testGetImageByIdFailureNotCached() throws InterruptedException {
+        System.out.println("testGetImageByIdFailureNotCached");
+
+        AssetsServiceClient mockAssetsServiceClient = mock(AssetsServiceClient.class);
+        CompletableFuture<Image> failedFuture = new CompletableFuture<>();
+        failedFuture.completeExceptionally(new IllegalStateException());
+        Mockito.when(mockAssetsServiceClient.getImageById(IMAGE_URL))
+                .thenReturn(failedFuture)
+                .thenReturn(CompletableFuture.completedFuture(IMAGE));
+
+        CachingAssetsServiceClient instance = new CachingAssetsServiceClient(mockAssetsServiceClient, 10, 10);
+
+        try {
+            instance.getImageById(IMAGE_URL).get();
+            fail("Expected an ExecutionException");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof IllegalStateException);
+        }
+
+        try {
+            assertSame(IMAGE, instance.getImageById(IMAGE_URL).get());
+        } catch (ExecutionException ex) {
+            fail("The failure should not have been cached");
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package culturetrip.articles.clients;
+
+import culturetrip.articles.concurrent.Futures;
+import culturetrip.articles.models.Image;
+import culturetrip.articles.models.Video;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A stand-in for the assets service offering both the single and the bulk
+ * API. It serves one round trip at a time, and every round trip costs a fixed
+ * overhead plus a small amount per asset, so the time taken by a run of calls
+ * shows what batching saves. Ids starting with "missing" are not found.
+ *
+ * @author mball
+ */
+public class SimulatedAssetsService implements AssetsServiceClient, AssetsServiceBatchClient {
+
+    private final long overheadNanos;
+    private final long perAssetNanos;
+    private final AtomicLong busyUntilNanos = new AtomicLong(System.nanoTime());
+    private final AtomicInteger roundTrips = new AtomicInteger();
+
+    public SimulatedAssetsService(long overhead, long perAsset, TimeUnit unit) {
+        this.overheadNanos = unit.toNanos(overhead);
+        this.perAssetNanos = unit.toNanos(perAsset);
+    }
+
+    public int getRoundTrips() {
+        return roundTrips.get();
+    }
+
+    @Override
+    public Future<Image> getImageById(String id) {
+        return roundTrip(1).thenApply(done -> image(id));
+    }
+
+    @Override
+    public Future<Video> getVideoById(String id) {
+        return roundTrip(1).thenApply(done -> video(id));
+    }
+
+    @Override
+    public Future<Map<String, Image>> getImagesByIds(Collection<String> ids) {
+        return roundTrip(ids.size()).thenApply(done -> {
+            Map<String, Image> images = new HashMap<>();
+            ids.stream().filter(id -> image(id) != null).forEach(id -> images.put(id, image(id)));
+            return images;
+        });
+    }
+
+    @Override
+    public Future<Map<String, Video>> getVideosByIds(Collection<String> ids) {
+        return roundTrip(ids.size()).thenApply(done -> {
+            Map<String, Video> videos = new HashMap<>();
+            ids.stream().filter(id -> video(id) != null).forEach(id -> videos.put(id, video(id)));
+            return videos;
+        });
+    }
+
+    /**
+     * Queues a round trip behind any already being served and completes once it
+     * has been served.
+     */
+    private CompletableFuture<Void> roundTrip(int assets) {
+        roundTrips.incrementAndGet();
+        long cost = overheadNanos + assets * perAssetNanos;
+        long now = System.nanoTime();
+        long finishedAt = busyUntilNanos.accumulateAndGet(now, (busyUntil, start) -> Math.max(busyUntil, start) + cost);
+
+        CompletableFuture<Void> served = new CompletableFuture<>();
+        Futures.scheduler().schedule(() -> served.complete(null), finishedAt - now, TimeUnit.NANOSECONDS);
+        return served;
+    }
+
+    private static Image image(String id) {
+        return id.startsWith("missing") ? null : new Image(id, "alt text for " + id);
+    }
+
+    private static Video video(String id) {
+        return id.startsWith("missing") ? null : new Video(id, "caption for " + id);
+    }
+}
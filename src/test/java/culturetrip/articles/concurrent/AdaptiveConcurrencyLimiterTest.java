@@ -0,0 +1,210 @@
+package culturetrip.articles.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author mball
+ */
+public class AdaptiveConcurrencyLimiterTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(10);
+
+    public AdaptiveConcurrencyLimiterTest() {
+    }
+
+    /**
+     * Test of call method, of class AdaptiveConcurrencyLimiter when the limit
+     * has been reached. We expect the next call to fail straight away without
+     * being made, and calls to be let through again once a permit is given
+     * back.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testCallRejectsOverLimit() throws InterruptedException, ExecutionException {
+        System.out.println("testCallRejectsOverLimit");
+
+        AdaptiveConcurrencyLimiter instance = new AdaptiveConcurrencyLimiter();
+        instance.setLimit(2);
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletableFuture<String> first = new CompletableFuture<>();
+        instance.call(() -> first);
+        instance.call(CompletableFuture::new);
+
+        CompletableFuture<String> rejected = instance.call(() -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture("value");
+        });
+        try {
+            rejected.get();
+            fail("Expected an ExecutionException");
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause(), instanceOf(RejectedExecutionException.class));
+        }
+        assertEquals(0, calls.get());
+        assertEquals(1, instance.getRejectedCount());
+
+        first.complete("first");
+        assertEquals("value", instance.call(() -> CompletableFuture.completedFuture("value")).get());
+        assertEquals(1, instance.getInFlight());
+    }
+
+    /**
+     * Test of release method, of class AdaptiveConcurrencyLimiter when every
+     * permit is in use and the round trip time holds steady. We expect the
+     * limit to grow.
+     */
+    @Test
+    public void testReleaseGrowsLimit() {
+        System.out.println("testReleaseGrowsLimit");
+
+        AdaptiveConcurrencyLimiter instance = new AdaptiveConcurrencyLimiter();
+        instance.setLimit(10);
+
+        for (int i = 0; i < 20; i++) {
+            releaseAll(instance, acquireAll(instance), FAST);
+        }
+
+        assertTrue(instance.getLimit() > 10);
+    }
+
+    /**
+     * Test of release method, of class AdaptiveConcurrencyLimiter when only a
+     * couple of permits are ever used. We expect the limit to stay where it is,
+     * as it isn't what is holding the callers back.
+     */
+    @Test
+    public void testReleaseDoesNotGrowUnusedLimit() {
+        System.out.println("testReleaseDoesNotGrowUnusedLimit");
+
+        AdaptiveConcurrencyLimiter instance = new AdaptiveConcurrencyLimiter();
+        instance.setLimit(10);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(instance.tryAcquire());
+            instance.release(FAST, null);
+        }
+
+        assertEquals(10, instance.getLimit());
+    }
+
+    /**
+     * Test of release method, of class AdaptiveConcurrencyLimiter when the
+     * round trip time jumps. We expect the limit to come down.
+     */
+    @Test
+    public void testReleaseShrinksLimitWhenLatencyRises() {
+        System.out.println("testReleaseShrinksLimitWhenLatencyRises");
+
+        AdaptiveConcurrencyLimiter instance = new AdaptiveConcurrencyLimiter();
+        instance.setLimit(40);
+        instance.setMaximumLimit(40);
+        for (int i = 0; i < 5; i++) {
+            releaseAll(instance, acquireAll(instance), FAST);
+        }
+        assertEquals(40, instance.getLimit());
+
+        releaseAll(instance, acquireAll(instance), SLOW);
+
+        assertTrue(instance.getLimit() < 20);
+    }
+
+    /**
+     * Test of release method, of class AdaptiveConcurrencyLimiter when a call
+     * times out. We expect the limit to be cut back by a tenth.
+     */
+    @Test
+    public void testReleaseTimeoutBacksOff() {
+        System.out.println("testReleaseTimeoutBacksOff");
+
+        AdaptiveConcurrencyLimiter instance = new AdaptiveConcurrencyLimiter();
+        instance.setLimit(20);
+
+        assertTrue(instance.tryAcquire());
+        instance.release(SLOW, new TimeoutException());
+
+        assertEquals(18, instance.getLimit());
+        assertEquals(0, instance.getInFlight());
+    }
+
+    /**
+     * Test of call method, of class AdaptiveConcurrencyLimiter when callers
+     * cancel calls they no longer need, and when a call runs past its
+     * deadline. We expect the cancelled calls only to give their permits
+     * back, and the one that ran out of time to cut the limit.
+     */
+    @Test
+    public void testCallCancelledDoesNotBackOff() {
+        System.out.println("testCallCancelledDoesNotBackOff");
+
+        AdaptiveConcurrencyLimiter instance = new AdaptiveConcurrencyLimiter();
+        instance.setLimit(20);
+
+        for (int i = 0; i < 10; i++) {
+            CompletableFuture<String> call = instance.call(CompletableFuture::new);
+            assertTrue(call.cancel(true));
+        }
+        assertEquals(20, instance.getLimit());
+        assertEquals(0, instance.getInFlight());
+
+        CompletableFuture<String> slow = instance.call(CompletableFuture::new);
+        Futures.timeOut(slow);
+        assertTrue(Futures.isTimedOut(slow));
+        assertEquals(18, instance.getLimit());
+        assertEquals(0, instance.getInFlight());
+    }
+
+    /**
+     * Test of call method, of class AdaptiveConcurrencyLimiter when a deadline
+     * passes and times out every call in flight at once. We expect the limit
+     * to be cut once, not once for each call, and to be cut again by a call
+     * that started after that.
+     */
+    @Test
+    public void testCallTimedOutTogetherBacksOffOnce() {
+        System.out.println("testCallTimedOutTogetherBacksOffOnce");
+
+        AdaptiveConcurrencyLimiter instance = new AdaptiveConcurrencyLimiter();
+        instance.setLimit(20);
+
+        List<CompletableFuture<String>> calls = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            calls.add(instance.call(CompletableFuture::new));
+        }
+        calls.forEach(Futures::timeOut);
+        assertEquals(18, instance.getLimit());
+        assertEquals(0, instance.getInFlight());
+
+        CompletableFuture<String> later = instance.call(CompletableFuture::new);
+        Futures.timeOut(later);
+        assertEquals(16, instance.getLimit());
+    }
+
+    private static int acquireAll(AdaptiveConcurrencyLimiter limiter) {
+        int permits = 0;
+        while (limiter.tryAcquire()) {
+            permits++;
+        }
+        return permits;
+    }
+
+    private static void releaseAll(AdaptiveConcurrencyLimiter limiter, int permits, long rttNanos) {
+        for (int i = 0; i < permits; i++) {
+            limiter.release(rttNanos, null);
+        }
+    }
+}
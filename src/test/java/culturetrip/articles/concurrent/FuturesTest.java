@@ -0,0 +1,186 @@
+package culturetrip.articles.concurrent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author mball
+ */
+public class FuturesTest {
+
+    public FuturesTest() {
+    }
+
+    /**
+     * Test of toCompletableFuture method, of class Futures when given a plain
+     * Future that completes later on. We expect the adapted Future to complete
+     * with the same value without us blocking on the original.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testToCompletableFuturePlainFuture() throws InterruptedException, ExecutionException {
+        System.out.println("testToCompletableFuturePlainFuture");
+
+        FutureTask<String> plainFuture = new FutureTask<>(() -> "value");
+
+        CompletableFuture<String> result = Futures.toCompletableFuture(plainFuture);
+        assertFalse(result.isDone());
+
+        plainFuture.run();
+
+        assertEquals("value", result.get());
+    }
+
+    /**
+     * Test of toCompletableFuture method, of class Futures when the plain Future
+     * fails. We expect the adapted Future to fail with the original cause.
+     *
+     * @throws java.lang.InterruptedException
+     */
+    @Test
+    public void testToCompletableFuturePlainFutureFails() throws InterruptedException {
+        System.out.println("testToCompletableFuturePlainFutureFails");
+
+        FutureTask<String> plainFuture = new FutureTask<>(() -> {
+            throw new IllegalStateException();
+        });
+
+        CompletableFuture<String> result = Futures.toCompletableFuture(plainFuture);
+        plainFuture.run();
+
+        try {
+            result.get();
+            fail("Expected an ExecutionException");
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause(), instanceOf(IllegalStateException.class));
+        }
+    }
+
+    /**
+     * Test of toCompletableFuture method, of class Futures when the adapted
+     * Future is cancelled. We expect the cancellation to reach the original.
+     */
+    @Test
+    public void testToCompletableFutureCancelPropagates() {
+        System.out.println("testToCompletableFutureCancelPropagates");
+
+        FutureTask<String> plainFuture = new FutureTask<>(() -> "value");
+
+        CompletableFuture<String> result = Futures.toCompletableFuture(plainFuture);
+        result.cancel(true);
+
+        assertTrue(plainFuture.isCancelled());
+    }
+
+    /**
+     * Test of within method, of class Futures when the Future doesn't complete
+     * in time. We expect a TimeoutException.
+     *
+     * @throws java.lang.InterruptedException
+     */
+    @Test
+    public void testWithinTimesOut() throws InterruptedException {
+        System.out.println("testWithinTimesOut");
+
+        CompletableFuture<String> result = Futures.within(new CompletableFuture<>(), 50, TimeUnit.MILLISECONDS);
+
+        try {
+            result.get();
+            fail("Expected an ExecutionException");
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause(), instanceOf(TimeoutException.class));
+        }
+    }
+
+    /**
+     * Test of within method, of class Futures with a Deadline so far off that
+     * adding it to the current time would overflow, as with a timeout of
+     * Long.MAX_VALUE. We expect the Deadline not to have passed, and the
+     * Future to complete normally rather than time out straight away.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testWithinFarOffDeadline() throws InterruptedException, ExecutionException {
+        System.out.println("testWithinFarOffDeadline");
+
+        Deadline deadline = Deadline.after(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        assertFalse(deadline.isExpired());
+        assertTrue(deadline.remainingNanos() > TimeUnit.DAYS.toNanos(365));
+
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> result = Futures.within(future, deadline);
+        TimeUnit.MILLISECONDS.sleep(20);
+        assertFalse(result.isDone());
+        future.complete("value");
+        assertEquals("value", result.get());
+    }
+
+    /**
+     * Test of toCompletableFuture and within methods, of class Futures when
+     * the poller and a timeout complete the Futures. We expect whatever
+     * depends on them to run off the scheduler thread, so it can't hold up
+     * the other timeouts and polls.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testCallbacksRunOffScheduler() throws InterruptedException, ExecutionException {
+        System.out.println("testCallbacksRunOffScheduler");
+
+        FutureTask<String> plainFuture = new FutureTask<>(() -> "value");
+        CompletableFuture<String> polled = Futures.toCompletableFuture(plainFuture)
+                .thenApply(value -> Thread.currentThread().getName());
+        plainFuture.run();
+
+        CompletableFuture<String> timedOut = Futures.within(new CompletableFuture<String>(), 10, TimeUnit.MILLISECONDS)
+                .handle((value, ex) -> Thread.currentThread().getName());
+
+        assertNotEquals("article-enricher-scheduler", polled.get());
+        assertNotEquals("article-enricher-scheduler", timedOut.get());
+    }
+
+    /**
+     * Test of scheduleAsync method, of class Futures when the delay is up. We
+     * expect the task to be run on the executor rather than the scheduler
+     * thread, and when the executor turns it away, the rejection to be handed
+     * to onRejected instead.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testScheduleAsync() throws InterruptedException, ExecutionException {
+        System.out.println("testScheduleAsync");
+
+        CompletableFuture<String> ran = new CompletableFuture<>();
+        Futures.scheduleAsync(Futures.scheduler(), Futures.asyncExecutor(),
+                () -> ran.complete(Thread.currentThread().getName()), 10, TimeUnit.MILLISECONDS,
+                ran::completeExceptionally);
+        assertNotEquals("article-enricher-scheduler", ran.get());
+
+        RejectedExecutionException rejection = new RejectedExecutionException();
+        CompletableFuture<String> rejected = new CompletableFuture<>();
+        Futures.scheduleAsync(Futures.scheduler(), task -> {
+            throw rejection;
+        }, () -> rejected.complete("ran"), 10, TimeUnit.MILLISECONDS, rejected::completeExceptionally);
+        try {
+            rejected.get();
+            fail("Expected the rejection");
+        } catch (ExecutionException ex) {
+            assertSame(rejection, ex.getCause());
+        }
+    }
+}
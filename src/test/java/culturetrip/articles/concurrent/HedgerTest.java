@@ -0,0 +1,137 @@
+package culturetrip.articles.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author mball
+ */
+public class HedgerTest {
+
+    public HedgerTest() {
+    }
+
+    /**
+     * Test of call method, of class Hedger when the first call straggles. We
+     * expect the hedge to be sent after the delay, off the scheduler thread,
+     * its answer to be used and the straggler to be cancelled.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testCallHedgeWins() throws InterruptedException, ExecutionException {
+        System.out.println("testCallHedgeWins");
+
+        Hedger instance = new Hedger();
+        instance.setDelay(10, TimeUnit.MILLISECONDS);
+
+        CompletableFuture<String> straggler = new CompletableFuture<>();
+        AtomicInteger attempts = new AtomicInteger();
+
+        CompletableFuture<String> result = instance.call(() -> attempts.incrementAndGet() == 1
+                ? straggler
+                : CompletableFuture.completedFuture(Thread.currentThread().getName()));
+
+        assertNotEquals("article-enricher-scheduler", result.get());
+        assertTrue(straggler.isCancelled());
+        assertEquals(1, instance.getHedgeCount());
+        assertEquals(1, instance.getHedgeWinCount());
+    }
+
+    /**
+     * Test of call method, of class Hedger when the call answers in time. We
+     * expect no hedge.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testCallNoHedge() throws InterruptedException, ExecutionException {
+        System.out.println("testCallNoHedge");
+
+        Hedger instance = new Hedger();
+        instance.setDelay(10, TimeUnit.MILLISECONDS);
+
+        assertEquals("value", instance.call(() -> CompletableFuture.completedFuture("value")).get());
+        TimeUnit.MILLISECONDS.sleep(30);
+
+        assertEquals(0, instance.getHedgeCount());
+    }
+
+    /**
+     * Test of call method, of class Hedger when every call straggles and the
+     * hedge rate is capped at zero. We expect only the initial burst of hedges
+     * to be sent.
+     *
+     * @throws java.lang.InterruptedException
+     */
+    @Test
+    public void testCallHedgeRateCapped() throws InterruptedException {
+        System.out.println("testCallHedgeRateCapped");
+
+        Hedger instance = new Hedger();
+        instance.setDelay(1, TimeUnit.MILLISECONDS);
+        instance.setMaxHedgeRate(0);
+
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            results.add(instance.call(CompletableFuture::new));
+        }
+        TimeUnit.MILLISECONDS.sleep(50);
+
+        assertEquals(10, instance.getHedgeCount());
+        results.forEach(result -> result.cancel(true));
+    }
+
+    /**
+     * Test of call method, of class Hedger when the call fails before it is
+     * hedged. We expect the failure to be passed on.
+     *
+     * @throws java.lang.InterruptedException
+     */
+    @Test
+    public void testCallFails() throws InterruptedException {
+        System.out.println("testCallFails");
+
+        Hedger instance = new Hedger();
+        instance.setDelay(1, TimeUnit.SECONDS);
+
+        try {
+            instance.call(() -> Futures.<String>failed(new IllegalStateException())).get();
+            fail("Expected an ExecutionException");
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause(), instanceOf(IllegalStateException.class));
+        }
+    }
+
+    /**
+     * Test of getDelayNanos method, of class Hedger when it is set to use the
+     * observed 95th percentile. We expect the delay to follow the latencies.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testGetDelayNanosPercentile() throws InterruptedException, ExecutionException {
+        System.out.println("testGetDelayNanosPercentile");
+
+        Hedger instance = new Hedger();
+        instance.setDelay(1, TimeUnit.SECONDS);
+        instance.setDelayPercentile(95, 100);
+
+        for (int i = 0; i < 300; i++) {
+            instance.call(() -> CompletableFuture.completedFuture("value")).get();
+        }
+
+        assertTrue(instance.getDelayNanos() < TimeUnit.MILLISECONDS.toNanos(100));
+    }
+}
@@ -0,0 +1,46 @@
+package culturetrip.articles.concurrent;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author mball
+ */
+public class MicroBatcherTest {
+
+    public MicroBatcherTest() {
+    }
+
+    /**
+     * Test of submit method, of class MicroBatcher when a batch is sent
+     * because its linger time is up. We expect the bulk call to be made off
+     * the scheduler thread, so a slow one can't hold up everything else it
+     * times.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testLingerSendsOffScheduler() throws InterruptedException, ExecutionException {
+        System.out.println("testLingerSendsOffScheduler");
+
+        MicroBatcher<String, String> instance = new MicroBatcher<>((Collection<String> keys) -> {
+            Map<String, String> threads = new HashMap<>();
+            for (String key : keys) {
+                threads.put(key, Thread.currentThread().getName());
+            }
+            return CompletableFuture.completedFuture(threads);
+        });
+        instance.setLinger(5, TimeUnit.MILLISECONDS);
+
+        assertNotEquals("article-enricher-scheduler", instance.submit("key").get());
+        assertEquals(1, instance.getBatchCount());
+    }
+}
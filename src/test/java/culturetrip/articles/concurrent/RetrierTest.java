@@ -0,0 +1,188 @@
+package culturetrip.articles.concurrent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author mball
+ */
+public class RetrierTest {
+
+    public RetrierTest() {
+    }
+
+    /**
+     * Test of call method, of class Retrier when the call fails twice and
+     * then succeeds. We expect it to be retried twice, off the scheduler
+     * thread, and the answer used.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testCallRetriesUntilSuccess() throws InterruptedException, ExecutionException {
+        System.out.println("testCallRetriesUntilSuccess");
+
+        Retrier instance = new Retrier();
+        instance.setBackoff(1, 5, TimeUnit.MILLISECONDS);
+
+        AtomicInteger attempts = new AtomicInteger();
+        AtomicInteger retried = new AtomicInteger();
+        AtomicReference<String> retryThread = new AtomicReference<>();
+        CompletableFuture<String> result = instance.call(() -> {
+            if (attempts.incrementAndGet() < 3) {
+                return Futures.failed(new IllegalStateException());
+            }
+            retryThread.set(Thread.currentThread().getName());
+            return CompletableFuture.completedFuture("answer");
+        }, Deadline.after(5, TimeUnit.SECONDS), retried::incrementAndGet);
+
+        assertEquals("answer", result.get());
+        assertNotEquals("article-enricher-scheduler", retryThread.get());
+        assertEquals(3, attempts.get());
+        assertEquals(2, retried.get());
+        assertEquals(2, instance.getRetryCount());
+    }
+
+    /**
+     * Test of call method, of class Retrier when every attempt fails. We
+     * expect it to stop at the maximum attempts, with the last failure.
+     *
+     * @throws java.lang.InterruptedException
+     */
+    @Test
+    public void testCallMaxAttempts() throws InterruptedException {
+        System.out.println("testCallMaxAttempts");
+
+        Retrier instance = new Retrier();
+        instance.setMaxAttempts(4);
+        instance.setBackoff(1, 5, TimeUnit.MILLISECONDS);
+
+        AtomicInteger attempts = new AtomicInteger();
+        CompletableFuture<String> result = instance.call(
+                () -> Futures.failed(new IllegalStateException("attempt " + attempts.incrementAndGet())),
+                Deadline.after(5, TimeUnit.SECONDS), () -> { });
+
+        try {
+            result.get();
+            fail("Expected an ExecutionException");
+        } catch (ExecutionException ex) {
+            assertEquals("attempt 4", ex.getCause().getMessage());
+        }
+        assertEquals(4, attempts.get());
+    }
+
+    /**
+     * Test of call method, of class Retrier when the backoff would take it
+     * past the deadline, and when the failure isn't worth retrying. We expect
+     * no retry in either case.
+     *
+     * @throws java.lang.InterruptedException
+     */
+    @Test
+    public void testCallNotRetried() throws InterruptedException {
+        System.out.println("testCallNotRetried");
+
+        Retrier instance = new Retrier();
+        instance.setBackoff(10, 10, TimeUnit.SECONDS);
+        AtomicInteger attempts = new AtomicInteger();
+        CompletableFuture<String> pastDeadline = instance.call(() -> {
+            attempts.incrementAndGet();
+            return Futures.failed(new IllegalStateException());
+        }, Deadline.after(0, TimeUnit.MILLISECONDS), () -> { });
+        assertTrue(pastDeadline.isCompletedExceptionally());
+
+        instance.setBackoff(1, 1, TimeUnit.MILLISECONDS);
+        CompletableFuture<String> rejected = instance.call(() -> {
+            attempts.incrementAndGet();
+            return Futures.failed(new RejectedExecutionException());
+        }, Deadline.after(5, TimeUnit.SECONDS), () -> { });
+        try {
+            rejected.get();
+            fail("Expected an ExecutionException");
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause(), instanceOf(RejectedExecutionException.class));
+        }
+
+        assertEquals(2, attempts.get());
+        assertEquals(0, instance.getRetryCount());
+    }
+
+    /**
+     * Test of call method, of class Retrier when every call fails, as in an
+     * outage. We expect the retries to stop once the budget's burst is spent,
+     * and the rest to be counted.
+     */
+    @Test
+    public void testCallBudget() {
+        System.out.println("testCallBudget");
+
+        Retrier instance = new Retrier();
+        instance.setMaxAttempts(2);
+        instance.setMaxRetryRate(0);
+        instance.setBackoff(0, 0, TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < 30; i++) {
+            instance.call(() -> Futures.failed(new IllegalStateException()), Deadline.after(5, TimeUnit.SECONDS), () -> { })
+                    .handle((value, ex) -> null).join();
+        }
+
+        assertEquals(30, instance.getCallCount());
+        assertEquals(10, instance.getRetryCount());
+        assertEquals(20, instance.getBudgetExhaustedCount());
+    }
+
+    /**
+     * Test of call method, of class Retrier when the caller cancels while an
+     * attempt is in progress. We expect that attempt to be cancelled and no
+     * more to be made.
+     *
+     * @throws java.lang.InterruptedException
+     */
+    @Test
+    public void testCallCancel() throws InterruptedException {
+        System.out.println("testCallCancel");
+
+        Retrier instance = new Retrier();
+        CompletableFuture<String> attempt = new CompletableFuture<>();
+        AtomicInteger attempts = new AtomicInteger();
+        CompletableFuture<String> result = instance.call(() -> {
+            attempts.incrementAndGet();
+            return attempt;
+        }, Deadline.after(5, TimeUnit.SECONDS), () -> { });
+
+        assertTrue(result.cancel(true));
+        assertTrue(attempt.isCancelled());
+        TimeUnit.MILLISECONDS.sleep(50);
+        assertEquals(1, attempts.get());
+    }
+
+    /**
+     * Test of backoffNanos method, of class Retrier. We expect every backoff
+     * to be between zero and the base delay doubled for each retry, capped at
+     * the maximum.
+     */
+    @Test
+    public void testBackoff() {
+        System.out.println("testBackoff");
+
+        Retrier instance = new Retrier();
+        instance.setBackoff(10, 1000, TimeUnit.NANOSECONDS);
+
+        for (int retry = 1; retry < 100; retry++) {
+            long ceiling = Math.min(1000, 10L << Math.min(retry - 1, 30));
+            for (int i = 0; i < 100; i++) {
+                long backoff = instance.backoffNanos(retry);
+                assertTrue(backoff >= 0 && backoff <= ceiling);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package culturetrip.articles.concurrent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author mball
+ */
+public class SingleFlightTest {
+
+    public SingleFlightTest() {
+    }
+
+    /**
+     * Test of execute method, of class SingleFlight when a second caller asks
+     * for the same key while the first call is in flight. We expect one call,
+     * shared by both, and the key to be forgotten once it completes.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testExecuteCoalesces() throws InterruptedException, ExecutionException {
+        System.out.println("testExecuteCoalesces");
+
+        SingleFlight<String, String> instance = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<String> call = new CompletableFuture<>();
+
+        CompletableFuture<String> first = instance.execute("key", key -> {
+            calls.incrementAndGet();
+            return call;
+        });
+        CompletableFuture<String> second = instance.execute("key", key -> {
+            calls.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+
+        assertEquals(1, instance.size());
+        call.complete("value");
+
+        assertEquals("value", first.get());
+        assertEquals("value", second.get());
+        assertEquals(1, calls.get());
+        assertEquals(1, instance.getCoalescedCount());
+        assertEquals(0, instance.size());
+    }
+
+    /**
+     * Test of execute method, of class SingleFlight when the first call has
+     * already completed. We expect the next caller to get a new call.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testExecuteAfterCompletion() throws InterruptedException, ExecutionException {
+        System.out.println("testExecuteAfterCompletion");
+
+        SingleFlight<String, Integer> instance = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        assertEquals(Integer.valueOf(1), instance.execute("key", key -> CompletableFuture.completedFuture(calls.incrementAndGet())).get());
+        assertEquals(Integer.valueOf(2), instance.execute("key", key -> CompletableFuture.completedFuture(calls.incrementAndGet())).get());
+        assertEquals(0, instance.getCoalescedCount());
+    }
+
+    /**
+     * Test of execute method, of class SingleFlight when one caller cancels.
+     * We expect the other caller still to get the result.
+     *
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.ExecutionException
+     */
+    @Test
+    public void testExecuteCancelOneCaller() throws InterruptedException, ExecutionException {
+        System.out.println("testExecuteCancelOneCaller");
+
+        SingleFlight<String, String> instance = new SingleFlight<>();
+        CompletableFuture<String> call = new CompletableFuture<>();
+
+        CompletableFuture<String> first = instance.execute("key", key -> call);
+        CompletableFuture<String> second = instance.execute("key", key -> call);
+
+        first.cancel(true);
+        call.complete("value");
+
+        assertFalse(call.isCancelled());
+        assertEquals("value", second.get());
+    }
+}
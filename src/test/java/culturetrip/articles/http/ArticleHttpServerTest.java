@@ -0,0 +1,275 @@
+package culturetrip.articles.http;
+
+import culturetrip.articles.ArticleEnricher;
+import culturetrip.articles.SimpleArticleEnricher;
+import culturetrip.articles.concurrent.Futures;
+import culturetrip.articles.models.Image;
+import culturetrip.articles.models.RichArticle;
+import culturetrip.articles.models.Video;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author mball
+ */
+public class ArticleHttpServerTest {
+
+    private ArticleHttpServer instance;
+
+    public ArticleHttpServerTest() {
+    }
+
+    @After
+    public void tearDown() {
+        if (instance != null) {
+            instance.stop(0);
+        }
+    }
+
+    /**
+     * Test of GET /articles/{id}, of class ArticleHttpServer when the article
+     * is enriched after the handler has returned. We expect the article as
+     * JSON once it is ready.
+     *
+     * @throws java.io.IOException
+     */
+    @Test
+    public void testGetArticle() throws IOException {
+        System.out.println("testGetArticle");
+
+        start(articleId -> {
+            CompletableFuture<RichArticle> richArticle = new CompletableFuture<>();
+            Futures.scheduler().schedule(() -> richArticle.complete(new RichArticle(articleId, "Café culture",
+                    new Image("image1", "alt"), Arrays.asList(new Video("video1", "caption")))),
+                    20, TimeUnit.MILLISECONDS);
+            return richArticle;
+        });
+
+        HttpURLConnection connection = get("/articles/article1");
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("application/json; charset=utf-8", connection.getContentType());
+        assertEquals("{\"id\":\"article1\",\"name\":\"Café culture\",\"heroImage\":{\"id\":\"image1\",\"altText\":\"alt\"},"
+                + "\"videos\":[{\"id\":\"video1\",\"caption\":\"caption\"}]}", read(connection.getInputStream()));
+    }
+
+    /**
+     * Test of GET /articles/{id}, of class ArticleHttpServer with an id that
+     * needs decoding. We expect the enricher to be given the decoded id.
+     *
+     * @throws java.io.IOException
+     */
+    @Test
+    public void testGetArticleEncodedId() throws IOException {
+        System.out.println("testGetArticleEncodedId");
+
+        start(articleId -> CompletableFuture.completedFuture(new RichArticle(articleId, "name", null, Arrays.asList())));
+
+        HttpURLConnection connection = get("/articles/a%20b+c");
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(read(connection.getInputStream()).startsWith("{\"id\":\"a b+c\""));
+    }
+
+    /**
+     * Test of GET /articles/{id}, of class ArticleHttpServer asking for only
+     * some fields. We expect just those fields filled in, and 400 for a field
+     * that doesn't exist.
+     *
+     * @throws java.io.IOException
+     */
+    @Test
+    public void testGetArticleFields() throws IOException {
+        System.out.println("testGetArticleFields");
+
+        start(articleId -> CompletableFuture.completedFuture(new RichArticle(articleId, "name",
+                new Image("image1", "alt"), Arrays.asList(new Video("video1", "caption")))));
+
+        HttpURLConnection connection = get("/articles/article1?fields=name%2CheroImage");
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("{\"id\":\"article1\",\"name\":\"name\",\"heroImage\":{\"id\":\"image1\",\"altText\":\"alt\"},"
+                + "\"videos\":[]}", read(connection.getInputStream()));
+
+        connection = get("/articles/article1?fields=name,bogus");
+        assertEquals(400, connection.getResponseCode());
+        assertEquals("{\"error\":\"Unknown field: bogus\"}", read(connection.getErrorStream()));
+    }
+
+    /**
+     * Test of GET /articles/{id}, of class ArticleHttpServer when the
+     * enrichment fails. We expect 504 for a timeout and 502 for anything
+     * else.
+     *
+     * @throws java.io.IOException
+     */
+    @Test
+    public void testGetArticleFailure() throws IOException {
+        System.out.println("testGetArticleFailure");
+
+        start(articleId -> articleId.equals("slow")
+                ? Futures.failed(new TimeoutException())
+                : Futures.failed(new IllegalStateException("broken")));
+
+        assertEquals(504, get("/articles/slow").getResponseCode());
+        HttpURLConnection connection = get("/articles/broken");
+        assertEquals(502, connection.getResponseCode());
+        assertEquals("{\"error\":\"java.lang.IllegalStateException: broken\"}", read(connection.getErrorStream()));
+    }
+
+    /**
+     * Test of GET /articles/{id}, of class ArticleHttpServer serving a
+     * SimpleArticleEnricher, for an id the article repository doesn't know.
+     * We expect 404 rather than the 502 of an enrichment that went wrong.
+     *
+     * @throws java.io.IOException
+     */
+    @Test
+    public void testGetArticleNotFound() throws IOException {
+        System.out.println("testGetArticleNotFound");
+
+        SimpleArticleEnricher articleEnricher = new SimpleArticleEnricher();
+        articleEnricher.setTimeoutSeconds(5);
+        articleEnricher.setArticleRepositoryClient(articleId -> CompletableFuture.completedFuture(null));
+        start(articleEnricher);
+
+        HttpURLConnection connection = get("/articles/missing");
+        assertEquals(404, connection.getResponseCode());
+        assertEquals("{\"error\":\"No article missing\"}", read(connection.getErrorStream()));
+    }
+
+    /**
+     * Test of GET /articles/{id}, of class ArticleHttpServer when the
+     * enrichment times out on the scheduler. We expect the 504 to be written
+     * from the server's executor rather than the scheduler, so a slow client
+     * can't hold up every other timeout.
+     *
+     * @throws java.io.IOException
+     */
+    @Test
+    public void testGetArticleWritesOnExecutor() throws IOException {
+        System.out.println("testGetArticleWritesOnExecutor");
+
+        ExecutorService pool = Executors.newCachedThreadPool();
+        AtomicInteger executions = new AtomicInteger();
+        try {
+            instance = new ArticleHttpServer(articleId -> {
+                CompletableFuture<RichArticle> richArticle = new CompletableFuture<>();
+                Futures.scheduler().schedule(() -> richArticle.completeExceptionally(new TimeoutException()),
+                        20, TimeUnit.MILLISECONDS);
+                return richArticle;
+            });
+            instance.setExecutor(command -> {
+                executions.incrementAndGet();
+                pool.execute(command);
+            });
+            instance.start(new InetSocketAddress("127.0.0.1", 0));
+
+            assertEquals(504, get("/articles/slow").getResponseCode());
+            //once to handle the request and once to write the response.
+            assertEquals(2, executions.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Test of GET /articles/{id}, of class ArticleHttpServer when the executor
+     * is full by the time the response is to be written. We expect the write
+     * not to be run on the thread that completed the article, and the
+     * connection to be closed so the client isn't left waiting.
+     *
+     * @throws java.io.IOException
+     */
+    @Test
+    public void testGetArticleWriteRejected() throws IOException {
+        System.out.println("testGetArticleWriteRejected");
+
+        AtomicInteger executions = new AtomicInteger();
+        instance = new ArticleHttpServer(articleId -> CompletableFuture.supplyAsync(
+                () -> new RichArticle(articleId, "name", null, Arrays.asList()),
+                CompletableFuture.delayedExecutor(20, TimeUnit.MILLISECONDS)));
+        //handle the request, then turn the write away as a full pool would.
+        instance.setExecutor(command -> {
+            if (executions.incrementAndGet() > 1) {
+                throw new RejectedExecutionException();
+            }
+            command.run();
+        });
+        instance.start(new InetSocketAddress("127.0.0.1", 0));
+
+        try {
+            get("/articles/article1").getResponseCode();
+            fail("Expected the connection to be closed");
+        } catch (IOException expected) {
+            //closed without a response, rather than left to time out.
+            assertFalse(expected instanceof SocketTimeoutException);
+        }
+        //HttpURLConnection tries a GET again once if the connection is closed on it.
+        assertTrue(executions.get() >= 2);
+    }
+
+    /**
+     * Test of ArticleHttpServer with requests it doesn't serve. We expect 404
+     * for other paths and 405 for other methods, without asking the enricher.
+     *
+     * @throws java.io.IOException
+     */
+    @Test
+    public void testNotServed() throws IOException {
+        System.out.println("testNotServed");
+
+        start(articleId -> {
+            throw new AssertionError("Should not be asked for " + articleId);
+        });
+
+        assertEquals(404, get("/articles/").getResponseCode());
+        assertEquals(404, get("/articles/a/b").getResponseCode());
+        assertEquals(404, get("/other").getResponseCode());
+
+        HttpURLConnection connection = get("/articles/article1");
+        connection.setRequestMethod("DELETE");
+        assertEquals(405, connection.getResponseCode());
+        assertEquals("GET", connection.getHeaderField("Allow"));
+    }
+
+    private void start(ArticleEnricher articleEnricher) throws IOException {
+        instance = new ArticleHttpServer(articleEnricher);
+        instance.start(new InetSocketAddress("127.0.0.1", 0));
+    }
+
+    private HttpURLConnection get(String path) throws IOException {
+        URL url = new URL("http://127.0.0.1:" + instance.getAddress().getPort() + path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(5000);
+        connection.setReadTimeout(5000);
+        return connection;
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (InputStream body = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
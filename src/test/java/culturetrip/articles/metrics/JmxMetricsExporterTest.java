@@ -0,0 +1,58 @@
+package culturetrip.articles.metrics;
+
+import culturetrip.articles.cache.CacheStats;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author mball
+ */
+public class JmxMetricsExporterTest {
+
+    public JmxMetricsExporterTest() {
+    }
+
+    /**
+     * Test of export method, of class JmxMetricsExporter when some stages and
+     * a cache have been recorded. We expect the MXBeans to show the live
+     * values, and to be gone after unexport.
+     *
+     * @throws javax.management.JMException
+     */
+    @Test
+    public void testExport() throws JMException {
+        System.out.println("testExport");
+
+        InMemoryEnricherMetrics metrics = new InMemoryEnricherMetrics();
+        CacheStats cacheStats = new CacheStats();
+        metrics.registerCache("references", cacheStats);
+
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        JmxMetricsExporter instance = new JmxMetricsExporter(metrics, "culturetrip.articles", server);
+        instance.export();
+
+        metrics.started(Stage.VIDEO);
+        metrics.started(Stage.VIDEO);
+        metrics.completed(Stage.VIDEO, TimeUnit.MILLISECONDS.toNanos(20), new TimeoutException());
+        cacheStats.recordHit();
+        cacheStats.recordMiss();
+
+        ObjectName video = new ObjectName("culturetrip.articles:type=Stage,name=\"VIDEO\"");
+        ObjectName references = new ObjectName("culturetrip.articles:type=Cache,name=\"references\"");
+        assertEquals(1L, server.getAttribute(video, "Count"));
+        assertEquals(1L, server.getAttribute(video, "InFlight"));
+        assertEquals(1L, server.getAttribute(video, "Timeouts"));
+        assertEquals(20.0, (Double) server.getAttribute(video, "P99Millis"), 20 * 0.03);
+        assertEquals(0.5, (Double) server.getAttribute(references, "HitRate"), 0.0001);
+
+        instance.unexport();
+        assertFalse(server.isRegistered(video));
+    }
+}
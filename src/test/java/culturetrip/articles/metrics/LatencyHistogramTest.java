@@ -0,0 +1,64 @@
+package culturetrip.articles.metrics;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author mball
+ */
+public class LatencyHistogramTest {
+
+    public LatencyHistogramTest() {
+    }
+
+    /**
+     * Test of getValueAtPercentile method, of class LatencyHistogram when it
+     * holds the values 1 to 100000. We expect each percentile to be within the
+     * histogram's 3% precision.
+     */
+    @Test
+    public void testGetValueAtPercentile() {
+        System.out.println("testGetValueAtPercentile");
+
+        LatencyHistogram instance = new LatencyHistogram();
+        for (long value = 1; value <= 100_000; value++) {
+            instance.record(value);
+        }
+
+        assertEquals(100_000, instance.getCount());
+        assertEquals(100_000, instance.getMax());
+        assertEquals(50_000.5, instance.getMean(), 0.001);
+        assertEquals(50_000, instance.getValueAtPercentile(50), 50_000 * 0.03);
+        assertEquals(99_000, instance.getValueAtPercentile(99), 99_000 * 0.03);
+        assertEquals(99_900, instance.getValueAtPercentile(99.9), 99_900 * 0.03);
+        assertEquals(100_000, instance.getValueAtPercentile(100));
+    }
+
+    /**
+     * Test of indexOf method, of class LatencyHistogram at the edges of the
+     * range. We expect every value to fall inside its bucket.
+     */
+    @Test
+    public void testIndexOf() {
+        System.out.println("testIndexOf");
+
+        long[] values = {0, 1, 31, 32, 63, 64, 65, 1_000_000_007L, Long.MAX_VALUE};
+        for (long value : values) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(value <= LatencyHistogram.highestValueIn(index));
+            assertTrue(index == 0 || value > LatencyHistogram.highestValueIn(index - 1));
+        }
+    }
+
+    /**
+     * Test of getValueAtPercentile method, of class LatencyHistogram when it is
+     * empty. We expect zero.
+     */
+    @Test
+    public void testGetValueAtPercentileEmpty() {
+        System.out.println("testGetValueAtPercentileEmpty");
+
+        assertEquals(0, new LatencyHistogram().getValueAtPercentile(99));
+    }
+}